@@ -0,0 +1,135 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.ipa.callgraph.propagation.ConstantKey;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the ancestors, origins, and components computed by
+ * {@link StreamInstanceGraph} for graphs with shared and cyclic predecessors.
+ */
+public class StreamInstanceGraphTest extends TestCase {
+
+	private static InstanceKey instance(String name) {
+		return new ConstantKey<>(name, null);
+	}
+
+	private static Set<InstanceKey> instances(InstanceKey... instances) {
+		return new HashSet<>(Arrays.asList(instances));
+	}
+
+	/**
+	 * x and y are each other's predecessors, w is a predecessor of x, and y is a
+	 * predecessor of z.
+	 */
+	public void testCycle() {
+		InstanceKey w = instance("w");
+		InstanceKey x = instance("x");
+		InstanceKey y = instance("y");
+		InstanceKey z = instance("z");
+
+		Map<InstanceKey, Set<InstanceKey>> instanceToPredecessors = new HashMap<>();
+		instanceToPredecessors.put(x, instances(w, y));
+		instanceToPredecessors.put(y, instances(x));
+		instanceToPredecessors.put(z, instances(y));
+
+		StreamInstanceGraph graph = new StreamInstanceGraph(instanceToPredecessors);
+
+		int cycle = graph.getComponent(x);
+		assertEquals(cycle, graph.getComponent(y));
+		assertEquals(instances(x, y), new HashSet<>(graph.getInstances(cycle)));
+
+		// instances in a cycle are their own ancestors.
+		assertEquals(instances(w, x, y), graph.getAncestors(x));
+		assertEquals(instances(w, x, y), graph.getAncestors(y));
+		assertEquals(instances(w, x, y), graph.getAncestors(z));
+		assertEquals(Collections.emptySet(), graph.getAncestors(w));
+
+		for (InstanceKey instance : Arrays.asList(w, x, y, z))
+			assertEquals(instances(w), graph.getOrigins(instance));
+
+		// the cycle isn't its own predecessor component.
+		assertTrue(Arrays.equals(new int[] { graph.getComponent(w) }, graph.getPredecessorComponents(cycle)));
+		assertTrue(Arrays.equals(new int[] { cycle }, graph.getPredecessorComponents(graph.getComponent(z))));
+
+		// the components of predecessors come first.
+		assertTrue(graph.getComponent(w) < cycle);
+		assertTrue(cycle < graph.getComponent(z));
+	}
+
+	/**
+	 * d has the predecessors b and c, which both have the predecessor a.
+	 */
+	public void testDiamond() {
+		InstanceKey a = instance("a");
+		InstanceKey b = instance("b");
+		InstanceKey c = instance("c");
+		InstanceKey d = instance("d");
+
+		Map<InstanceKey, Set<InstanceKey>> instanceToPredecessors = new HashMap<>();
+		instanceToPredecessors.put(b, instances(a));
+		instanceToPredecessors.put(c, instances(a));
+		instanceToPredecessors.put(d, instances(b, c));
+
+		StreamInstanceGraph graph = new StreamInstanceGraph(instanceToPredecessors);
+
+		Set<Integer> components = new HashSet<>();
+
+		for (InstanceKey instance : Arrays.asList(a, b, c, d))
+			components.add(graph.getComponent(instance));
+
+		assertEquals("Each instance should be in its own component.", 4, components.size());
+
+		assertEquals(instances(a, b, c), graph.getAncestors(d));
+		assertEquals(instances(a), graph.getAncestors(b));
+		assertEquals(Collections.emptySet(), graph.getAncestors(a));
+		assertEquals(instances(a), graph.getAncestors(Arrays.asList(b, c)));
+
+		for (InstanceKey instance : Arrays.asList(a, b, c, d))
+			assertEquals(instances(a), graph.getOrigins(instance));
+
+		int component = graph.getComponent(d);
+		Set<Integer> predecessorComponents = new HashSet<>();
+
+		for (int predecessorComponent : graph.getPredecessorComponents(component))
+			predecessorComponents.add(predecessorComponent);
+
+		assertEquals(new HashSet<>(Arrays.asList(graph.getComponent(b), graph.getComponent(c))),
+				predecessorComponents);
+
+		BitSet closure = new BitSet();
+		components.forEach(closure::set);
+		assertEquals(closure, graph.getComponentClosure(component));
+
+		// the components of predecessors come first.
+		assertTrue(graph.getComponent(a) < graph.getComponent(b));
+		assertTrue(graph.getComponent(a) < graph.getComponent(c));
+		assertTrue(graph.getComponent(b) < component);
+		assertTrue(graph.getComponent(c) < component);
+	}
+
+	/**
+	 * Instances that aren't in the graph have no predecessors.
+	 */
+	public void testUnknownInstance() {
+		InstanceKey a = instance("a");
+		InstanceKey b = instance("b");
+		InstanceKey unknown = instance("unknown");
+
+		StreamInstanceGraph graph = new StreamInstanceGraph(Collections.singletonMap(b, instances(a)));
+
+		assertEquals(-1, graph.getComponent(unknown));
+		assertEquals(Collections.emptySet(), graph.getAncestors(unknown));
+		assertEquals(instances(unknown), graph.getOrigins(unknown));
+		assertEquals(instances(a), graph.getAncestors(Arrays.asList(b, unknown)));
+	}
+}
@@ -0,0 +1,95 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.jar.JarFile;
+
+import com.ibm.safe.ICFGSupergraph;
+import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.cha.CHACallGraph;
+import com.ibm.wala.ipa.callgraph.impl.DefaultEntrypoint;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.TypeReference;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the blocks in context found by {@link SupergraphBlockIndex} against a
+ * scan of the whole supergraph.
+ */
+public class SupergraphBlockIndexTest extends TestCase {
+
+	/**
+	 * @return The call graph of the methods reachable from
+	 *         {@link Integer#parseInt(String, int)}, which has plenty of
+	 *         branches, loops, and exceptional exits.
+	 */
+	private static CallGraph makeCallGraph() throws Exception {
+		AnalysisScope scope = AnalysisScope.createJavaAnalysisScope();
+		scope.addToScope(ClassLoaderReference.Primordial,
+				new JarFile(new File(System.getProperty("java.home"), "lib" + File.separator + "rt.jar")));
+
+		IClassHierarchy classHierarchy = ClassHierarchyFactory.make(scope);
+
+		MethodReference method = MethodReference.findOrCreate(TypeReference.JavaLangInteger, "parseInt",
+				"(Ljava/lang/String;I)I");
+		Iterable<Entrypoint> entryPoints = Collections.singleton(new DefaultEntrypoint(method, classHierarchy));
+
+		CHACallGraph callGraph = new CHACallGraph(classHierarchy);
+		callGraph.init(entryPoints);
+
+		return callGraph;
+	}
+
+	/**
+	 * Looking up the block in context of each block of each procedure in the
+	 * index should find the same block as scanning the whole supergraph.
+	 */
+	public void testGetBasicBlockInContext() throws Exception {
+		CallGraph callGraph = makeCallGraph();
+		ICFGSupergraph supergraph = ICFGSupergraph.make(callGraph, new AnalysisCacheImpl());
+
+		// the first exploded block having an instruction of each original block.
+		Map<List<Object>, BasicBlockInContext<IExplodedBasicBlock>> nodeAndBlockNumberToExpectedBlock = new HashMap<>();
+
+		for (BasicBlockInContext<IExplodedBasicBlock> blockInContext : supergraph) {
+			CGNode node = supergraph.getProcOf(blockInContext);
+			IExplodedBasicBlock delegate = blockInContext.getDelegate();
+
+			if (!delegate.isEntryBlock() && !delegate.isExitBlock() && delegate.getInstruction() != null)
+				nodeAndBlockNumberToExpectedBlock.putIfAbsent(Arrays.asList(node, delegate.getOriginalNumber()),
+						blockInContext);
+		}
+
+		assertFalse(nodeAndBlockNumberToExpectedBlock.isEmpty());
+
+		SupergraphBlockIndex index = new SupergraphBlockIndex(supergraph);
+
+		for (CGNode node : callGraph) {
+			IR ir = supergraph.getIR(node);
+
+			if (ir != null)
+				for (ISSABasicBlock block : ir.getControlFlowGraph())
+					assertEquals("Unexpected block in context for: " + block + " of: " + node + ".",
+							Optional.ofNullable(
+									nodeAndBlockNumberToExpectedBlock.get(Arrays.asList(node, block.getNumber()))),
+							index.getBasicBlockInContext(block, node));
+		}
+	}
+}
@@ -1,10 +1,20 @@
 package edu.cuny.hunter.streamrefactoring.core.analysis;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
 import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.BaseStream;
@@ -16,6 +26,8 @@ import org.objenesis.instantiator.ObjectInstantiator;
 
 import com.ibm.wala.analysis.typeInference.TypeAbstraction;
 import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
+import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.types.TypeReference;
 
@@ -23,14 +35,186 @@ import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
 
 class OrderingInference {
 
+	/**
+	 * The memoized outcome of inferring the ordering of the streams created by a
+	 * method of a class, i.e., either an {@link Ordering} or the exception
+	 * explaining why it couldn't be inferred.
+	 */
+	private static final class Outcome {
+
+		private static final String SEPARATOR = ":";
+
+		/**
+		 * Parses an {@link Outcome} previously persisted by
+		 * {@link #toPersistentString()}.
+		 *
+		 * @param className The binary name of the class the outcome is for.
+		 * @param value     The persisted outcome.
+		 * @return The parsed {@link Outcome} or <code>null</code> if it can't be
+		 *         parsed.
+		 */
+		private static Outcome parse(String className, String value) {
+			int index = value.indexOf(SEPARATOR);
+			String kind = index == -1 ? value : value.substring(0, index);
+			String message = index == -1 ? null : value.substring(index + SEPARATOR.length());
+
+			switch (kind) {
+			case "ORDERED":
+			case "UNORDERED":
+				return new Outcome(Ordering.valueOf(kind));
+			case "NoninstantiableException":
+				return new Outcome(new NoninstantiableException(message, loadClass(className)));
+			case "CannotExtractSpliteratorException":
+				return new Outcome(new CannotExtractSpliteratorException(message, loadClass(className)));
+			default:
+				return null;
+			}
+		}
+
+		private final Exception exception;
+
+		private final Ordering ordering;
+
+		private Outcome(Exception exception) {
+			this.exception = exception;
+			this.ordering = null;
+		}
+
+		private Outcome(Ordering ordering) {
+			this.exception = null;
+			this.ordering = ordering;
+		}
+
+		/**
+		 * @return The memoized {@link Ordering}.
+		 * @throws NoninstantiableException          If that's why the ordering
+		 *                                           couldn't be inferred.
+		 * @throws CannotExtractSpliteratorException If that's why the ordering
+		 *                                           couldn't be inferred.
+		 */
+		private Ordering get() throws NoninstantiableException, CannotExtractSpliteratorException {
+			if (this.exception instanceof NoninstantiableException)
+				throw (NoninstantiableException) this.exception;
+			else if (this.exception instanceof CannotExtractSpliteratorException)
+				throw (CannotExtractSpliteratorException) this.exception;
+			else
+				return this.ordering;
+		}
+
+		private String toPersistentString() {
+			if (this.exception == null)
+				return this.ordering.name();
+			else
+				return this.exception.getClass().getSimpleName() + SEPARATOR + this.exception.getMessage();
+		}
+	}
+
+	/**
+	 * Memoized outcomes keyed by class binary name and stream creation method name.
+	 * Since the outcomes only depend on the classes available to this plug-in, the
+	 * table is shared by all instances.
+	 */
+	private static final Map<String, Outcome> CLASS_AND_METHOD_TO_OUTCOME = new ConcurrentHashMap<>();
+
+	private static final String KEY_SEPARATOR = "#";
+
 	private static final Logger LOGGER = Logger.getLogger(LoggerNames.LOGGER_NAME);
 
+	/**
+	 * The property recording the Java version used to compute the persisted
+	 * outcomes, which are discarded if it differs.
+	 */
+	private static final String VERSION_PROPERTY_KEY = "java.version";
+
+	/**
+	 * Removes all memoized outcomes.
+	 */
+	static void clearMemo() {
+		CLASS_AND_METHOD_TO_OUTCOME.clear();
+	}
+
+	/**
+	 * @return The class with the given binary name or <code>null</code> if it
+	 *         can't be found.
+	 */
+	private static Class<?> loadClass(String className) {
+		try {
+			// don't run static initializers.
+			return Class.forName(className, false, OrderingInference.class.getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Loads memoized outcomes previously persisted by {@link #saveMemo(File)}.
+	 * Outcomes computed using a different Java version are ignored.
+	 *
+	 * @param file The file containing the persisted outcomes.
+	 */
+	static void loadMemo(File file) throws IOException {
+		Properties properties = new Properties();
+
+		try (InputStream stream = new FileInputStream(file)) {
+			properties.load(stream);
+		}
+
+		String version = properties.getProperty(VERSION_PROPERTY_KEY);
+
+		if (!System.getProperty(VERSION_PROPERTY_KEY).equals(version)) {
+			LOGGER.info(() -> "Ignoring ordering memo computed using Java version: " + version + ".");
+			return;
+		}
+
+		for (String key : properties.stringPropertyNames())
+			if (!key.equals(VERSION_PROPERTY_KEY)) {
+				String className = key.substring(0, key.lastIndexOf(KEY_SEPARATOR));
+				Outcome outcome = Outcome.parse(className, properties.getProperty(key));
+
+				if (outcome != null)
+					CLASS_AND_METHOD_TO_OUTCOME.putIfAbsent(key, outcome);
+			}
+
+		LOGGER.info(() -> "Loaded " + CLASS_AND_METHOD_TO_OUTCOME.size() + " memoized orderings from: " + file + ".");
+	}
+
+	/**
+	 * Persists the memoized outcomes so that they can be loaded by subsequent
+	 * runs using {@link #loadMemo(File)}.
+	 *
+	 * @param file The file in which to persist the outcomes.
+	 */
+	static void saveMemo(File file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(VERSION_PROPERTY_KEY, System.getProperty(VERSION_PROPERTY_KEY));
+		CLASS_AND_METHOD_TO_OUTCOME.forEach((k, v) -> properties.setProperty(k, v.toPersistentString()));
+
+		try (OutputStream stream = new FileOutputStream(file)) {
+			properties.store(stream, "Memoized stream orderings");
+		}
+	}
+
 	private IClassHierarchy classHierarchy;
 
 	private Objenesis objenesis = new ObjenesisStd();
 
+	/**
+	 * Consulted before resorting to instantiating classes reflectively.
+	 */
+	private SpliteratorOrderingOracle oracle;
+
 	public OrderingInference(IClassHierarchy classHierarchy) {
+		this(classHierarchy, new AnalysisCacheImpl());
+	}
+
+	/**
+	 * @param classHierarchy The {@link IClassHierarchy} of the analyzed project.
+	 * @param cache          Used to build the IRs of the methods statically
+	 *                       analyzed for their spliterator characteristics.
+	 */
+	public OrderingInference(IClassHierarchy classHierarchy, IAnalysisCacheView cache) {
 		this.classHierarchy = classHierarchy;
+		this.oracle = new SpliteratorOrderingOracle(classHierarchy, cache);
 	}
 
 	private Object createInstance(Class<?> clazz) throws NoninstantiableException {
@@ -162,11 +346,30 @@ class OrderingInference {
 		return ret;
 	}
 
-	// TODO: Cache this?
 	private Ordering inferOrdering(String className, String calledMethodName)
-			throws NoniterableException, NoninstantiableException, CannotExtractSpliteratorException {
+			throws NoninstantiableException, CannotExtractSpliteratorException {
+		String key = className + KEY_SEPARATOR + calledMethodName;
+		Outcome outcome = CLASS_AND_METHOD_TO_OUTCOME.get(key);
+
+		// if it's not memoized.
+		if (outcome == null) {
+			try {
+				outcome = new Outcome(this.inferOrderingReflectively(className, calledMethodName));
+			} catch (NoninstantiableException | CannotExtractSpliteratorException e) {
+				outcome = new Outcome(e);
+			}
+
+			// racing threads compute the same outcome.
+			CLASS_AND_METHOD_TO_OUTCOME.putIfAbsent(key, outcome);
+		}
+
+		return outcome.get();
+	}
+
+	private Ordering inferOrderingReflectively(String className, String calledMethodName)
+			throws NoninstantiableException, CannotExtractSpliteratorException {
 		try {
-			Class<?> clazz = Class.forName(className);
+			Class<?> clazz = Class.forName(className, false, OrderingInference.class.getClassLoader());
 
 			// is it instantiable?
 			if (!Util.isAbstractType(clazz)) {
@@ -181,10 +384,6 @@ class OrderingInference {
 				}
 
 				ordered = spliterator.hasCharacteristics(Spliterator.ORDERED);
-				// TODO: Can we use something other than reflection,
-				// like static analysis? Also, it may be an abstract
-				// class.
-
 				// FIXME: What if there is something under this that is
 				// ordered? I guess this applies to both intra and
 				// interprocedural analysis but more for the former.
@@ -214,6 +413,13 @@ class OrderingInference {
 		if (typeReference.isArrayType())
 			return Ordering.ORDERED;
 
+		// try the static oracle first. Since it depends on the class hierarchy, its
+		// results aren't part of the shared memo.
+		Optional<Ordering> ordering = this.oracle.inferOrdering(typeReference, calledMethodName);
+
+		if (ordering.isPresent())
+			return ordering.get();
+
 		String binaryName = Util.getBinaryName(typeReference);
 		return this.inferOrdering(binaryName, calledMethodName);
 	}
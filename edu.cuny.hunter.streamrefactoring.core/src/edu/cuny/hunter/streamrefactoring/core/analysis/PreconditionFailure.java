@@ -3,6 +3,7 @@ package edu.cuny.hunter.streamrefactoring.core.analysis;
 import java.util.Arrays;
 
 public enum PreconditionFailure {
+	ANALYSIS_FAILED(18),
 	CURRENTLY_NOT_HANDLED(14),
 	HAS_SIDE_EFFECTS(8),
 	HAS_SIDE_EFFECTS2(9),
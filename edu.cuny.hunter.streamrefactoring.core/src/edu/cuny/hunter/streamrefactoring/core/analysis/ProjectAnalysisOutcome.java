@@ -0,0 +1,110 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.util.Optional;
+
+import org.eclipse.jdt.core.IJavaProject;
+
+/**
+ * The outcome of analyzing a single {@link IJavaProject} with a
+ * {@link StreamAnalyzer}, i.e., how long the analysis took, how many
+ * {@link Stream}s and stream instances it covered, and why it failed, if it
+ * did. A failing project
+ * doesn't prevent the remaining projects from being analyzed.
+ */
+public final class ProjectAnalysisOutcome {
+
+	private final Throwable failure;
+
+	private final boolean hasEntryPoints;
+
+	private final int numberOfProcessedStreamInstances;
+
+	private final int numberOfSkippedStreamInstances;
+
+	private final int numberOfStreams;
+
+	private final IJavaProject project;
+
+	private final long time;
+
+	ProjectAnalysisOutcome(IJavaProject project, int numberOfStreams, long time, boolean hasEntryPoints,
+			int numberOfProcessedStreamInstances, int numberOfSkippedStreamInstances, Throwable failure) {
+		this.project = project;
+		this.numberOfStreams = numberOfStreams;
+		this.time = time;
+		this.hasEntryPoints = hasEntryPoints;
+		this.numberOfProcessedStreamInstances = numberOfProcessedStreamInstances;
+		this.numberOfSkippedStreamInstances = numberOfSkippedStreamInstances;
+		this.failure = failure;
+	}
+
+	/**
+	 * @return The cause of the project's analysis failing or
+	 *         {@link Optional#empty()} if it didn't fail.
+	 */
+	public Optional<Throwable> getFailure() {
+		return Optional.ofNullable(this.failure);
+	}
+
+	/**
+	 * @return The number of stream instances processed by the typestate analysis
+	 *         of the project.
+	 */
+	public int getNumberOfProcessedStreamInstances() {
+		return this.numberOfProcessedStreamInstances;
+	}
+
+	/**
+	 * @return The number of stream instances skipped by the typestate analysis
+	 *         of the project.
+	 */
+	public int getNumberOfSkippedStreamInstances() {
+		return this.numberOfSkippedStreamInstances;
+	}
+
+	/**
+	 * @return The number of {@link Stream}s in the project when its analysis
+	 *         started.
+	 */
+	public int getNumberOfStreams() {
+		return this.numberOfStreams;
+	}
+
+	/**
+	 * @return The project analyzed. Projects merged into it share this outcome.
+	 */
+	public IJavaProject getProject() {
+		return this.project;
+	}
+
+	/**
+	 * @return The wall-clock time in milliseconds spent analyzing the project.
+	 */
+	public long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * @return True iff entry points were found for the project. Only meaningful
+	 *         if the analysis didn't fail.
+	 */
+	public boolean hasEntryPoints() {
+		return this.hasEntryPoints;
+	}
+
+	/**
+	 * @return True iff the project's analysis failed.
+	 */
+	public boolean hasFailed() {
+		return this.failure != null;
+	}
+
+	@Override
+	public String toString() {
+		return "ProjectAnalysisOutcome [project=" + this.project.getElementName() + ", numberOfStreams="
+				+ this.numberOfStreams + ", time=" + this.time + ", hasEntryPoints=" + this.hasEntryPoints
+				+ ", numberOfProcessedStreamInstances=" + this.numberOfProcessedStreamInstances
+				+ ", numberOfSkippedStreamInstances=" + this.numberOfSkippedStreamInstances + ", failure="
+				+ this.failure + "]";
+	}
+}
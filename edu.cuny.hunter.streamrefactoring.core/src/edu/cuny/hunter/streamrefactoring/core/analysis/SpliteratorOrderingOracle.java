@@ -0,0 +1,376 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import static edu.cuny.hunter.streamrefactoring.core.wala.AnalysisUtils.isJDKClass;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.ImmutableMap;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSANewInstruction;
+import com.ibm.wala.ssa.SSAReturnInstruction;
+import com.ibm.wala.ssa.SymbolTable;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.MethodReference;
+import com.ibm.wala.types.Selector;
+import com.ibm.wala.types.TypeName;
+import com.ibm.wala.types.TypeReference;
+
+import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
+
+/**
+ * Statically infers whether the {@link Spliterator}s of a class have the
+ * {@link Spliterator#ORDERED} characteristic without loading nor instantiating
+ * the class. JDK classes are looked up in a table of their (Java 8) spliterator
+ * characteristics, while application classes are inferred from the
+ * implementation of their spliterator() methods in the class hierarchy. Like
+ * the reflective inference, nothing is inferred for interfaces and abstract
+ * classes.
+ */
+public class SpliteratorOrderingOracle {
+
+	private static final Selector CHARACTERISTICS_SELECTOR = Selector.make("characteristics()I");
+
+	private static final String CONSTRUCTOR_NAME = "<init>";
+
+	/**
+	 * The ordering of the {@link Spliterator}s returned by the JDK implementations
+	 * of {@link Iterable#spliterator()} keyed by the binary name of the concrete
+	 * class declaring the implementation. The default methods of interfaces aren't
+	 * listed as they are commonly overridden.
+	 */
+	private static final Map<String, Ordering> JDK_SPLITERATOR_ORDERINGS = ImmutableMap.<String, Ordering>builder()
+			// lists.
+			.put("java.util.ArrayList", Ordering.ORDERED).put("java.util.ArrayList$SubList", Ordering.ORDERED)
+			.put("java.util.Arrays$ArrayList", Ordering.ORDERED).put("java.util.LinkedList", Ordering.ORDERED)
+			.put("java.util.Vector", Ordering.ORDERED).put("java.util.Collections$EmptyList", Ordering.UNORDERED)
+			.put("java.util.Collections$SingletonList", Ordering.ORDERED)
+			.put("java.util.concurrent.CopyOnWriteArrayList", Ordering.ORDERED)
+			// sets.
+			.put("java.util.HashSet", Ordering.UNORDERED).put("java.util.LinkedHashSet", Ordering.ORDERED)
+			.put("java.util.TreeSet", Ordering.ORDERED).put("java.util.Collections$EmptySet", Ordering.UNORDERED)
+			.put("java.util.Collections$SingletonSet", Ordering.ORDERED)
+			.put("java.util.concurrent.ConcurrentSkipListSet", Ordering.ORDERED)
+			.put("java.util.concurrent.CopyOnWriteArraySet", Ordering.UNORDERED)
+			// queues.
+			.put("java.util.ArrayDeque", Ordering.ORDERED).put("java.util.PriorityQueue", Ordering.UNORDERED)
+			.put("java.util.concurrent.ArrayBlockingQueue", Ordering.ORDERED)
+			.put("java.util.concurrent.ConcurrentLinkedDeque", Ordering.ORDERED)
+			.put("java.util.concurrent.ConcurrentLinkedQueue", Ordering.ORDERED)
+			.put("java.util.concurrent.LinkedBlockingDeque", Ordering.ORDERED)
+			.put("java.util.concurrent.LinkedBlockingQueue", Ordering.ORDERED)
+			.put("java.util.concurrent.LinkedTransferQueue", Ordering.ORDERED)
+			.put("java.util.concurrent.PriorityBlockingQueue", Ordering.UNORDERED)
+			.put("java.util.concurrent.SynchronousQueue", Ordering.UNORDERED)
+			// map views.
+			.put("java.util.HashMap$EntrySet", Ordering.UNORDERED).put("java.util.HashMap$KeySet", Ordering.UNORDERED)
+			.put("java.util.HashMap$Values", Ordering.UNORDERED)
+			.put("java.util.IdentityHashMap$EntrySet", Ordering.UNORDERED)
+			.put("java.util.IdentityHashMap$KeySet", Ordering.UNORDERED)
+			.put("java.util.IdentityHashMap$Values", Ordering.UNORDERED)
+			.put("java.util.LinkedHashMap$LinkedEntrySet", Ordering.ORDERED)
+			.put("java.util.LinkedHashMap$LinkedKeySet", Ordering.ORDERED)
+			.put("java.util.LinkedHashMap$LinkedValues", Ordering.ORDERED)
+			.put("java.util.TreeMap$EntrySet", Ordering.ORDERED).put("java.util.TreeMap$KeySet", Ordering.ORDERED)
+			.put("java.util.TreeMap$Values", Ordering.ORDERED)
+			.put("java.util.WeakHashMap$EntrySet", Ordering.UNORDERED)
+			.put("java.util.WeakHashMap$KeySet", Ordering.UNORDERED)
+			.put("java.util.WeakHashMap$Values", Ordering.UNORDERED)
+			.put("java.util.concurrent.ConcurrentHashMap$EntrySetView", Ordering.UNORDERED)
+			.put("java.util.concurrent.ConcurrentHashMap$KeySetView", Ordering.UNORDERED)
+			.put("java.util.concurrent.ConcurrentHashMap$ValuesView", Ordering.UNORDERED)
+			.put("java.util.concurrent.ConcurrentSkipListMap$EntrySet", Ordering.ORDERED)
+			.put("java.util.concurrent.ConcurrentSkipListMap$KeySet", Ordering.ORDERED)
+			.put("java.util.concurrent.ConcurrentSkipListMap$Values", Ordering.ORDERED).build();
+
+	/**
+	 * The ordering of the streams returned by JDK stream creation methods of
+	 * non-iterable types keyed by the binary name of the declaring class and the
+	 * method name.
+	 */
+	private static final Map<String, Ordering> JDK_STREAM_METHOD_ORDERINGS = ImmutableMap.<String, Ordering>builder()
+			.put("java.io.BufferedReader#lines", Ordering.ORDERED).put("java.lang.CharSequence#chars", Ordering.ORDERED)
+			.put("java.lang.CharSequence#codePoints", Ordering.ORDERED).put("java.util.BitSet#stream", Ordering.ORDERED)
+			.put("java.util.Random#doubles", Ordering.UNORDERED).put("java.util.Random#ints", Ordering.UNORDERED)
+			.put("java.util.Random#longs", Ordering.UNORDERED)
+			.put("java.util.SplittableRandom#doubles", Ordering.UNORDERED)
+			.put("java.util.SplittableRandom#ints", Ordering.UNORDERED)
+			.put("java.util.SplittableRandom#longs", Ordering.UNORDERED)
+			.put("java.util.concurrent.ThreadLocalRandom#doubles", Ordering.UNORDERED)
+			.put("java.util.concurrent.ThreadLocalRandom#ints", Ordering.UNORDERED)
+			.put("java.util.concurrent.ThreadLocalRandom#longs", Ordering.UNORDERED)
+			.put("java.util.jar.JarFile#stream", Ordering.ORDERED)
+			.put("java.util.regex.Pattern#splitAsStream", Ordering.ORDERED)
+			.put("java.util.zip.ZipFile#stream", Ordering.ORDERED).build();
+
+	private static final String KEY_SEPARATOR = "#";
+
+	private static final Logger LOGGER = Logger.getLogger(LoggerNames.LOGGER_NAME);
+
+	private static final Selector SPLITERATOR_SELECTOR = Selector.make("spliterator()Ljava/util/Spliterator;");
+
+	private static final TypeReference SPLITERATOR_TYPE = TypeReference.findOrCreate(ClassLoaderReference.Primordial,
+			"Ljava/util/Spliterator");
+
+	private static final TypeName SPLITERATORS_TYPE_NAME = TypeName.string2TypeName("Ljava/util/Spliterators");
+
+	private static Ordering toOrdering(int characteristics) {
+		return (characteristics & Spliterator.ORDERED) != 0 ? Ordering.ORDERED : Ordering.UNORDERED;
+	}
+
+	/**
+	 * Used to build the {@link IR}s of application methods. Access is
+	 * synchronized as it isn't thread-safe.
+	 */
+	private final IAnalysisCacheView cache;
+
+	private final IClassHierarchy classHierarchy;
+
+	/**
+	 * Memoized orderings of the spliterator() and stream creation method
+	 * implementations.
+	 */
+	private final Map<IMethod, Optional<Ordering>> methodToOrdering = new ConcurrentHashMap<>();
+
+	public SpliteratorOrderingOracle(IClassHierarchy classHierarchy, IAnalysisCacheView cache) {
+		this.classHierarchy = classHierarchy;
+		this.cache = cache;
+	}
+
+	/**
+	 * Finds the implementations of each overload of the non-static method with
+	 * the given name in the given class or its supertypes.
+	 */
+	private Set<IMethod> findMethods(IClass clazz, String methodName) {
+		Set<Selector> selectors = new HashSet<>();
+
+		for (IMethod method : clazz.getAllMethods())
+			if (!method.isStatic() && method.getName().toString().equals(methodName))
+				selectors.add(method.getSelector());
+
+		// resolve overridden methods to their implementations.
+		return selectors.stream().map(clazz::getMethod).filter(Objects::nonNull).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Returns the characteristics reported by the given {@link Spliterator}
+	 * class, provided that its characteristics() method returns a constant.
+	 */
+	private Optional<Integer> getConstantCharacteristics(IClass spliteratorClass) {
+		IMethod method = spliteratorClass.getMethod(CHARACTERISTICS_SELECTOR);
+
+		if (method == null || method.isAbstract() || isJDKClass(method.getDeclaringClass()))
+			return Optional.empty();
+
+		IR ir = this.getIR(method);
+
+		if (ir == null)
+			return Optional.empty();
+
+		SymbolTable symbolTable = ir.getSymbolTable();
+		Integer ret = null;
+
+		for (SSAInstruction instruction : ir.getInstructions())
+			if (instruction instanceof SSAReturnInstruction) {
+				int use = ((SSAReturnInstruction) instruction).getResult();
+
+				if (!symbolTable.isIntegerConstant(use))
+					return Optional.empty();
+
+				int characteristics = symbolTable.getIntValue(use);
+
+				if (ret == null)
+					ret = characteristics;
+				else if (toOrdering(ret) != toOrdering(characteristics))
+					return Optional.empty();
+			}
+
+		return Optional.ofNullable(ret);
+	}
+
+	private IR getIR(IMethod method) {
+		synchronized (this.cache) {
+			return this.cache.getIR(method);
+		}
+	}
+
+	/**
+	 * Returns the constant passed as the last argument to the given invocation,
+	 * provided that it is an int.
+	 */
+	private Optional<Integer> getLastIntegerConstantArgument(SSAAbstractInvokeInstruction instruction,
+			SymbolTable symbolTable) {
+		MethodReference target = instruction.getDeclaredTarget();
+		int numberOfParameters = target.getNumberOfParameters();
+
+		if (numberOfParameters == 0 || target.getParameterType(numberOfParameters - 1) != TypeReference.Int)
+			return Optional.empty();
+
+		int use = instruction.getUse(instruction.getNumberOfUses() - 1);
+
+		if (!symbolTable.isIntegerConstant(use))
+			return Optional.empty();
+
+		return Optional.of(symbolTable.getIntValue(use));
+	}
+
+	/**
+	 * Infers the ordering of the streams created by calling the given method on
+	 * instances of the given type.
+	 *
+	 * @param typeReference    The type of the receiver.
+	 * @param calledMethodName The name of the stream creation method. Only used
+	 *                         for types that aren't {@link Iterable}. As the
+	 *                         called overload isn't known, each overload must
+	 *                         have the same inferred ordering.
+	 * @return The inferred {@link Ordering} or {@link Optional#empty()} if it can't
+	 *         be inferred statically, e.g., the type is an interface or abstract.
+	 */
+	public Optional<Ordering> inferOrdering(TypeReference typeReference, String calledMethodName) {
+		IClass clazz = this.classHierarchy.lookupClass(typeReference);
+
+		// the receiver may be of any concrete subtype.
+		if (clazz == null || clazz.isInterface() || clazz.isAbstract())
+			return Optional.empty();
+
+		Set<IMethod> methods;
+
+		if (Util.implementsIterable(typeReference, this.classHierarchy)) {
+			IMethod method = clazz.getMethod(SPLITERATOR_SELECTOR);
+			methods = method == null ? Collections.emptySet() : Collections.singleton(method);
+		} else
+			methods = this.findMethods(clazz, calledMethodName);
+
+		Set<Optional<Ordering>> orderings = methods.stream()
+				.map(m -> this.methodToOrdering.computeIfAbsent(m, this::inferOrdering)).collect(Collectors.toSet());
+
+		// the overloads must agree.
+		Optional<Ordering> ret = orderings.size() == 1 ? orderings.iterator().next() : Optional.empty();
+
+		LOGGER.fine(() -> "Statically inferred ordering of: " + typeReference + " as: " + ret);
+		return ret;
+	}
+
+	private Optional<Ordering> inferOrdering(IMethod method) {
+		IClass declaringClass = method.getDeclaringClass();
+		String binaryName = Util.getBinaryName(declaringClass.getReference());
+
+		if (method.getSelector().equals(SPLITERATOR_SELECTOR)) {
+			Ordering ordering = JDK_SPLITERATOR_ORDERINGS.get(binaryName);
+
+			if (ordering != null)
+				return Optional.of(ordering);
+		} else {
+			Ordering ordering = JDK_STREAM_METHOD_ORDERINGS
+					.get(binaryName + KEY_SEPARATOR + method.getName().toString());
+
+			if (ordering != null)
+				return Optional.of(ordering);
+		}
+
+		// JDK classes not in the tables are left to the caller.
+		if (isJDKClass(declaringClass) || method.isAbstract())
+			return Optional.empty();
+
+		return this.inferOrderingFromImplementation(method);
+	}
+
+	/**
+	 * Infers the ordering from the characteristics of the {@link Spliterator}s
+	 * created by the given application method, i.e., the constant characteristics
+	 * passed to {@link java.util.Spliterators} factory methods or to the
+	 * constructors of JDK {@link Spliterator} classes, or those reported by the
+	 * {@link Spliterator} classes instantiated. Nothing is inferred if the method
+	 * instantiates an application subclass that inherits its characteristics()
+	 * method from the JDK, since the characteristics passed to the subclass's
+	 * constructor can't be told apart from its other arguments.
+	 */
+	private Optional<Ordering> inferOrderingFromImplementation(IMethod method) {
+		IR ir = this.getIR(method);
+
+		if (ir == null)
+			return Optional.empty();
+
+		IClass spliteratorClass = this.classHierarchy.lookupClass(SPLITERATOR_TYPE);
+		SymbolTable symbolTable = ir.getSymbolTable();
+		Set<Ordering> orderings = EnumSet.noneOf(Ordering.class);
+
+		for (SSAInstruction instruction : ir.getInstructions())
+			if (instruction instanceof SSAAbstractInvokeInstruction) {
+				SSAAbstractInvokeInstruction invokeInstruction = (SSAAbstractInvokeInstruction) instruction;
+				MethodReference target = invokeInstruction.getDeclaredTarget();
+				boolean factoryMethod = target.getDeclaringClass().getName().equals(SPLITERATORS_TYPE_NAME)
+						&& target.getName().toString().startsWith("spliterator");
+
+				if (factoryMethod) {
+					Optional<Integer> characteristics = this.getLastIntegerConstantArgument(invokeInstruction,
+							symbolTable);
+
+					if (characteristics.isPresent())
+						orderings.add(toOrdering(characteristics.get()));
+					else
+						return Optional.empty();
+				} else if (this.isSpliteratorConstructor(target, spliteratorClass)) {
+					// only the arguments of JDK constructors are known to be characteristics.
+					if (!isJDKClass(this.classHierarchy.lookupClass(target.getDeclaringClass())))
+						return Optional.empty();
+
+					Optional<Integer> characteristics = this.getLastIntegerConstantArgument(invokeInstruction,
+							symbolTable);
+
+					if (characteristics.isPresent())
+						orderings.add(toOrdering(characteristics.get()));
+				}
+			} else if (instruction instanceof SSANewInstruction && spliteratorClass != null) {
+				IClass newClass = this.classHierarchy
+						.lookupClass(((SSANewInstruction) instruction).getConcreteType());
+
+				if (newClass != null && this.classHierarchy.implementsInterface(newClass, spliteratorClass)) {
+					Optional<Integer> characteristics = this.getConstantCharacteristics(newClass);
+
+					if (characteristics.isPresent())
+						orderings.add(toOrdering(characteristics.get()));
+				}
+			}
+
+		// the implementation must consistently create spliterators we know about.
+		if (orderings.size() == 1)
+			return Optional.of(orderings.iterator().next());
+		else
+			return Optional.empty();
+	}
+
+	/**
+	 * Returns true iff the given method is a constructor of a {@link Spliterator}
+	 * class that inherits its characteristics() method from the JDK, e.g., a JDK
+	 * class or an anonymous subclass of
+	 * {@link java.util.Spliterators.AbstractSpliterator}.
+	 */
+	private boolean isSpliteratorConstructor(MethodReference target, IClass spliteratorClass) {
+		if (spliteratorClass == null || !target.getName().toString().equals(CONSTRUCTOR_NAME))
+			return false;
+
+		IClass clazz = this.classHierarchy.lookupClass(target.getDeclaringClass());
+
+		if (clazz == null || !this.classHierarchy.implementsInterface(clazz, spliteratorClass))
+			return false;
+
+		IMethod characteristicsMethod = clazz.getMethod(CHARACTERISTICS_SELECTOR);
+		return characteristicsMethod != null && isJDKClass(characteristicsMethod.getDeclaringClass());
+	}
+}
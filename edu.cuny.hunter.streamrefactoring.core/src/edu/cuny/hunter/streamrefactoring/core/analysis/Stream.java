@@ -420,7 +420,10 @@ public class Stream {
 			if (resolvedMethod == null)
 				throw new UnhandledCaseException("Couldn't retrieve enclosing WALA method. Most likely an AIC #155.");
 
-			this.enclosingMethodDeclarationIR = engine.getCache().getIR(resolvedMethod);
+			// the IR cache isn't thread-safe.
+			synchronized (engine.getCache()) {
+				this.enclosingMethodDeclarationIR = engine.getCache().getIR(resolvedMethod);
+			}
 
 			if (this.enclosingMethodDeclarationIR == null)
 				throw new IllegalStateException("IR is null for: " + resolvedMethod);
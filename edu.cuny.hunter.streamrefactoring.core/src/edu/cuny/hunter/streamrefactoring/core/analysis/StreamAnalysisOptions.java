@@ -0,0 +1,244 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * The options tuning how streams are analyzed, e.g., how many threads each
+ * phase uses and which results are reused. They are set once on the
+ * refactoring processor and passed down to the {@link StreamAnalyzer} and the
+ * {@link StreamStateMachine}.
+ */
+public class StreamAnalysisOptions {
+
+	private static final int NUMBER_OF_INFERENCE_THREADS_DEFAULT = 1;
+
+	private static final int NUMBER_OF_PARSER_THREADS_DEFAULT = 1;
+
+	private static final int NUMBER_OF_PROJECT_THREADS_DEFAULT = 1;
+
+	private static final int NUMBER_OF_PRUNING_THREADS_DEFAULT = 1;
+
+	private static final int NUMBER_OF_TYPESTATE_SOLVER_THREADS_DEFAULT = 1;
+
+	/**
+	 * Analyze projects depending on each other as a single analysis scope and
+	 * call graph.
+	 */
+	private boolean mergeDependentProjects;
+
+	/**
+	 * The N to use for streams whose call strings lack application code, or 0 if
+	 * they shouldn't be reanalyzed.
+	 */
+	private int nForRefinedStreams;
+
+	/**
+	 * The number of threads to use for inferring initial stream attributes.
+	 */
+	private int numberOfInferenceThreads = NUMBER_OF_INFERENCE_THREADS_DEFAULT;
+
+	/**
+	 * The number of threads to use for parsing and visiting batches of
+	 * compilation units.
+	 */
+	private int numberOfParserThreads = NUMBER_OF_PARSER_THREADS_DEFAULT;
+
+	/**
+	 * The number of projects to analyze concurrently. Since each project builds
+	 * its own call graph and pointer analysis, this is also what bounds the heap
+	 * used by the concurrently analyzed projects.
+	 */
+	private int numberOfProjectThreads = NUMBER_OF_PROJECT_THREADS_DEFAULT;
+
+	/**
+	 * The number of threads to use for pruning the call graph.
+	 */
+	private int numberOfPruningThreads = NUMBER_OF_PRUNING_THREADS_DEFAULT;
+
+	/**
+	 * The number of threads to use for running the typestate solvers.
+	 */
+	private int numberOfTypestateSolverThreads = NUMBER_OF_TYPESTATE_SOLVER_THREADS_DEFAULT;
+
+	/**
+	 * The file in which inferred orderings are persisted across runs or
+	 * <code>null</code> if they shouldn't be.
+	 */
+	private File orderingMemoFile;
+
+	/**
+	 * Record the typestate states of each stream instance as soon as it's solved
+	 * instead of keeping every instance's solver result until the end.
+	 */
+	private boolean streamInstanceResults;
+
+	/**
+	 * Parse compilation units in batches instead of one at a time.
+	 */
+	private boolean useBatchParsing;
+
+	/**
+	 * Only track the stream instances derived from the streams found in the
+	 * source code during typestate analysis.
+	 */
+	private boolean useCandidateStreamSolver;
+
+	/**
+	 * Reuse the analysis of projects whose sources and configuration haven't
+	 * changed since previous invocations.
+	 */
+	private boolean useIncrementalAnalysis;
+
+	/**
+	 * Track the execution mode and the ordering of streams in a single typestate
+	 * solver pass.
+	 */
+	private boolean useProductAutomaton;
+
+	/**
+	 * Share the primordial (JDK) class loader among the class hierarchies of all
+	 * analyzed projects.
+	 */
+	private boolean useSharedPrimordialClassLoader;
+
+	public int getNForRefinedStreams() {
+		return this.nForRefinedStreams;
+	}
+
+	public int getNumberOfInferenceThreads() {
+		return this.numberOfInferenceThreads;
+	}
+
+	public int getNumberOfParserThreads() {
+		return this.numberOfParserThreads;
+	}
+
+	public int getNumberOfProjectThreads() {
+		return this.numberOfProjectThreads;
+	}
+
+	public int getNumberOfPruningThreads() {
+		return this.numberOfPruningThreads;
+	}
+
+	public int getNumberOfTypestateSolverThreads() {
+		return this.numberOfTypestateSolverThreads;
+	}
+
+	public File getOrderingMemoFile() {
+		return this.orderingMemoFile;
+	}
+
+	/**
+	 * Returns the options that may change the outcome of the analysis. Options
+	 * that only change how fast the outcome is computed, e.g., the numbers of
+	 * threads, are excluded so that outcomes computed with different ones may be
+	 * reused.
+	 *
+	 * @return A description of the options that may change the analysis outcome.
+	 */
+	public String getOutcomeDeterminingOptions() {
+		return Arrays.toString(new Object[] { this.shouldMergeDependentProjects(), this.getNForRefinedStreams(),
+				this.shouldUseCandidateStreamSolver(), this.shouldUseProductAutomaton() });
+	}
+
+	public void setMergeDependentProjects(boolean mergeDependentProjects) {
+		this.mergeDependentProjects = mergeDependentProjects;
+	}
+
+	public void setNForRefinedStreams(int nForRefinedStreams) {
+		this.nForRefinedStreams = nForRefinedStreams;
+	}
+
+	public void setNumberOfInferenceThreads(int numberOfInferenceThreads) {
+		this.numberOfInferenceThreads = numberOfInferenceThreads;
+	}
+
+	public void setNumberOfParserThreads(int numberOfParserThreads) {
+		this.numberOfParserThreads = numberOfParserThreads;
+	}
+
+	public void setNumberOfProjectThreads(int numberOfProjectThreads) {
+		this.numberOfProjectThreads = numberOfProjectThreads;
+	}
+
+	public void setNumberOfPruningThreads(int numberOfPruningThreads) {
+		this.numberOfPruningThreads = numberOfPruningThreads;
+	}
+
+	public void setNumberOfTypestateSolverThreads(int numberOfTypestateSolverThreads) {
+		this.numberOfTypestateSolverThreads = numberOfTypestateSolverThreads;
+	}
+
+	public void setOrderingMemoFile(File orderingMemoFile) {
+		this.orderingMemoFile = orderingMemoFile;
+	}
+
+	public void setStreamInstanceResults(boolean streamInstanceResults) {
+		this.streamInstanceResults = streamInstanceResults;
+	}
+
+	public void setUseBatchParsing(boolean useBatchParsing) {
+		this.useBatchParsing = useBatchParsing;
+	}
+
+	public void setUseCandidateStreamSolver(boolean useCandidateStreamSolver) {
+		this.useCandidateStreamSolver = useCandidateStreamSolver;
+	}
+
+	public void setUseIncrementalAnalysis(boolean useIncrementalAnalysis) {
+		this.useIncrementalAnalysis = useIncrementalAnalysis;
+	}
+
+	public void setUseProductAutomaton(boolean useProductAutomaton) {
+		this.useProductAutomaton = useProductAutomaton;
+	}
+
+	public void setUseSharedPrimordialClassLoader(boolean useSharedPrimordialClassLoader) {
+		this.useSharedPrimordialClassLoader = useSharedPrimordialClassLoader;
+	}
+
+	public boolean shouldMergeDependentProjects() {
+		return this.mergeDependentProjects;
+	}
+
+	public boolean shouldStreamInstanceResults() {
+		return this.streamInstanceResults;
+	}
+
+	public boolean shouldUseBatchParsing() {
+		return this.useBatchParsing;
+	}
+
+	public boolean shouldUseCandidateStreamSolver() {
+		return this.useCandidateStreamSolver;
+	}
+
+	public boolean shouldUseIncrementalAnalysis() {
+		return this.useIncrementalAnalysis;
+	}
+
+	public boolean shouldUseProductAutomaton() {
+		return this.useProductAutomaton;
+	}
+
+	public boolean shouldUseSharedPrimordialClassLoader() {
+		return this.useSharedPrimordialClassLoader;
+	}
+
+	@Override
+	public String toString() {
+		return "mergeDependentProjects: " + this.shouldMergeDependentProjects() + ", nForRefinedStreams: "
+				+ this.getNForRefinedStreams() + ", numberOfInferenceThreads: " + this.getNumberOfInferenceThreads()
+				+ ", numberOfParserThreads: " + this.getNumberOfParserThreads() + ", numberOfProjectThreads: "
+				+ this.getNumberOfProjectThreads() + ", numberOfPruningThreads: " + this.getNumberOfPruningThreads()
+				+ ", numberOfTypestateSolverThreads: " + this.getNumberOfTypestateSolverThreads()
+				+ ", orderingMemoFile: " + this.getOrderingMemoFile() + ", streamInstanceResults: "
+				+ this.shouldStreamInstanceResults() + ", useBatchParsing: " + this.shouldUseBatchParsing()
+				+ ", useCandidateStreamSolver: "
+				+ this.shouldUseCandidateStreamSolver() + ", useIncrementalAnalysis: "
+				+ this.shouldUseIncrementalAnalysis() + ", useProductAutomaton: " + this.shouldUseProductAutomaton()
+				+ ", useSharedPrimordialClassLoader: " + this.shouldUseSharedPrimordialClassLoader();
+	}
+}
@@ -6,14 +6,27 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.BaseStream;
@@ -23,8 +36,10 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.IMethodBinding;
 import org.eclipse.jdt.core.dom.ITypeBinding;
@@ -33,6 +48,7 @@ import org.eclipse.jdt.internal.corext.util.JdtFlags;
 
 import com.ibm.safe.internal.exceptions.PropertiesException;
 import com.ibm.safe.rules.TypestateRule;
+import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions.ReflectionOptions;
 import com.ibm.wala.ipa.callgraph.CallGraph;
@@ -42,8 +58,10 @@ import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.SSAInvokeInstruction;
 import com.ibm.wala.ssa.SSAOptions;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.scope.JUnitEntryPoints;
 
 import edu.cuny.hunter.streamrefactoring.core.analysis.StreamStateMachine.Statistics;
@@ -51,11 +69,22 @@ import edu.cuny.hunter.streamrefactoring.core.messages.Messages;
 import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
 import edu.cuny.hunter.streamrefactoring.core.utils.TimeCollector;
 import edu.cuny.hunter.streamrefactoring.core.wala.EclipseProjectAnalysisEngine;
+import edu.cuny.hunter.streamrefactoring.core.wala.TypeInferenceCache;
 
 @SuppressWarnings("restriction")
 public class StreamAnalyzer extends ASTVisitor {
 
-	private static final String ENTRY_POINT_FILENAME = "entry_points.txt";
+	/**
+	 * The number of stream instances processed and skipped by the typestate
+	 * analyses of a single project.
+	 */
+	private static class StreamInstanceStatistics {
+		private int numberOfProcessedStreamInstances;
+
+		private int numberOfSkippedStreamInstances;
+	}
+
+	public static final String ENTRY_POINT_FILENAME = "entry_points.txt";
 
 	private static final Logger LOGGER = Logger.getLogger(LoggerNames.LOGGER_NAME);
 
@@ -67,6 +96,15 @@ public class StreamAnalyzer extends ASTVisitor {
 				LOGGER.info(() -> "Adding implicit entry point: " + implicitEntryPoint);
 	}
 
+	/**
+	 * Removes the stream orderings memoized in memory, e.g., so that they are
+	 * loaded from {@link StreamAnalysisOptions#getOrderingMemoFile()} by the next
+	 * analysis.
+	 */
+	public static void clearOrderingMemo() {
+		OrderingInference.clearMemo();
+	}
+
 	/**
 	 * Read entry_points.txt and get a set of method signatures, then, get entry
 	 * points by those signatures
@@ -98,7 +136,7 @@ public class StreamAnalyzer extends ASTVisitor {
 	 *            The target file.
 	 * @return null if the file does not exist and file if we found the file.
 	 */
-	private static File getEntryPointsFile(IPath directory, String fileName) {
+	public static File getEntryPointsFile(IPath directory, String fileName) {
 		// If file does not exist, find the file in upper level.
 		Path directoryPath = Paths.get(directory.toString());
 
@@ -114,12 +152,136 @@ public class StreamAnalyzer extends ASTVisitor {
 			return file;
 	}
 
+	/**
+	 * Finds the entry points files of the projects analyzed by the given engine.
+	 *
+	 * @param engine
+	 *            The engine whose projects' entry points files to find.
+	 * @return The entry points files found, in a stable order.
+	 */
+	private static Set<File> getEntryPointsFiles(EclipseProjectAnalysisEngine<InstanceKey> engine) {
+		Set<File> ret = new TreeSet<>();
+
+		for (IJavaProject project : engine.getProjects()) {
+			File file = getEntryPointsFile(project.getResource().getLocation(), ENTRY_POINT_FILENAME);
+
+			if (file != null)
+				ret.add(file);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * Infers the initial attributes of the given {@link Stream}.
+	 *
+	 * @param stream
+	 *            The {@link Stream} whose initial attributes to infer.
+	 * @param engine
+	 *            The engine whose call graph has been built.
+	 * @param orderingInference
+	 *            The {@link OrderingInference} to use.
+	 * @return False iff the given {@link Stream} isn't considered to create a new
+	 *         stream and should be removed from consideration.
+	 */
+	private static boolean inferInitialAttributes(Stream stream, EclipseProjectAnalysisEngine<InstanceKey> engine,
+			OrderingInference orderingInference) throws CoreException {
+		try {
+			stream.inferInitialAttributes(engine, orderingInference);
+		} catch (InvalidClassFileException | IOException e) {
+			LOGGER.log(Level.SEVERE, "Exception encountered while processing: " + stream.getCreation() + ".", e);
+			throw new RuntimeException(e);
+		} catch (UnhandledCaseException e) {
+			LOGGER.log(Level.WARNING, "Unhandled case encountered while processing: " + stream.getCreation(), e);
+			stream.addStatusEntry(PreconditionFailure.CURRENTLY_NOT_HANDLED,
+					"Stream: " + stream.getCreation() + " has an unhandled case: " + e.getMessage());
+		} catch (StreamCreationNotConsideredException e) {
+			LOGGER.log(Level.WARNING, "Unconsidered case encountered while processing: " + stream.getCreation(), e);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Merges the streams of projects depending on each other, directly or
+	 * transitively through other projects being analyzed, into the streams of a
+	 * single project of each such group, namely, the one requiring the most
+	 * projects of its group. The merged projects are then analyzed along with
+	 * that project.
+	 *
+	 * @param projectToStreams
+	 *            The streams of each project to be analyzed. This will be
+	 *            mutated.
+	 * @return A {@link Map} from each project remaining in the given
+	 *         {@link Map} to the projects merged into it.
+	 */
+	private static Map<IJavaProject, Set<IJavaProject>> mergeDependentProjects(
+			Map<IJavaProject, Set<Stream>> projectToStreams) throws JavaModelException {
+		Map<String, IJavaProject> nameToProject = new HashMap<>();
+		Map<IJavaProject, Set<IJavaProject>> projectToRequiredProjects = new HashMap<>();
+
+		for (IJavaProject project : projectToStreams.keySet())
+			nameToProject.put(project.getElementName(), project);
+
+		for (IJavaProject project : projectToStreams.keySet())
+			projectToRequiredProjects.put(project, Arrays.stream(project.getRequiredProjectNames())
+					.map(nameToProject::get).filter(p -> p != null && !p.equals(project)).collect(Collectors.toSet()));
+
+		// the undirected dependencies between the projects.
+		Map<IJavaProject, Set<IJavaProject>> projectToNeighbors = new HashMap<>();
+
+		projectToRequiredProjects.forEach((project, requiredProjects) -> {
+			projectToNeighbors.computeIfAbsent(project, p -> new HashSet<>()).addAll(requiredProjects);
+			requiredProjects.forEach(p -> projectToNeighbors.computeIfAbsent(p, q -> new HashSet<>()).add(project));
+		});
+
+		Map<IJavaProject, Set<IJavaProject>> ret = new HashMap<>();
+		Set<IJavaProject> seen = new HashSet<>();
+
+		for (IJavaProject project : projectToRequiredProjects.keySet()) {
+			if (!seen.add(project))
+				continue;
+
+			// collect the group of the project.
+			Set<IJavaProject> group = new HashSet<>();
+			Deque<IJavaProject> worklist = new ArrayDeque<>();
+			worklist.push(project);
+
+			while (!worklist.isEmpty()) {
+				IJavaProject current = worklist.pop();
+				group.add(current);
+
+				for (IJavaProject neighbor : projectToNeighbors.get(current))
+					if (seen.add(neighbor))
+						worklist.push(neighbor);
+			}
+
+			IJavaProject representative = group.stream()
+					.max(Comparator.<IJavaProject>comparingInt(p -> projectToRequiredProjects.get(p).size())
+							.thenComparing(IJavaProject::getElementName, Comparator.reverseOrder()))
+					.get();
+
+			group.remove(representative);
+
+			for (IJavaProject mergedProject : group)
+				projectToStreams.get(representative).addAll(projectToStreams.remove(mergedProject));
+
+			if (!group.isEmpty())
+				LOGGER.info(() -> "Analyzing projects: " + group.stream().map(IJavaProject::getElementName).sorted()
+						.collect(Collectors.toList()) + " along with: " + representative.getElementName() + ".");
+
+			ret.put(representative, group);
+		}
+
+		return ret;
+	}
+
 	/**
 	 * Map from {@link EclipseProjectAnalysisEngine}s that have their
 	 * {@link CallGraph}s built to the {@link Entrypoint}s that were used to build
 	 * the graph.
 	 */
-	private Map<EclipseProjectAnalysisEngine<InstanceKey>, Collection<Entrypoint>> enginesWithBuiltCallGraphsToEntrypointsUsed = new HashMap<>();
+	private Map<EclipseProjectAnalysisEngine<InstanceKey>, Collection<Entrypoint>> enginesWithBuiltCallGraphsToEntrypointsUsed = new ConcurrentHashMap<>();
 
 	private boolean findImplicitBenchmarkEntryPoints;
 
@@ -134,9 +296,26 @@ public class StreamAnalyzer extends ASTVisitor {
 	 */
 	private int nForStreams = N_FOR_STREAMS_DEFAULT;
 
-	private int numberOfProcessedStreamInstances;
+	/**
+	 * The number of stream instances processed by the analyses of all projects.
+	 * Projects analyzed concurrently add to it atomically.
+	 */
+	private AtomicInteger numberOfProcessedStreamInstances = new AtomicInteger();
 
-	private int numberOfSkippedStreamInstances;
+	/**
+	 * The number of stream instances skipped by the analyses of all projects.
+	 */
+	private AtomicInteger numberOfSkippedStreamInstances = new AtomicInteger();
+
+	/**
+	 * The options tuning the analysis.
+	 */
+	private StreamAnalysisOptions options = new StreamAnalysisOptions();
+
+	/**
+	 * The outcome of the analysis of each project.
+	 */
+	private Map<IJavaProject, ProjectAnalysisOutcome> projectToOutcome = new ConcurrentHashMap<>();
 
 	private Set<Stream> streamSet = new HashSet<>();
 
@@ -202,120 +381,342 @@ public class StreamAnalyzer extends ASTVisitor {
 	 */
 	public Map<IJavaProject, Collection<Entrypoint>> analyze(Optional<TimeCollector> collector,
 			IProgressMonitor monitor) throws CoreException {
-		SubMonitor subMonitor = SubMonitor.convert(monitor, "Analyzing...", IProgressMonitor.UNKNOWN);
-
-		LOGGER.fine(() -> "Using N = " + this.getNForStreams() + ".");
+		File orderingMemoFile = this.getOptions().getOrderingMemoFile();
 
-		Map<IJavaProject, Collection<Entrypoint>> ret = new HashMap<>();
+		// if orderings should be persisted across runs.
+		if (orderingMemoFile != null && orderingMemoFile.exists())
+			try {
+				OrderingInference.loadMemo(orderingMemoFile);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Could not load ordering memo from: " + orderingMemoFile + ".", e);
+			}
 
-		// collect the projects to be analyzed.
-		Map<IJavaProject, Set<Stream>> projectToStreams = this.getStreamSet().stream().filter(s -> s.getStatus().isOK())
-				.collect(Collectors.groupingBy(Stream::getCreationJavaProject, Collectors.toSet()));
+		try {
+			return this.analyzeProjects(collector, monitor);
+		} finally {
+			if (orderingMemoFile != null)
+				try {
+					OrderingInference.saveMemo(orderingMemoFile);
+				} catch (IOException e) {
+					LOGGER.log(Level.WARNING, "Could not save ordering memo to: " + orderingMemoFile + ".", e);
+				}
+		}
+	}
 
-		// process each project.
-		subMonitor.beginTask("Processing projects ...", projectToStreams.keySet().size());
+	/**
+	 * Analyzes the given {@link Stream}s of the given project.
+	 *
+	 * @param project
+	 *            The project to analyze.
+	 * @param streamSet
+	 *            The {@link Stream}s created in the project. This will be
+	 *            mutated.
+	 * @param mergedProjects
+	 *            The projects to analyze along with the given project.
+	 * @param collector
+	 *            To exclude from the time certain parts of the analysis.
+	 * @param subMonitor
+	 *            The monitor of the project's analysis.
+	 * @param ret
+	 *            The {@link Map} to which to save the entry points used.
+	 * @param refinedCallSites
+	 *            The call sites, along with the signatures of their enclosing
+	 *            methods, whose streams to analyze with a deeper context. If
+	 *            empty, streams lacking application code in their call strings
+	 *            are subsequently reanalyzed with a deeper context if configured.
+	 * @param statistics
+	 *            The statistics of the project's analysis to which to add.
+	 * @return False iff the project has no entry points.
+	 */
+	private boolean analyzeProject(IJavaProject project, Set<Stream> streamSet, Set<IJavaProject> mergedProjects,
+			Optional<TimeCollector> collector, SubMonitor subMonitor, Map<IJavaProject, Collection<Entrypoint>> ret,
+			Set<Pair<String, CallSiteReference>> refinedCallSites, StreamInstanceStatistics statistics)
+			throws CoreException {
+		// create the analysis engine for the project.
+		// exclude from the analysis because the IR will be built here.
+
+		collector.ifPresent(TimeCollector::start);
+		EclipseProjectAnalysisEngine<InstanceKey> engine = null;
+		try {
+			engine = new EclipseProjectAnalysisEngine<>(project, mergedProjects, this.getNForStreams());
+			// the shared loader isn't thread-safe.
+			engine.setUseSharedPrimordialClassLoader(this.getOptions().shouldUseSharedPrimordialClassLoader()
+					&& this.getOptions().getNumberOfProjectThreads() <= 1);
+			engine.setRefinedCallSites(refinedCallSites, this.getOptions().getNForRefinedStreams());
+			engine.buildAnalysisScope();
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, "Could not create analysis engine for: " + project.getElementName(), e);
+			throw new RuntimeException(e);
+		}
+		collector.ifPresent(TimeCollector::stop);
+
+		// build the call graph for the project.
+		Collection<Entrypoint> entryPoints = null;
+		try {
+			entryPoints = this.buildCallGraph(engine, collector,
+					subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
+		} catch (IOException | CoreException | CancelException e) {
+			LOGGER.log(Level.SEVERE,
+					"Exception encountered while building call graph for: " + project.getElementName() + ".", e);
+			throw new RuntimeException(e);
+		}
 
-		for (IJavaProject project : projectToStreams.keySet()) {
-			// create the analysis engine for the project.
-			// exclude from the analysis because the IR will be built here.
+		// save the entry points. Reanalyses keep those of the first analysis.
+		for (IJavaProject analyzedProject : engine.getProjects())
+			ret.putIfAbsent(analyzedProject, entryPoints);
 
-			collector.ifPresent(TimeCollector::start);
-			EclipseProjectAnalysisEngine<InstanceKey> engine = null;
-			try {
-				engine = new EclipseProjectAnalysisEngine<>(project, this.getNForStreams());
-				engine.buildAnalysisScope();
-			} catch (IOException e) {
-				LOGGER.log(Level.SEVERE, "Could not create analysis engine for: " + project.getElementName(), e);
-				throw new RuntimeException(e);
-			}
-			collector.ifPresent(TimeCollector::stop);
+		if (!refinedCallSites.isEmpty() && !entryPoints.isEmpty()) {
+			int numberOfNodes = engine.getCallGraph().getNumberOfNodes();
+			LOGGER.info(() -> "Refined call graph of: " + project.getElementName() + " has " + numberOfNodes
+					+ " nodes.");
+		}
 
-			// build the call graph for the project.
-			Collection<Entrypoint> entryPoints = null;
-			try {
-				entryPoints = this.buildCallGraph(engine, collector,
-						subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
-			} catch (IOException | CoreException | CancelException e) {
-				LOGGER.log(Level.SEVERE,
-						"Exception encountered while building call graph for: " + project.getElementName() + ".", e);
-				throw new RuntimeException(e);
-			}
+		if (entryPoints.isEmpty()) {
+			// add a status entry for each stream in the project
+			for (Stream stream : streamSet)
+				stream.addStatusEntry(PreconditionFailure.NO_ENTRY_POINT,
+						"Project: " + engine.getProject().getElementName() + " has no entry points.");
+			return false;
+		}
 
-			// save the entry points.
-			ret.put(project, entryPoints);
+		OrderingInference orderingInference = new OrderingInference(engine.getClassHierarchy(), engine.getCache());
 
-			Set<Stream> streamSet = projectToStreams.get(project);
+		subMonitor.beginTask("Inferring initial stream attributes...", streamSet.size());
 
-			if (entryPoints.isEmpty()) {
-				// add a status entry for each stream in the project
-				for (Stream stream : streamSet)
-					stream.addStatusEntry(PreconditionFailure.NO_ENTRY_POINT,
-							"Project: " + engine.getProject().getElementName() + " has no entry points.");
-				return ret;
-			}
+		if (this.getOptions().getNumberOfInferenceThreads() > 1) {
+			// streams that aren't considered to be new streams.
+			Set<Stream> unconsideredStreams = this.inferInitialAttributes(streamSet, engine, orderingInference);
 
-			OrderingInference orderingInference = new OrderingInference(engine.getClassHierarchy());
+			// remove them from consideration.
+			streamSet.removeAll(unconsideredStreams);
 
-			subMonitor.beginTask("Inferring initial stream attributes...", streamSet.size());
+			synchronized (this.getStreamSet()) {
+				this.getStreamSet().removeAll(unconsideredStreams);
+			}
 
+			subMonitor.worked(streamSet.size() + unconsideredStreams.size());
+		} else
 			for (Iterator<Stream> iterator = streamSet.iterator(); iterator.hasNext();) {
 				Stream stream = iterator.next();
-				try {
-					stream.inferInitialAttributes(engine, orderingInference);
-				} catch (InvalidClassFileException | IOException e) {
-					LOGGER.log(Level.SEVERE, "Exception encountered while processing: " + stream.getCreation() + ".",
-							e);
-					throw new RuntimeException(e);
-				} catch (UnhandledCaseException e) {
-					LOGGER.log(Level.WARNING, "Unhandled case encountered while processing: " + stream.getCreation(),
-							e);
-					stream.addStatusEntry(PreconditionFailure.CURRENTLY_NOT_HANDLED,
-							"Stream: " + stream.getCreation() + " has an unhandled case: " + e.getMessage());
-				} catch (StreamCreationNotConsideredException e) {
-					LOGGER.log(Level.WARNING, "Unconsidered case encountered while processing: " + stream.getCreation(),
-							e);
+
+				if (!inferInitialAttributes(stream, engine, orderingInference)) {
 					// remove it from consideration.
 					iterator.remove();
-					this.getStreamSet().remove(stream);
+
+					synchronized (this.getStreamSet()) {
+						this.getStreamSet().remove(stream);
+					}
 				}
 				subMonitor.worked(1);
 			}
 
-			// start the state machine for each valid stream in the project.
-			StreamStateMachine stateMachine = new StreamStateMachine();
-			try {
-				Map<TypestateRule, StreamStateMachine.Statistics> ruleToStats = stateMachine.start(
-						streamSet.parallelStream().filter(s -> s.getStatus().isOK()).collect(Collectors.toSet()),
-						engine, orderingInference,
-						subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
-
-				// use just one the rules.
-				assert !ruleToStats.isEmpty() : "Should have stats available.";
-				Statistics statistics = ruleToStats.values().iterator().next();
-
-				this.setNumberOfProcessedStreamInstances(statistics.getNumberOfStreamInstancesProcessed());
-				this.setNumberOfSkippedStreamInstances(statistics.getNumberOfStreamInstancesSkipped());
-			} catch (PropertiesException | CancelException | NoniterableException | NoninstantiableException
-					| CannotExtractSpliteratorException | InvalidClassFileException | IOException e) {
-				LOGGER.log(Level.SEVERE, "Error while starting state machine.", e);
-				throw new RuntimeException(e);
-			}
+		// start the state machine for each valid stream in the project.
+		StreamStateMachine stateMachine = new StreamStateMachine(this.getOptions());
+		try {
+			Map<TypestateRule, StreamStateMachine.Statistics> ruleToStats = stateMachine.start(
+					streamSet.parallelStream().filter(s -> s.getStatus().isOK()).collect(Collectors.toSet()),
+					engine, orderingInference,
+					subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
+
+			// use just one the rules.
+			assert !ruleToStats.isEmpty() : "Should have stats available.";
+			Statistics ruleStatistics = ruleToStats.values().iterator().next();
+
+			statistics.numberOfProcessedStreamInstances += ruleStatistics.getNumberOfStreamInstancesProcessed();
+			statistics.numberOfSkippedStreamInstances += ruleStatistics.getNumberOfStreamInstancesSkipped();
+		} catch (PropertiesException | CancelException | NoniterableException | NoninstantiableException
+				| CannotExtractSpliteratorException | InvalidClassFileException | IOException e) {
+			LOGGER.log(Level.SEVERE, "Error while starting state machine.", e);
+			throw new RuntimeException(e);
+		}
 
-			// check preconditions.
-			SubMonitor checkMonitor = subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE);
-			checkMonitor.beginTask(Messages.CheckingPreconditions, streamSet.size());
+		TypeInferenceCache typeInferenceCache = engine.getTypeInferenceCache();
+		LOGGER.fine(typeInferenceCache::toString);
 
-			for (Stream stream : streamSet.parallelStream().filter(s -> s.getStatus().isOK())
-					.collect(Collectors.toSet())) {
-				stream.check();
-				checkMonitor.worked(1);
-			}
+		// check preconditions.
+		SubMonitor checkMonitor = subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE);
+		checkMonitor.beginTask(Messages.CheckingPreconditions, streamSet.size());
+
+		for (Stream stream : streamSet.parallelStream().filter(s -> s.getStatus().isOK())
+				.collect(Collectors.toSet())) {
+			stream.check();
+			checkMonitor.worked(1);
+		}
+
+		subMonitor.worked(1);
+
+		// if streams lacking application code in their call strings should be
+		// reanalyzed with a deeper context.
+		if (refinedCallSites.isEmpty() && this.getOptions().getNForRefinedStreams() > this.getNForStreams())
+			this.refineStreams(project, streamSet, mergedProjects, engine, collector, subMonitor, ret, statistics);
+
+		return true;
+	}
+
+	/**
+	 * Analyzes the given project such that its failure doesn't affect the
+	 * analysis of other projects. The streams of a failing project are marked as
+	 * {@link PreconditionFailure#ANALYSIS_FAILED}. Either way, the outcome is
+	 * recorded for the project and the projects merged into it and its
+	 * statistics are added to those of this {@link StreamAnalyzer}.
+	 *
+	 * @see #analyzeProject(IJavaProject, Set, Set, Optional, SubMonitor, Map, Set,
+	 *      StreamInstanceStatistics)
+	 */
+	private void analyzeProjectInIsolation(IJavaProject project, Set<Stream> streamSet,
+			Set<IJavaProject> mergedProjects, Optional<TimeCollector> collector, SubMonitor subMonitor,
+			Map<IJavaProject, Collection<Entrypoint>> ret) {
+		int numberOfStreams = streamSet.size();
+		long start = System.currentTimeMillis();
+		StreamInstanceStatistics statistics = new StreamInstanceStatistics();
+		ProjectAnalysisOutcome outcome;
+
+		try {
+			boolean hasEntryPoints = this.analyzeProject(project, streamSet, mergedProjects, collector, subMonitor,
+					ret, Collections.emptySet(), statistics);
+			outcome = new ProjectAnalysisOutcome(project, numberOfStreams, System.currentTimeMillis() - start,
+					hasEntryPoints, statistics.numberOfProcessedStreamInstances,
+					statistics.numberOfSkippedStreamInstances, null);
+		} catch (OperationCanceledException e) {
+			throw e;
+		} catch (CoreException | RuntimeException e) {
+			LOGGER.log(Level.SEVERE, "Analysis of project: " + project.getElementName() + " failed.", e);
+
+			// the failure may have interrupted excluding time.
+			collector.filter(TimeCollector::isStarted).ifPresent(TimeCollector::stop);
+
+			// the streams of the project weren't fully analyzed.
+			for (Stream stream : streamSet)
+				stream.addStatusEntry(PreconditionFailure.ANALYSIS_FAILED,
+						"Analysis of project: " + project.getElementName() + " failed: " + e + ".");
+
+			outcome = new ProjectAnalysisOutcome(project, numberOfStreams, System.currentTimeMillis() - start, false,
+					statistics.numberOfProcessedStreamInstances, statistics.numberOfSkippedStreamInstances, e);
+		}
+
+		LOGGER.info(outcome.toString());
+
+		this.numberOfProcessedStreamInstances.addAndGet(outcome.getNumberOfProcessedStreamInstances());
+		this.numberOfSkippedStreamInstances.addAndGet(outcome.getNumberOfSkippedStreamInstances());
+
+		this.projectToOutcome.put(project, outcome);
+
+		for (IJavaProject mergedProject : mergedProjects)
+			this.projectToOutcome.put(mergedProject, outcome);
+	}
+
+	private Map<IJavaProject, Collection<Entrypoint>> analyzeProjects(Optional<TimeCollector> collector,
+			IProgressMonitor monitor) throws CoreException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, "Analyzing...", IProgressMonitor.UNKNOWN);
+
+		LOGGER.fine(() -> "Using N = " + this.getNForStreams() + ".");
+
+		// the classes of a shared loader are lazily initialized, including their
+		// softly referenced bytecode, and thus can't be shared across threads.
+		if (this.getOptions().shouldUseSharedPrimordialClassLoader()
+				&& this.getOptions().getNumberOfProjectThreads() > 1)
+			LOGGER.warning(() -> "Ignoring the shared primordial class loader since "
+					+ this.getOptions().getNumberOfProjectThreads() + " project threads are used.");
+
+		Map<IJavaProject, Collection<Entrypoint>> ret = new ConcurrentHashMap<>();
+
+		// collect the projects to be analyzed.
+		Map<IJavaProject, Set<Stream>> projectToStreams = this.getStreamSet().stream().filter(s -> s.getStatus().isOK())
+				.collect(Collectors.groupingBy(Stream::getCreationJavaProject, Collectors.toSet()));
+
+		// the projects analyzed along with each project.
+		Map<IJavaProject, Set<IJavaProject>> projectToMergedProjects = this.getOptions().shouldMergeDependentProjects()
+				? mergeDependentProjects(projectToStreams)
+				: Collections.emptyMap();
+
+		// process each project.
+		subMonitor.beginTask("Processing projects ...", projectToStreams.keySet().size());
+
+		if (this.getOptions().getNumberOfProjectThreads() > 1 && projectToStreams.size() > 1)
+			this.analyzeProjectsConcurrently(projectToStreams, projectToMergedProjects, subMonitor, ret);
+		else
+			for (IJavaProject project : projectToStreams.keySet())
+				this.analyzeProjectInIsolation(project, projectToStreams.get(project),
+						projectToMergedProjects.getOrDefault(project, Collections.emptySet()), collector, subMonitor,
+						ret);
 
-			subMonitor.worked(1);
-		} // end for each stream.
 		return ret;
 	}
 
+	/**
+	 * Analyzes the given projects concurrently using a fork-join pool with the
+	 * configured number of project threads. The number of threads is the only
+	 * bound on the heap used by the concurrently running pointer analyses; the
+	 * footprint of a project isn't known before its call graph is built, so the
+	 * threads should be chosen according to the maximum heap size and the largest
+	 * projects. Since {@link TimeCollector}s aren't thread-safe, no time is
+	 * excluded.
+	 *
+	 * @param projectToStreams
+	 *            The {@link Stream}s of each project to analyze.
+	 * @param projectToMergedProjects
+	 *            The projects to analyze along with each project.
+	 * @param subMonitor
+	 *            The monitor of the analysis.
+	 * @param ret
+	 *            The {@link Map} to which to save the entry points used.
+	 */
+	private void analyzeProjectsConcurrently(Map<IJavaProject, Set<Stream>> projectToStreams,
+			Map<IJavaProject, Set<IJavaProject>> projectToMergedProjects, SubMonitor subMonitor,
+			Map<IJavaProject, Collection<Entrypoint>> ret) throws CoreException {
+		LOGGER.info(() -> "Analyzing " + projectToStreams.size() + " projects using "
+				+ this.getOptions().getNumberOfProjectThreads() + " threads.");
+
+		// progress monitors aren't thread-safe, so the projects only get to check for
+		// cancellation. Progress is reported as each project finishes.
+		IProgressMonitor projectMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return subMonitor.isCanceled();
+			}
+		};
+
+		ForkJoinPool pool = new ForkJoinPool(this.getOptions().getNumberOfProjectThreads());
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>(projectToStreams.size());
+
+			for (IJavaProject project : projectToStreams.keySet())
+				tasks.add(pool.submit(() -> {
+					this.analyzeProjectInIsolation(project, projectToStreams.get(project),
+							projectToMergedProjects.getOrDefault(project, Collections.emptySet()), Optional.empty(),
+							SubMonitor.convert(projectMonitor), ret);
+					return null;
+				}));
+
+			for (ForkJoinTask<?> task : tasks) {
+				if (subMonitor.isCanceled())
+					throw new OperationCanceledException();
+
+				task.get();
+				subMonitor.worked(1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			// unwrap any core exceptions.
+			if (cause instanceof CoreException)
+				throw (CoreException) cause;
+			else if (cause instanceof RuntimeException && cause.getCause() instanceof CoreException)
+				throw (CoreException) cause.getCause();
+			else if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else if (cause instanceof Error)
+				throw (Error) cause;
+			else
+				throw new RuntimeException(cause);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
 	/**
 	 * Builds the call graph that is part of the
 	 * {@link EclipseProjectAnalysisEngine}.
@@ -336,15 +737,18 @@ public class StreamAnalyzer extends ASTVisitor {
 			collector.ifPresent(TimeCollector::start);
 			Set<Entrypoint> entryPoints;
 
-			// find the entry_points.txt in the project directory
-			File entryPointFile = getEntryPointsFile(engine.getProject().getResource().getLocation(),
-					ENTRY_POINT_FILENAME);
+			// find the entry_points.txt in the project directories.
+			Set<File> entryPointFiles = getEntryPointsFiles(engine);
 
-			// if the file was found,
-			if (entryPointFile != null) {
+			// if a file was found,
+			if (!entryPointFiles.isEmpty()) {
 				// find explicit entry points from entry_points.txt. Ignore the explicit
 				// (annotation-based) entry points.
-				entryPoints = findEntryPointsFromFile(engine.getClassHierarchy(), entryPointFile);
+				entryPoints = new HashSet<>();
+
+				for (File entryPointFile : entryPointFiles)
+					entryPoints.addAll(findEntryPointsFromFile(engine.getClassHierarchy(), entryPointFile));
+
 				entryPoints.forEach(ep -> LOGGER.info(() -> "Adding explicit entry point from file: " + ep));
 			} else {
 				// find explicit entry points.
@@ -385,13 +789,13 @@ public class StreamAnalyzer extends ASTVisitor {
 				}
 			}
 
+			collector.ifPresent(TimeCollector::stop);
+
 			if (entryPoints.isEmpty()) {
 				LOGGER.warning(() -> "Project: " + engine.getProject().getElementName() + " has no entry points.");
 				return entryPoints;
 			}
 
-			collector.ifPresent(TimeCollector::stop);
-
 			// set options.
 			AnalysisOptions options = engine.getDefaultOptions(entryPoints);
 			// Turn off reflection analysis.
@@ -415,17 +819,158 @@ public class StreamAnalyzer extends ASTVisitor {
 	}
 
 	public int getNumberOfProcessedStreamInstances() {
-		return this.numberOfProcessedStreamInstances;
+		return this.numberOfProcessedStreamInstances.get();
 	}
 
 	public int getNumberOfSkippedStreamInstances() {
-		return this.numberOfSkippedStreamInstances;
+		return this.numberOfSkippedStreamInstances.get();
+	}
+
+	public StreamAnalysisOptions getOptions() {
+		return this.options;
+	}
+
+	/**
+	 * Get the outcome of the analysis of each project analyzed so far.
+	 *
+	 * @return A {@link Map} from each analyzed project to its
+	 *         {@link ProjectAnalysisOutcome}.
+	 */
+	public Map<IJavaProject, ProjectAnalysisOutcome> getProjectToOutcome() {
+		return Collections.unmodifiableMap(this.projectToOutcome);
 	}
 
 	public Set<Stream> getStreamSet() {
 		return this.streamSet;
 	}
 
+	/**
+	 * Infers the initial attributes of the given {@link Stream}s in parallel
+	 * using a fork-join pool with the configured number of inference threads.
+	 *
+	 * @param streams
+	 *            The {@link Stream}s whose initial attributes to infer.
+	 * @param engine
+	 *            The engine whose call graph has been built.
+	 * @param orderingInference
+	 *            The {@link OrderingInference} to use.
+	 * @return The {@link Stream}s that aren't considered to create new streams.
+	 */
+	private Set<Stream> inferInitialAttributes(Set<Stream> streams, EclipseProjectAnalysisEngine<InstanceKey> engine,
+			OrderingInference orderingInference) throws CoreException {
+		// build the heap graph up front since it's lazily created.
+		engine.getHeapGraph();
+
+		ForkJoinPool pool = new ForkJoinPool(this.getOptions().getNumberOfInferenceThreads());
+		try {
+			return pool.submit(() -> streams.parallelStream().filter(s -> {
+				try {
+					return !inferInitialAttributes(s, engine, orderingInference);
+				} catch (CoreException e) {
+					throw new RuntimeException(e);
+				}
+			}).collect(Collectors.toSet())).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			// unwrap any core exceptions.
+			if (cause instanceof RuntimeException && cause.getCause() instanceof CoreException)
+				throw (CoreException) cause.getCause();
+			else if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else if (cause instanceof Error)
+				throw (Error) cause;
+			else
+				throw new RuntimeException(cause);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Reanalyzes the given project's {@link Stream}s whose call strings lacked
+	 * application code. Only the call strings of calls made on behalf of their
+	 * creation call sites use {@link #nForRefinedStreams}, so that the call graph
+	 * doesn't blow up elsewhere. The reanalyzed streams replace the original
+	 * ones, while the statistics of the reanalysis are added to those of the
+	 * original analysis and its entry points are kept.
+	 *
+	 * @param project
+	 *            The analyzed project.
+	 * @param streamSet
+	 *            The analyzed {@link Stream}s of the project. This will be
+	 *            mutated.
+	 * @param mergedProjects
+	 *            The projects analyzed along with the given project.
+	 * @param engine
+	 *            The engine used to analyze the project.
+	 * @param collector
+	 *            To exclude from the time certain parts of the analysis.
+	 * @param subMonitor
+	 *            The monitor of the project's analysis.
+	 * @param ret
+	 *            The {@link Map} to which to save the entry points used.
+	 * @param statistics
+	 *            The statistics of the project's analysis to which to add.
+	 */
+	private void refineStreams(IJavaProject project, Set<Stream> streamSet, Set<IJavaProject> mergedProjects,
+			EclipseProjectAnalysisEngine<InstanceKey> engine, Optional<TimeCollector> collector,
+			SubMonitor subMonitor, Map<IJavaProject, Collection<Entrypoint>> ret, StreamInstanceStatistics statistics)
+			throws CoreException {
+		Set<Pair<String, CallSiteReference>> refinedCallSites = new HashSet<>();
+		Set<Stream> refinedStreams = new HashSet<>();
+
+		for (Stream stream : new ArrayList<>(streamSet)) {
+			if (Arrays.stream(stream.getStatus().getEntries())
+					.noneMatch(e -> e.getCode() == PreconditionFailure.NO_APPLICATION_CODE_IN_CALL_STRINGS.getCode()))
+				continue;
+
+			Optional<SSAInvokeInstruction> instruction;
+			Stream refinedStream;
+			try {
+				instruction = stream.getInstructionForCreation(engine);
+
+				if (!instruction.isPresent())
+					continue;
+
+				refinedStream = new Stream(stream.getCreation());
+			} catch (InvalidClassFileException | IOException | UnhandledCaseException | ClassHierarchyException
+					| CancelException e) {
+				LOGGER.log(Level.WARNING, "Could not refine: " + stream.getCreation() + ".", e);
+				continue;
+			}
+
+			refinedCallSites.add(Pair.make(stream.getEnclosingMethodReference().getSignature(),
+					instruction.get().getCallSite()));
+
+			// replace the original stream.
+			streamSet.remove(stream);
+			streamSet.add(refinedStream);
+
+			synchronized (this.getStreamSet()) {
+				this.getStreamSet().remove(stream);
+				this.getStreamSet().add(refinedStream);
+			}
+
+			if (refinedStream.getStatus().isOK())
+				refinedStreams.add(refinedStream);
+		}
+
+		if (refinedCallSites.isEmpty())
+			return;
+
+		int numberOfNodes = engine.getCallGraph().getNumberOfNodes();
+		LOGGER.info(() -> "Reanalyzing " + refinedStreams.size() + " streams of: " + project.getElementName()
+				+ " using N = " + this.getOptions().getNForRefinedStreams() + ". The call graph using N = "
+				+ this.getNForStreams() + " has " + numberOfNodes + " nodes.");
+
+		this.analyzeProject(project, refinedStreams, mergedProjects, collector, subMonitor, ret, refinedCallSites,
+				statistics);
+	}
+
 	public void setFindImplicitBenchmarkEntryPoints(boolean findImplicitBenchmarkEntryPoints) {
 		this.findImplicitBenchmarkEntryPoints = findImplicitBenchmarkEntryPoints;
 	}
@@ -447,11 +992,15 @@ public class StreamAnalyzer extends ASTVisitor {
 	}
 
 	protected void setNumberOfProcessedStreamInstances(int numberOfProcessedStreamInstances) {
-		this.numberOfProcessedStreamInstances = numberOfProcessedStreamInstances;
+		this.numberOfProcessedStreamInstances.set(numberOfProcessedStreamInstances);
 	}
 
 	protected void setNumberOfSkippedStreamInstances(int numberOfSkippedStreamInstances) {
-		this.numberOfSkippedStreamInstances = numberOfSkippedStreamInstances;
+		this.numberOfSkippedStreamInstances.set(numberOfSkippedStreamInstances);
+	}
+
+	public void setOptions(StreamAnalysisOptions options) {
+		this.options = options;
 	}
 
 	public boolean shouldFindImplicitBenchmarkEntryPoints() {
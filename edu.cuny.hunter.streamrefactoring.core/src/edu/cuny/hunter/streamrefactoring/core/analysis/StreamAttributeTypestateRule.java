@@ -77,4 +77,22 @@ public abstract class StreamAttributeTypestateRule extends TypestateRule {
 		this.getTypeStateAutomaton().addTransition(transition);
 		return transition;
 	}
+
+	/**
+	 * Selects the state resulting from merging the given state of a stream with
+	 * the given state of its predecessor. A bottom state defers to the state of
+	 * the predecessor.
+	 *
+	 * @param state
+	 *            The state of the stream.
+	 * @param predecessorState
+	 *            The state of the stream's predecessor.
+	 * @return The merged state.
+	 */
+	protected IDFAState selectState(IDFAState state, IDFAState predecessorState) {
+		if (state.getName().equals(BOTTOM_STATE_NAME))
+			return predecessorState;
+		else
+			return state;
+	}
 }
\ No newline at end of file
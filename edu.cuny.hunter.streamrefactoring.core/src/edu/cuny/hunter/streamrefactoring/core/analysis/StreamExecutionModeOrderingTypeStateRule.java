@@ -0,0 +1,131 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.ibm.safe.dfa.IDFAState;
+import com.ibm.safe.dfa.events.IDispatchEvent;
+import com.ibm.wala.classLoader.IClass;
+
+/**
+ * Tracks both the execution mode and the ordering of streams using the product
+ * of the automata of {@link StreamExecutionModeTypeStateRule} and
+ * {@link StreamOrderingTypeStateRule}, so that a single solver pass yields both
+ * attributes. Each component of a state is either an attribute or bottom.
+ */
+public class StreamExecutionModeOrderingTypeStateRule extends StreamAttributeTypestateRule {
+
+	/**
+	 * @return The index of the given attribute in {@link #states}.
+	 */
+	private static int getIndex(Enum<?> constant) {
+		return constant == null ? 0 : constant.ordinal() + 1;
+	}
+
+	private static String getStateName(Enum<?> constant) {
+		return constant == null ? BOTTOM_STATE_NAME : constant.name().toLowerCase();
+	}
+
+	protected Map<IDFAState, ExecutionMode> dfaStateToExecutionMap;
+
+	protected Map<IDFAState, Ordering> dfaStateToOrderingMap;
+
+	/**
+	 * The states indexed by the ordinal of their execution mode and ordering plus
+	 * one, where 0 is bottom.
+	 */
+	protected IDFAState[][] states;
+
+	public StreamExecutionModeOrderingTypeStateRule(IClass streamClass) {
+		super(streamClass, "execution mode and ordering");
+	}
+
+	@Override
+	protected void addAutomaton() {
+		super.addAutomaton();
+
+		ExecutionMode[] executionModes = ExecutionMode.values();
+		Ordering[] orderings = Ordering.values();
+
+		this.dfaStateToExecutionMap = new HashMap<>();
+		this.dfaStateToOrderingMap = new HashMap<>();
+		this.states = new IDFAState[executionModes.length + 1][orderings.length + 1];
+
+		for (int i = 0; i <= executionModes.length; i++)
+			for (int j = 0; j <= orderings.length; j++) {
+				// index 0 is bottom.
+				ExecutionMode executionMode = i == 0 ? null : executionModes[i - 1];
+				Ordering ordering = j == 0 ? null : orderings[j - 1];
+				IDFAState state;
+
+				if (executionMode == null && ordering == null)
+					state = this.bottomState;
+				else
+					state = this.addState(getStateName(executionMode) + "_" + getStateName(ordering));
+
+				this.states[i][j] = state;
+				this.dfaStateToExecutionMap.put(state, executionMode);
+				this.dfaStateToOrderingMap.put(state, ordering);
+			}
+
+		IDispatchEvent parallelEvent = this.addEvent("parallel", ".*parallel\\(\\).*");
+		IDispatchEvent sequentialEvent = this.addEvent("sequential", ".*sequential\\(\\).*");
+		IDispatchEvent sortedEvent = this.addEvent("sorted", ".*sorted\\(.*\\).*");
+		IDispatchEvent unorderedEvent = this.addEvent("unordered", ".*unordered\\(\\).*");
+
+		// TODO: Need to add concat().
+		for (int i = 0; i <= executionModes.length; i++)
+			for (int j = 0; j <= orderings.length; j++) {
+				IDFAState source = this.states[i][j];
+
+				// each event changes one component of the state.
+				this.addTransition(source, this.states[getIndex(ExecutionMode.PARALLEL)][j], parallelEvent);
+				this.addTransition(source, this.states[getIndex(ExecutionMode.SEQUENTIAL)][j], sequentialEvent);
+				this.addTransition(source, this.states[i][getIndex(Ordering.ORDERED)], sortedEvent);
+				this.addTransition(source, this.states[i][getIndex(Ordering.UNORDERED)], unorderedEvent);
+			}
+	}
+
+	@Override
+	protected void addPossibleAttributes(Stream stream, Collection<IDFAState> states) {
+		super.addPossibleAttributes(stream, states);
+
+		Set<ExecutionMode> executionModes = states.stream().map(this::getStreamExecutionMode)
+				.collect(Collectors.toSet());
+		stream.addPossibleExecutionModeCollection(executionModes);
+
+		Set<Ordering> orderings = states.stream().map(this::getOrdering).collect(Collectors.toSet());
+		stream.addPossibleOrderingCollection(orderings);
+	}
+
+	public Ordering getOrdering(IDFAState state) {
+		return this.dfaStateToOrderingMap.get(state);
+	}
+
+	protected ExecutionMode getStreamExecutionMode(IDFAState state) {
+		return this.dfaStateToExecutionMap.get(state);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Each bottom component of the given state defers to the corresponding
+	 * component of the predecessor's state.
+	 */
+	@Override
+	protected IDFAState selectState(IDFAState state, IDFAState predecessorState) {
+		ExecutionMode executionMode = this.getStreamExecutionMode(state);
+		Ordering ordering = this.getOrdering(state);
+
+		if (executionMode == null)
+			executionMode = this.getStreamExecutionMode(predecessorState);
+
+		if (ordering == null)
+			ordering = this.getOrdering(predecessorState);
+
+		return this.states[getIndex(executionMode)][getIndex(ordering)];
+	}
+}
@@ -0,0 +1,309 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.util.intset.MutableMapping;
+
+/**
+ * The graph from stream instances to their immediate predecessors, i.e., the
+ * receivers of the calls that created them. Instances are numbered densely and
+ * the graph is condensed into its strongly connected components, which are
+ * numbered such that the components of an instance's predecessors come before
+ * its own. The ancestors and origins of each component are computed once, as
+ * bit sets, when the graph is built, so that neither long pipelines nor cycles
+ * lead to deep recursion.
+ */
+final class StreamInstanceGraph {
+
+	/**
+	 * The ancestors of the instances of each component, i.e., the instances
+	 * reachable through one or more predecessor edges, indexed by instance.
+	 */
+	private final BitSet[] componentToAncestors;
+
+	/**
+	 * The instances of each component.
+	 */
+	private final int[][] componentToInstances;
+
+	/**
+	 * The origins of the instances of each component, i.e., the reachable
+	 * instances without predecessors, indexed by instance.
+	 */
+	private final BitSet[] componentToOrigins;
+
+	/**
+	 * The components, other than itself, containing predecessors of each
+	 * component's instances.
+	 */
+	private final int[][] componentToPredecessorComponents;
+
+	private final MutableMapping<InstanceKey> instanceMapping = MutableMapping.make();
+
+	private final int[] instanceToComponent;
+
+	private final int[][] instanceToPredecessors;
+
+	/**
+	 * Create a new {@link StreamInstanceGraph}.
+	 *
+	 * @param instanceToPredecessors Each stream instance's immediate
+	 *                               predecessors. Predecessors that aren't keys
+	 *                               have no predecessors of their own.
+	 */
+	StreamInstanceGraph(Map<InstanceKey, Set<InstanceKey>> instanceToPredecessors) {
+		for (Map.Entry<InstanceKey, Set<InstanceKey>> entry : instanceToPredecessors.entrySet()) {
+			this.instanceMapping.add(entry.getKey());
+			entry.getValue().forEach(this.instanceMapping::add);
+		}
+
+		int numberOfInstances = this.instanceMapping.getSize();
+		this.instanceToPredecessors = new int[numberOfInstances][];
+
+		for (int i = 0; i < numberOfInstances; i++) {
+			Set<InstanceKey> predecessors = instanceToPredecessors.get(this.instanceMapping.getMappedObject(i));
+			this.instanceToPredecessors[i] = predecessors == null ? new int[0]
+					: predecessors.stream().mapToInt(this.instanceMapping::getMappedIndex).toArray();
+		}
+
+		this.instanceToComponent = new int[numberOfInstances];
+		List<int[]> components = this.computeComponents();
+		int numberOfComponents = components.size();
+
+		this.componentToInstances = components.toArray(new int[numberOfComponents][]);
+		this.componentToPredecessorComponents = new int[numberOfComponents][];
+		this.componentToAncestors = new BitSet[numberOfComponents];
+		this.componentToOrigins = new BitSet[numberOfComponents];
+
+		// the components of predecessors come first.
+		for (int component = 0; component < numberOfComponents; component++) {
+			BitSet predecessorComponents = new BitSet();
+			BitSet ancestors = new BitSet(numberOfInstances);
+			BitSet origins = new BitSet(numberOfInstances);
+
+			for (int instance : this.componentToInstances[component]) {
+				int[] predecessors = this.instanceToPredecessors[instance];
+
+				// an instance without predecessors is its own origin.
+				if (predecessors.length == 0)
+					origins.set(instance);
+
+				for (int predecessor : predecessors) {
+					ancestors.set(predecessor);
+
+					int predecessorComponent = this.instanceToComponent[predecessor];
+
+					if (predecessorComponent != component)
+						predecessorComponents.set(predecessorComponent);
+				}
+			}
+
+			this.componentToPredecessorComponents[component] = predecessorComponents.stream().toArray();
+
+			for (int predecessorComponent : this.componentToPredecessorComponents[component]) {
+				ancestors.or(this.componentToAncestors[predecessorComponent]);
+				origins.or(this.componentToOrigins[predecessorComponent]);
+			}
+
+			this.componentToAncestors[component] = ancestors;
+			this.componentToOrigins[component] = origins;
+		}
+	}
+
+	/**
+	 * Computes the strongly connected components of the graph using an iterative
+	 * version of Tarjan's algorithm. Since a component is completed only after
+	 * the components reachable from it, the components of predecessors come
+	 * first.
+	 *
+	 * @return The instances of each component.
+	 */
+	private List<int[]> computeComponents() {
+		int numberOfInstances = this.instanceToPredecessors.length;
+		List<int[]> ret = new ArrayList<>();
+
+		int[] index = new int[numberOfInstances];
+		Arrays.fill(index, -1);
+		int[] lowLink = new int[numberOfInstances];
+		boolean[] onStack = new boolean[numberOfInstances];
+		int[] stack = new int[numberOfInstances];
+		int stackSize = 0;
+
+		// the instances being visited along with the next predecessor to visit.
+		int[] visitStack = new int[numberOfInstances];
+		int[] nextPredecessor = new int[numberOfInstances];
+		int visitStackSize = 0;
+
+		int nextIndex = 0;
+
+		for (int root = 0; root < numberOfInstances; root++) {
+			if (index[root] != -1)
+				continue;
+
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			visitStack[visitStackSize++] = root;
+
+			while (visitStackSize > 0) {
+				int instance = visitStack[visitStackSize - 1];
+				int[] predecessors = this.instanceToPredecessors[instance];
+
+				if (nextPredecessor[instance] < predecessors.length) {
+					int predecessor = predecessors[nextPredecessor[instance]++];
+
+					if (index[predecessor] == -1) {
+						// visit it.
+						index[predecessor] = lowLink[predecessor] = nextIndex++;
+						stack[stackSize++] = predecessor;
+						onStack[predecessor] = true;
+						visitStack[visitStackSize++] = predecessor;
+					} else if (onStack[predecessor])
+						lowLink[instance] = Math.min(lowLink[instance], index[predecessor]);
+				} else {
+					// done visiting the instance.
+					--visitStackSize;
+
+					if (visitStackSize > 0) {
+						int parent = visitStack[visitStackSize - 1];
+						lowLink[parent] = Math.min(lowLink[parent], lowLink[instance]);
+					}
+
+					// if it's the root of a component.
+					if (lowLink[instance] == index[instance]) {
+						int component = ret.size();
+						int start = stackSize;
+
+						do
+							onStack[stack[--start]] = false;
+						while (stack[start] != instance);
+
+						int[] instances = Arrays.copyOfRange(stack, start, stackSize);
+						stackSize = start;
+
+						for (int member : instances)
+							this.instanceToComponent[member] = component;
+
+						ret.add(instances);
+					}
+				}
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @param instance A stream instance.
+	 * @return The instances reachable from the given instance through one or more
+	 *         predecessor edges. Instances in a cycle are their own ancestors.
+	 */
+	Set<InstanceKey> getAncestors(InstanceKey instance) {
+		int index = this.instanceMapping.getMappedIndex(instance);
+
+		if (index == -1)
+			return Collections.emptySet();
+
+		return this.toInstances(this.componentToAncestors[this.instanceToComponent[index]]);
+	}
+
+	/**
+	 * @param instances Stream instances.
+	 * @return The ancestors of any of the given instances.
+	 * @see #getAncestors(InstanceKey)
+	 */
+	Set<InstanceKey> getAncestors(Collection<InstanceKey> instances) {
+		BitSet ret = new BitSet();
+
+		for (InstanceKey instance : instances) {
+			int index = this.instanceMapping.getMappedIndex(instance);
+
+			if (index != -1)
+				ret.or(this.componentToAncestors[this.instanceToComponent[index]]);
+		}
+
+		return this.toInstances(ret);
+	}
+
+	/**
+	 * @param instance A stream instance.
+	 * @return The component of the given instance or -1 if it isn't in the
+	 *         graph.
+	 */
+	int getComponent(InstanceKey instance) {
+		int index = this.instanceMapping.getMappedIndex(instance);
+		return index == -1 ? -1 : this.instanceToComponent[index];
+	}
+
+	/**
+	 * @param component A component of the graph.
+	 * @return The given component along with the components of its ancestors,
+	 *         which come first.
+	 */
+	BitSet getComponentClosure(int component) {
+		BitSet ret = new BitSet();
+		BitSet ancestors = this.componentToAncestors[component];
+
+		for (int ancestor = ancestors.nextSetBit(0); ancestor >= 0; ancestor = ancestors.nextSetBit(ancestor + 1))
+			ret.set(this.instanceToComponent[ancestor]);
+
+		ret.set(component);
+		return ret;
+	}
+
+	/**
+	 * @param component A component of the graph.
+	 * @return The instances of the given component.
+	 */
+	Collection<InstanceKey> getInstances(int component) {
+		int[] instances = this.componentToInstances[component];
+		List<InstanceKey> ret = new ArrayList<>(instances.length);
+
+		for (int instance : instances)
+			ret.add(this.instanceMapping.getMappedObject(instance));
+
+		return ret;
+	}
+
+	/**
+	 * @param instance A stream instance.
+	 * @return The instances without predecessors that are reachable from the
+	 *         given instance, i.e., the streams from which it may have been
+	 *         derived. An instance without predecessors is its own origin.
+	 */
+	Set<InstanceKey> getOrigins(InstanceKey instance) {
+		int index = this.instanceMapping.getMappedIndex(instance);
+
+		if (index == -1)
+			return Collections.singleton(instance);
+
+		return this.toInstances(this.componentToOrigins[this.instanceToComponent[index]]);
+	}
+
+	/**
+	 * @param component A component of the graph.
+	 * @return The components, other than the given one, containing immediate
+	 *         predecessors of the given component's instances.
+	 */
+	int[] getPredecessorComponents(int component) {
+		return this.componentToPredecessorComponents[component];
+	}
+
+	private Set<InstanceKey> toInstances(BitSet instances) {
+		Set<InstanceKey> ret = new HashSet<>(instances.cardinality());
+
+		for (int instance = instances.nextSetBit(0); instance >= 0; instance = instances.nextSetBit(instance + 1))
+			ret.add(this.instanceMapping.getMappedObject(instance));
+
+		return ret;
+	}
+}
@@ -1,36 +1,47 @@
 package edu.cuny.hunter.streamrefactoring.core.analysis;
 
 import static com.ibm.safe.typestate.core.AbstractWholeProgramSolver.DUMMY_ZERO;
-import static edu.cuny.hunter.streamrefactoring.core.analysis.StreamAttributeTypestateRule.BOTTOM_STATE_NAME;
+import static edu.cuny.hunter.streamrefactoring.core.safe.Util.instanceKeyCorrespondsWithInstantiationInstruction;
 
 import java.io.IOException;
 import java.io.UTFDataFormatException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.BinaryOperator;
-import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.JavaModelException;
 
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
+import com.google.common.collect.Table.Cell;
 import com.ibm.safe.Factoid;
 import com.ibm.safe.ICFGSupergraph;
-import com.ibm.safe.controller.ISafeSolver;
 import com.ibm.safe.dfa.IDFAState;
 import com.ibm.safe.internal.exceptions.MaxFindingsException;
 import com.ibm.safe.internal.exceptions.PropertiesException;
@@ -85,9 +96,11 @@ import com.ibm.wala.util.strings.Atom;
 
 import edu.cuny.hunter.streamrefactoring.core.safe.ModifiedBenignOracle;
 import edu.cuny.hunter.streamrefactoring.core.safe.NoApplicationCodeExistsInCallStringsException;
+import edu.cuny.hunter.streamrefactoring.core.safe.TrackingUniqueSolver;
 import edu.cuny.hunter.streamrefactoring.core.safe.TypestateSolverFactory;
 import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
 import edu.cuny.hunter.streamrefactoring.core.wala.CallStringWithReceivers;
+import edu.cuny.hunter.streamrefactoring.core.wala.DemandDrivenModRef;
 import edu.cuny.hunter.streamrefactoring.core.wala.EclipseProjectAnalysisEngine;
 
 public class StreamStateMachine {
@@ -110,6 +123,56 @@ public class StreamStateMachine {
 		}
 	}
 
+	/**
+	 * The result of running the typestate solver for a single rule. Each solver
+	 * fills in its own result so that solvers may run concurrently; the results
+	 * are merged once all of the solvers have finished.
+	 */
+	private static class RuleResult {
+		/**
+		 * A table mapping an instance and a block to the instance's possible states
+		 * at that block for this rule.
+		 */
+		private Table<InstanceKey, BasicBlockInContext<IExplodedBasicBlock>, Set<IDFAState>> instanceBlockStateTable = HashBasedTable
+				.create();
+
+		private StreamAttributeTypestateRule rule;
+
+		private Statistics statistics;
+
+		private Map<BasicBlockInContext<IExplodedBasicBlock>, OrdinalSet<InstanceKey>> terminalBlockToPossibleReceivers = new HashMap<>();
+
+		private Set<InstanceKey> trackedInstances = new HashSet<>();
+
+		RuleResult(StreamAttributeTypestateRule rule) {
+			this.rule = rule;
+		}
+	}
+
+	/**
+	 * A call to a terminal operation in client code along with the possible
+	 * receivers of the call.
+	 */
+	private static class TerminalOperationCall {
+		/**
+		 * The block containing the call.
+		 */
+		private ISSABasicBlock block;
+
+		/**
+		 * The call graph node representing the procedure containing the call.
+		 */
+		private CGNode node;
+
+		private OrdinalSet<InstanceKey> possibleReceivers;
+
+		TerminalOperationCall(CGNode node, ISSABasicBlock block, OrdinalSet<InstanceKey> possibleReceivers) {
+			this.node = node;
+			this.block = block;
+			this.possibleReceivers = possibleReceivers;
+		}
+	}
+
 	@SuppressWarnings("unused")
 	private static final String ARRAYS_STREAM_CREATION_METHOD_NAME = "Arrays.stream";
 
@@ -203,10 +266,124 @@ public class StreamStateMachine {
 			"java.util.stream.LongStream.collect", "java.util.stream.Stream.collect", };
 	// @formatter:on
 
+	/**
+	 * Records the states of the given instance at the given terminal operation
+	 * calls in the given rule result.
+	 *
+	 * @param ruleResult     The result in which to record the states.
+	 * @param instanceKey    The instance whose states to record.
+	 * @param instanceResult The typestate result of the given instance.
+	 * @param calls          The terminal operation calls.
+	 * @param terminalBlocks The blocks in context of the given calls in the
+	 *                       supergraph of the given instance result.
+	 */
+	private static void addInstanceResult(RuleResult ruleResult, InstanceKey instanceKey,
+			TypeStateResult instanceResult, Collection<TerminalOperationCall> calls,
+			Map<TerminalOperationCall, BasicBlockInContext<IExplodedBasicBlock>> terminalBlocks) {
+		// add to tracked instances.
+		ruleResult.trackedInstances.add(instanceKey);
+
+		// for each terminal operation call.
+		for (TerminalOperationCall call : calls) {
+			BasicBlockInContext<IExplodedBasicBlock> blockInContext = terminalBlocks.get(call);
+
+			// associate possible receivers with the blockInContext.
+			ruleResult.terminalBlockToPossibleReceivers.putIfAbsent(blockInContext, call.possibleReceivers);
+
+			IntSet resultingFacts = instanceResult.getResult().getResult(blockInContext);
+			for (IntIterator factIterator = resultingFacts.intIterator(); factIterator.hasNext();) {
+				int fact = factIterator.next();
+
+				// retrieve the state set for this instance and block.
+				Set<IDFAState> stateSet = ruleResult.instanceBlockStateTable.get(instanceKey, blockInContext);
+
+				// if it does not yet exist.
+				if (stateSet == null) {
+					// allocate a new set.
+					stateSet = new HashSet<>();
+
+					// place it in the table.
+					ruleResult.instanceBlockStateTable.put(instanceKey, blockInContext, stateSet);
+				}
+
+				// get the facts.
+				Factoid factoid = instanceResult.getDomain().getMappedObject(fact);
+				if (factoid != DUMMY_ZERO) {
+					BaseFactoid baseFactoid = (BaseFactoid) factoid;
+					assert baseFactoid.instance.equals(
+							instanceKey) : "Sanity check that the fact instance should be the same as the instance being examined.";
+
+					// add the encountered state to the set.
+					LOGGER.fine(() -> "Adding state: " + baseFactoid.state + " for instance: " + baseFactoid.instance
+							+ " for block: " + call.block + " for rule: " + ruleResult.rule.getName());
+					stateSet.add(baseFactoid.state);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the {@link IR} and {@link DefUse} of each node of the given call
+	 * graph using the given engine's cache.
+	 *
+	 * @return The built {@link IR}s and {@link DefUse}s.
+	 */
+	private static Collection<Object> buildIRsAndDefUses(CallGraph callGraph,
+			EclipseProjectAnalysisEngine<InstanceKey> engine) {
+		Collection<Object> ret = new ArrayList<>(2 * callGraph.getNumberOfNodes());
+
+		// the IR cache isn't thread-safe.
+		synchronized (engine.getCache()) {
+			for (CGNode node : callGraph) {
+				ret.add(node.getIR());
+				ret.add(node.getDU());
+			}
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @param instances The instances from which to start.
+	 * @param edges     The instances adjacent to each instance.
+	 * @return The given instances along with the instances reachable from them
+	 *         through the given edges.
+	 */
+	private static Set<InstanceKey> computeClosure(Collection<InstanceKey> instances,
+			Map<InstanceKey, Set<InstanceKey>> edges) {
+		Set<InstanceKey> ret = new HashSet<>();
+		Deque<InstanceKey> worklist = new ArrayDeque<>(instances);
+
+		while (!worklist.isEmpty()) {
+			InstanceKey instance = worklist.pop();
+
+			if (ret.add(instance))
+				worklist.addAll(edges.getOrDefault(instance, Collections.emptySet()));
+		}
+
+		return ret;
+	}
+
 	/**
 	 * The typestate rules to use.
 	 */
 	protected static StreamAttributeTypestateRule[] createStreamAttributeTypestateRules(IClass streamClass) {
+		return createStreamAttributeTypestateRules(streamClass, false);
+	}
+
+	/**
+	 * The typestate rules to use.
+	 *
+	 * @param streamClass         The stream class whose instances to track.
+	 * @param useProductAutomaton True iff a single rule tracking both the
+	 *                            execution mode and the ordering should be used
+	 *                            rather than a rule for each.
+	 */
+	protected static StreamAttributeTypestateRule[] createStreamAttributeTypestateRules(IClass streamClass,
+			boolean useProductAutomaton) {
+		if (useProductAutomaton)
+			return new StreamAttributeTypestateRule[] { new StreamExecutionModeOrderingTypeStateRule(streamClass) };
+
 		// @formatter:off
 		return new StreamAttributeTypestateRule[] { new StreamExecutionModeTypeStateRule(streamClass),
 				new StreamOrderingTypeStateRule(streamClass) };
@@ -282,6 +459,88 @@ public class StreamStateMachine {
 		return ret;
 	}
 
+	/**
+	 * Finds the calls to terminal operations in the client code of the given call
+	 * graph along with their possible receivers. The calls don't depend on the
+	 * typestate rule or instance, so they only need to be found once per call
+	 * graph.
+	 *
+	 * @param callGraph The call graph whose nodes to search.
+	 * @param engine    The engine containing the pointer analysis.
+	 * @return The terminal operation calls in the given call graph.
+	 */
+	private static Collection<TerminalOperationCall> findTerminalOperationCalls(CallGraph callGraph,
+			EclipseProjectAnalysisEngine<InstanceKey> engine) {
+		Collection<TerminalOperationCall> ret = new ArrayList<>();
+
+		// for each call graph node in the call graph.
+		for (CGNode cgNode : callGraph)
+			// separating client from library code, improving performance #103.
+			if (cgNode.getMethod().getDeclaringClass().getClassLoader().getReference()
+					.equals(ClassLoaderReference.Application)) {
+
+				// we can verify that only client nodes are being considered
+				LOGGER.fine(() -> "Examining client call graph node: " + cgNode);
+
+				// for each call site in the call graph node.
+				for (Iterator<CallSiteReference> callSites = cgNode.iterateCallSites(); callSites.hasNext();) {
+					// get the call site reference.
+					CallSiteReference callSiteReference = callSites.next();
+
+					// get the (declared) called method at the call site.
+					MethodReference calledMethod = callSiteReference.getDeclaredTarget();
+
+					// is it a terminal operation?
+					if (isTerminalOperation(calledMethod)) {
+						// get the basic block for the call.
+						IR ir = cgNode.getIR();
+
+						ISSABasicBlock[] blocksForCall = ir.getBasicBlocksForCall(callSiteReference);
+
+						assert blocksForCall.length == 1 : "Expecting only a single basic block for the call: "
+								+ callSiteReference;
+
+						for (ISSABasicBlock block : blocksForCall) {
+							OrdinalSet<InstanceKey> possibleReceivers = null;
+
+							// search through each instruction in the block.
+							int processedInstructions = 0;
+
+							for (SSAInstruction instruction : block) {
+								// if it's not an invoke instruction.
+								if (!(instruction instanceof SSAAbstractInvokeInstruction))
+									// skip it. Phi instructions will be handled by the pointer analysis
+									// below.
+									continue;
+
+								// Get the possible receivers. This number corresponds to the value
+								// number of the receiver of the method.
+								int valueNumberForReceiver = instruction.getUse(0);
+
+								// it should be represented by a pointer key.
+								PointerKey pointerKey = engine.getHeapGraph().getHeapModel()
+										.getPointerKeyForLocal(cgNode, valueNumberForReceiver);
+
+								// get the points to set for the receiver. This will give us all object
+								// instances that the receiver reference points to.
+								possibleReceivers = engine.getPointerAnalysis().getPointsToSet(pointerKey);
+								assert possibleReceivers != null : "The points-to set (I think) should not be null for pointer: "
+										+ pointerKey;
+
+								++processedInstructions;
+							}
+
+							assert processedInstructions == 1 : "Expecting to process one and only one instruction here.";
+							ret.add(new TerminalOperationCall(cgNode, block, possibleReceivers));
+						}
+					}
+				}
+			}
+
+		LOGGER.info(() -> "Found " + ret.size() + " terminal operation calls in client code.");
+		return ret;
+	}
+
 	private static Collection<? extends InstanceKey> getAdditionalNecessaryReceiversFromPredecessors(
 			InstanceKey instance, IClassHierarchy hierarchy, CallGraph callGraph) throws IOException, CoreException {
 		Collection<InstanceKey> ret = new HashSet<>();
@@ -314,7 +573,7 @@ public class StreamStateMachine {
 					CallStringWithReceivers calledMethodCallString = Util.getCallString(node);
 
 					// what are its receivers?
-					Set<InstanceKey> possibleReceivers = calledMethodCallString.getPossibleReceivers();
+					OrdinalSet<InstanceKey> possibleReceivers = calledMethodCallString.getPossibleReceivers();
 					LOGGER.fine(() -> "It's receivers are: " + possibleReceivers);
 
 					// filter out ones that aren't streams.
@@ -327,43 +586,47 @@ public class StreamStateMachine {
 		return ret;
 	}
 
-	// FIXME: The performance of this method is not good. We should build a map
-	// between block numbers and the corresponding basicBlockInContext. But,
-	// when do we populate the map? In other words, we need a map of block
-	// numbers to BasicBlockInContexts whose delegate's original block number
-	// matches the key for a given supergraph. Should it be a table? Or, maybe
-	// it's just a collection of maps, one for each supergraph? ICFGSupergraph
-	// -> Map. Then, Integer -> BasicBlockInContext. But, now must also consider
-	// the cgNode. Also note though that there is not a one-to-one mapping
-	// between blocks and blocks in context. #21.
 	/**
-	 * Return the basic block in context for the given block in the procedure
-	 * represented by the given call graph node in the given supergraph.
+	 * Return the basic blocks in context for the given terminal operation calls
+	 * in the given supergraph.
 	 *
-	 * @param block      The block in which to find the corresponding block in
-	 *                   context in the supergraph.
-	 * @param cgNode     The call graph node representing the procedure that
-	 *                   contains the block.
-	 * @param supergraph The supergraph in which to look up the corresponding block
-	 *                   in context.
-	 * @return The block in context in the given supergraph that corresponds to the
-	 *         given block with the procedure represented by the given call graph
-	 *         node.
+	 * @param calls The terminal operation calls whose blocks in context to find.
+	 * @param index The index of the supergraph in which to look up the
+	 *              corresponding blocks in context.
+	 * @return A map from each of the given calls to its block in context.
 	 */
-	private static Optional<BasicBlockInContext<IExplodedBasicBlock>> getBasicBlockInContextForBlock(
-			ISSABasicBlock block, CGNode cgNode, ICFGSupergraph supergraph) {
-		// can we search the supergraph for the corresponding block? Do I need
-		// to search the entire graph?
-		for (BasicBlockInContext<IExplodedBasicBlock> basicBlockInContext : supergraph) {
-			CGNode blockInContextProcedure = supergraph.getProcOf(basicBlockInContext);
-			if (blockInContextProcedure == cgNode) {
-				IExplodedBasicBlock delegate = basicBlockInContext.getDelegate();
-				if (!delegate.isEntryBlock() && !delegate.isExitBlock()
-						&& delegate.getOriginalNumber() == block.getNumber() && delegate.getInstruction() != null)
-					return Optional.of(basicBlockInContext);
-			}
+	private static Map<TerminalOperationCall, BasicBlockInContext<IExplodedBasicBlock>> getBasicBlocksInContext(
+			Collection<TerminalOperationCall> calls, SupergraphBlockIndex index) {
+		Map<TerminalOperationCall, BasicBlockInContext<IExplodedBasicBlock>> ret = new HashMap<>(calls.size());
+
+		for (TerminalOperationCall call : calls) {
+			BasicBlockInContext<IExplodedBasicBlock> blockInContext = index.getBasicBlockInContext(call.block,
+					call.node).orElseThrow(
+							() -> new IllegalStateException("No basic block in context for block: " + call.block));
+			ret.put(call, blockInContext);
 		}
-		return Optional.empty();
+
+		return ret;
+	}
+
+	/**
+	 * @param instance A stream instance.
+	 * @param engine   The engine containing the call graph.
+	 * @return The immediate predecessors of the given instance, i.e., the
+	 *         possible receivers of the call that created it.
+	 */
+	private static Set<InstanceKey> getPredecessors(InstanceKey instance,
+			EclipseProjectAnalysisEngine<InstanceKey> engine) throws IOException, CoreException {
+		CallStringWithReceivers callString = Util.getCallString(instance);
+		Set<InstanceKey> ret = new HashSet<>(OrdinalSet.toCollection(callString.getPossibleReceivers()));
+
+		// get any additional receivers if necessary #36.
+		Collection<? extends InstanceKey> additionalNecessaryReceiversFromPredecessors = getAdditionalNecessaryReceiversFromPredecessors(
+				instance, engine.getClassHierarchy(), engine.getCallGraph());
+		LOGGER.fine(() -> "Adding additional receivers: " + additionalNecessaryReceiversFromPredecessors);
+		ret.addAll(additionalNecessaryReceiversFromPredecessors);
+
+		return ret;
 	}
 
 	private static boolean isStatefulIntermediateOperation(MethodReference method) {
@@ -373,7 +636,8 @@ public class StreamStateMachine {
 	private static boolean isStreamCreatedFromIntermediateOperation(InstanceKey instance, IClassHierarchy hierarchy,
 			CallGraph callGraph) throws IOException, CoreException {
 		// Get the immediate possible receivers of the stream instance.
-		Set<InstanceKey> receivers = Util.getCallString(instance).getPossibleReceivers();
+		Set<InstanceKey> receivers = new HashSet<>(
+				OrdinalSet.toCollection(Util.getCallString(instance).getPossibleReceivers()));
 
 		// Get any additional receivers we need to consider.
 		Collection<? extends InstanceKey> additionalReceivers = getAdditionalNecessaryReceiversFromPredecessors(
@@ -413,7 +677,8 @@ public class StreamStateMachine {
 		return types.stream().map(TypeAbstraction::getTypeReference).allMatch(tr -> tr.equals(TypeReference.Void));
 	}
 
-	private static Collection<? extends IDFAState> mergeTypeStates(Set<IDFAState> set1, Set<IDFAState> set2) {
+	private static Collection<? extends IDFAState> mergeTypeStates(StreamAttributeTypestateRule rule,
+			Set<IDFAState> set1, Set<IDFAState> set2) {
 		if (set1.isEmpty())
 			return set2;
 		else if (set2.isEmpty())
@@ -423,7 +688,7 @@ public class StreamStateMachine {
 
 		for (IDFAState state1 : set1)
 			for (IDFAState state2 : set2)
-				ret.add(selectState(state1, state2));
+				ret.add(rule.selectState(state1, state2));
 
 		return ret;
 	}
@@ -434,18 +699,17 @@ public class StreamStateMachine {
 		LOGGER.info("Skipped instances: " + result.skippedInstances());
 	}
 
-	private static IDFAState selectState(IDFAState state1, IDFAState state2) {
-		if (state1.getName().equals(BOTTOM_STATE_NAME))
-			return state2;
-		else
-			return state1;
-	}
-
 	private static boolean signatureMatches(String[] operations, MethodReference method) {
 		String signature = method.getSignature();
 		return Arrays.stream(operations).map(o -> o + "(").anyMatch(signature::startsWith);
 	}
 
+	/**
+	 * The instances tracked by the typestate solvers or null if every stream
+	 * instance should be tracked.
+	 */
+	private Set<InstanceKey> candidateInstances;
+
 	/**
 	 * A table mapping an instance and a block to the instance's possible states at
 	 * that block.
@@ -467,9 +731,9 @@ public class StreamStateMachine {
 	private Set<InstanceKey> instancesWithSideEffects = new HashSet<>();
 
 	/**
-	 * All of the stream's predecessors.
+	 * The closure of {@link #instanceToPredecessorsMap}.
 	 */
-	private Map<InstanceKey, Set<InstanceKey>> instanceToAllPredecessorsMap = new HashMap<>();
+	private StreamInstanceGraph instanceGraph;
 
 	/**
 	 * A stream's immediate predecessor.
@@ -483,53 +747,147 @@ public class StreamStateMachine {
 
 	private Map<InstanceKey, Stream> instanceToStreamMap = new HashMap<>();
 
+	/**
+	 * The options tuning the analysis.
+	 */
+	private final StreamAnalysisOptions options;
+
 	private Map<InstanceKey, Map<TypestateRule, Set<IDFAState>>> originStreamToMergedTypeStateMap = new HashMap<>();
 
+	/**
+	 * The block indices of the supergraphs of the typestate solvers, which are
+	 * shared by the solvers of different rules.
+	 */
+	private Map<ICFGSupergraph, SupergraphBlockIndex> supergraphToBlockIndex = new ConcurrentHashMap<>();
+
 	private Map<BasicBlockInContext<IExplodedBasicBlock>, OrdinalSet<InstanceKey>> terminalBlockToPossibleReceivers = new HashMap<>();
 
 	private Set<InstanceKey> trackedInstances = new HashSet<>();
 
-	private Set<IDFAState> computeMergedTypeState(InstanceKey instanceKey,
-			BasicBlockInContext<IExplodedBasicBlock> block, StreamAttributeTypestateRule rule) {
-		Set<InstanceKey> predecessors = this.instanceToPredecessorsMap.get(instanceKey);
-		Map<TypestateRule, Set<IDFAState>> ruleToStates = this.instanceBlockStateTable.get(instanceKey, block);
+	public StreamStateMachine() {
+		this(new StreamAnalysisOptions());
+	}
 
-		if (ruleToStates == null)
-			return Collections.emptySet();
+	/**
+	 * @param options The options tuning the analysis, e.g., the numbers of
+	 *                threads used to prune the call graph and to run the
+	 *                typestate solvers.
+	 */
+	public StreamStateMachine(StreamAnalysisOptions options) {
+		this.options = options;
+	}
 
-		Set<IDFAState> possibleInstanceStates = ruleToStates.get(rule);
+	/**
+	 * Computes the instances to be tracked by the typestate solvers for the given
+	 * streams, i.e., the instances created by the streams' creations, the
+	 * instances derived from those, and the instances from which any of them are
+	 * derived. Other stream instances, e.g., those created and consumed entirely
+	 * within library code, don't affect the analysis of the given streams.
+	 *
+	 * @param streamSet The streams being analyzed.
+	 * @param engine    The engine containing the pointer analysis.
+	 * @return The instances to track.
+	 */
+	private Set<InstanceKey> computeCandidateInstances(Set<Stream> streamSet,
+			EclipseProjectAnalysisEngine<InstanceKey> engine)
+			throws InvalidClassFileException, IOException, CoreException {
+		IClassHierarchy hierarchy = engine.getClassHierarchy();
+		Map<InstanceKey, Set<InstanceKey>> instanceToPredecessors = new HashMap<>();
+		Map<InstanceKey, Set<InstanceKey>> instanceToSuccessors = new HashMap<>();
+
+		// link every stream instance with its immediate predecessors.
+		for (InstanceKey instance : engine.getPointerAnalysis().getInstanceKeys())
+			if (instance instanceof NormalAllocationInNode
+					&& Util.implementsBaseStream(instance.getConcreteType().getReference(), hierarchy)) {
+				Set<InstanceKey> predecessors = getPredecessors(instance, engine);
+				instanceToPredecessors.put(instance, predecessors);
+
+				for (InstanceKey predecessor : predecessors)
+					instanceToSuccessors.computeIfAbsent(predecessor, k -> new HashSet<>()).add(instance);
+			}
 
-		if (predecessors.isEmpty())
-			return possibleInstanceStates;
+		// find the instances created by the streams' creations.
+		Set<InstanceKey> creationInstances = new HashSet<>();
 
-		Set<IDFAState> ret = new HashSet<>();
-		for (InstanceKey pred : predecessors)
-			ret.addAll(mergeTypeStates(possibleInstanceStates, this.computeMergedTypeState(pred, block, rule)));
+		for (Stream stream : streamSet) {
+			Optional<SSAInvokeInstruction> instruction;
+			try {
+				instruction = stream.getInstructionForCreation(engine);
+			} catch (UnhandledCaseException e) {
+				// the stream will be reported as such once its instance is looked up.
+				LOGGER.log(Level.FINE, "Can't find creation instruction for: " + stream.getCreation() + ".", e);
+				continue;
+			}
 
+			if (instruction.isPresent())
+				for (InstanceKey instance : instanceToPredecessors.keySet())
+					try {
+						if (instanceKeyCorrespondsWithInstantiationInstruction(instance, instruction.get(),
+								stream.getEnclosingMethodReference(), engine))
+							creationInstances.add(instance);
+					} catch (NoApplicationCodeExistsInCallStringsException e) {
+						// track it so that the stream is reported as such once its
+						// instance is looked up among the tracked instances.
+						creationInstances.add(instance);
+					}
+		}
+
+		Set<InstanceKey> derivedInstances = computeClosure(creationInstances, instanceToSuccessors);
+		Set<InstanceKey> ret = computeClosure(derivedInstances, instanceToPredecessors);
+
+		LOGGER.info(() -> "Found " + ret.size() + " candidate instances out of " + instanceToPredecessors.size()
+				+ " stream instances.");
 		return ret;
 	}
 
-	// TODO: This should probably be cached.
-	private Set<InstanceKey> computePossibleOriginStreams(InstanceKey instanceKey) {
-		// if there is no instance.
-		if (instanceKey == null)
-			// there are no origins.
-			return Collections.emptySet();
-
-		// otherwise, retrieve the predecessors of the instance.
-		Set<InstanceKey> predecessors = this.instanceToPredecessorsMap.get(instanceKey);
+	/**
+	 * Computes the possible states of the given instance at the given block
+	 * merged with those of its predecessors. The merged states of the components
+	 * of the instance graph are computed predecessors first and memoized in the
+	 * given map. The states of the instances of a cycle are merged as one.
+	 *
+	 * @param instanceKey             The instance whose merged states to
+	 *                                compute.
+	 * @param block                   The block at which to compute the states.
+	 * @param rule                    The rule whose states to compute.
+	 * @param componentToMergedStates The merged states of the components of the
+	 *                                instance graph at the given block for the
+	 *                                given rule computed so far.
+	 * @return The merged states of the given instance.
+	 */
+	private Set<IDFAState> computeMergedTypeState(InstanceKey instanceKey,
+			BasicBlockInContext<IExplodedBasicBlock> block, StreamAttributeTypestateRule rule,
+			Map<Integer, Set<IDFAState>> componentToMergedStates) {
+		int component = this.instanceGraph.getComponent(instanceKey);
+
+		// if the instance has no predecessors and isn't one.
+		if (component == -1)
+			return this.getTypeStates(Collections.singleton(instanceKey), block, rule).orElse(Collections.emptySet());
+
+		BitSet closure = this.instanceGraph.getComponentClosure(component);
+
+		for (int c = closure.nextSetBit(0); c >= 0; c = closure.nextSetBit(c + 1))
+			if (!componentToMergedStates.containsKey(c)) {
+				Optional<Set<IDFAState>> states = this.getTypeStates(this.instanceGraph.getInstances(c), block, rule);
+				int[] predecessorComponents = this.instanceGraph.getPredecessorComponents(c);
+				Set<IDFAState> mergedStates;
+
+				if (!states.isPresent())
+					mergedStates = Collections.emptySet();
+				else if (predecessorComponents.length == 0)
+					mergedStates = states.get();
+				else {
+					mergedStates = new HashSet<>();
+
+					for (int predecessorComponent : predecessorComponents)
+						mergedStates.addAll(
+								mergeTypeStates(rule, states.get(), componentToMergedStates.get(predecessorComponent)));
+				}
 
-		// if there are no predecessors for this instance.
-		if (predecessors.isEmpty())
-			// then this instance must be its own origin.
-			return Collections.singleton(instanceKey);
+				componentToMergedStates.put(c, mergedStates);
+			}
 
-		// otherwise, we have a situation where the instance in question has one
-		// or more predecessors.
-		// In this case, the possible origins of the given instance are the
-		// possible origins of each of its predecessors.
-		return predecessors.stream().map(this::computePossibleOriginStreams).flatMap(os -> os.stream())
-				.collect(Collectors.toSet());
+		return componentToMergedStates.get(component);
 	}
 
 	private boolean deriveRomForNonScalarMethod(Collection<TypeAbstraction> possibleReturnTypes,
@@ -618,7 +976,7 @@ public class StreamStateMachine {
 
 					for (InstanceKey instanceKey : receivers) {
 						// get the stream for the instance key.
-						Set<InstanceKey> originStreams = this.computePossibleOriginStreams(instanceKey);
+						Set<InstanceKey> originStreams = this.instanceGraph.getOrigins(instanceKey);
 
 						// for each origin stream.
 						for (InstanceKey origin : originStreams) {
@@ -655,7 +1013,7 @@ public class StreamStateMachine {
 	}
 
 	private void discoverLambdaSideEffects(EclipseProjectAnalysisEngine<InstanceKey> engine,
-			Map<CGNode, OrdinalSet<PointerKey>> mod, Iterable<InstanceKey> instances,
+			DemandDrivenModRef modRef, Iterable<InstanceKey> instances,
 			MethodReference declaredTargetOfCaller, IR ir, int use) {
 		// look up it's definition.
 		DefUse defUse = engine.getCache().getDefUse(ir);
@@ -693,7 +1051,7 @@ public class StreamStateMachine {
 							for (CGNode target : possibleTargets) {
 								// get the set of pointers (locations) it
 								// may modify
-								OrdinalSet<PointerKey> modSet = mod.get(target);
+								Set<PointerKey> modSet = modRef.getMod(target);
 								LOGGER.fine(() -> "#original modified locations: " + modSet.size());
 
 								Collection<PointerKey> filteredModSet = new HashSet<>();
@@ -728,13 +1086,9 @@ public class StreamStateMachine {
 			throws IOException, CoreException {
 		SubMonitor subMonitor = SubMonitor.convert(monitor, "Discovering side-effects...", 100);
 
-		// create the ModRef analysis.
-		ModRef<InstanceKey> modRef = ModRef.make();
-
-		// compute modifications over the call graph.
-		// TODO: Should this be cached? Didn't have luck caching the call graph.
-		// Perhaps this will be similar.
-		Map<CGNode, OrdinalSet<PointerKey>> mod = modRef.computeMod(engine.getCallGraph(), engine.getPointerAnalysis());
+		// only compute modifications for the behavioral parameters (and their
+		// transitive callees) passed to terminal operations, memoized per node.
+		DemandDrivenModRef modRef = new DemandDrivenModRef(engine.getCallGraph(), engine.getPointerAnalysis());
 
 		// for each terminal operation call, I think?
 		SubMonitor loopMonitor = subMonitor.split(50, SubMonitor.SUPPRESS_NONE)
@@ -761,7 +1115,7 @@ public class StreamStateMachine {
 					// get a reference to the calling method.
 					MethodReference declaredTarget = block.getMethod().getReference();
 
-					this.discoverLambdaSideEffects(engine, mod, this.terminalBlockToPossibleReceivers.get(block),
+					this.discoverLambdaSideEffects(engine, modRef, this.terminalBlockToPossibleReceivers.get(block),
 							declaredTarget, ir, paramUse);
 				}
 				++processedInstructions;
@@ -800,12 +1154,14 @@ public class StreamStateMachine {
 			if (calls[0].getNumberOfUses() == 2) {
 				// get the use of the first parameter.
 				int use = calls[0].getUse(1);
-				this.discoverLambdaSideEffects(engine, mod, Collections.singleton(instance),
+				this.discoverLambdaSideEffects(engine, modRef, Collections.singleton(instance),
 						callString.getMethods()[0].getReference(), ir, use);
 			}
 
 			loopMonitor.worked(1);
 		}
+
+		LOGGER.info(modRef::toString);
 	}
 
 	private void discoverPossibleStatefulIntermediateOperations(IClassHierarchy hierarchy, CallGraph callGraph,
@@ -868,14 +1224,7 @@ public class StreamStateMachine {
 	private void fillInstanceToPredecessorMap(EclipseProjectAnalysisEngine<InstanceKey> engine)
 			throws IOException, CoreException {
 		for (InstanceKey instance : this.trackedInstances) {
-			CallStringWithReceivers callString = Util.getCallString(instance);
-			Set<InstanceKey> possibleReceivers = new HashSet<>(callString.getPossibleReceivers());
-
-			// get any additional receivers if necessary #36.
-			Collection<? extends InstanceKey> additionalNecessaryReceiversFromPredecessors = getAdditionalNecessaryReceiversFromPredecessors(
-					instance, engine.getClassHierarchy(), engine.getCallGraph());
-			LOGGER.fine(() -> "Adding additional receivers: " + additionalNecessaryReceiversFromPredecessors);
-			possibleReceivers.addAll(additionalNecessaryReceiversFromPredecessors);
+			Set<InstanceKey> possibleReceivers = getPredecessors(instance, engine);
 
 			this.instanceToPredecessorsMap.merge(instance, possibleReceivers, (x, y) -> {
 				x.addAll(y);
@@ -936,21 +1285,8 @@ public class StreamStateMachine {
 					+ this.instanceToStreamMap.keySet().size() + ".");
 	}
 
-	private Set<InstanceKey> getAllPredecessors(InstanceKey instanceKey) {
-		if (!this.instanceToAllPredecessorsMap.containsKey(instanceKey)) {
-			Set<InstanceKey> ret = new HashSet<>();
-
-			// add the instance's predecessors.
-			ret.addAll(this.instanceToPredecessorsMap.get(instanceKey));
-
-			// add their predecessors.
-			ret.addAll(this.instanceToPredecessorsMap.get(instanceKey).stream()
-					.flatMap(ik -> this.getAllPredecessors(ik).stream()).collect(Collectors.toSet()));
-
-			this.instanceToAllPredecessorsMap.put(instanceKey, ret);
-			return ret;
-		} else
-			return this.instanceToAllPredecessorsMap.get(instanceKey);
+	public StreamAnalysisOptions getOptions() {
+		return this.options;
 	}
 
 	public Collection<IDFAState> getStates(StreamAttributeTypestateRule rule, InstanceKey instanceKey) {
@@ -969,9 +1305,221 @@ public class StreamStateMachine {
 		return Collections.unmodifiableCollection(this.trackedInstances);
 	}
 
+	/**
+	 * Returns the union of the possible states of the given instances at the
+	 * given block.
+	 *
+	 * @param instances The instances whose states to return.
+	 * @param block     The block at which to return the states.
+	 * @param rule      The rule whose states to return.
+	 * @return The union of the states or {@link Optional#empty()} if none of the
+	 *         instances have states at the given block.
+	 */
+	private Optional<Set<IDFAState>> getTypeStates(Collection<InstanceKey> instances,
+			BasicBlockInContext<IExplodedBasicBlock> block, StreamAttributeTypestateRule rule) {
+		Set<IDFAState> ret = null;
+
+		for (InstanceKey instance : instances) {
+			Map<TypestateRule, Set<IDFAState>> ruleToStates = this.instanceBlockStateTable.get(instance, block);
+
+			if (ruleToStates != null) {
+				Set<IDFAState> states = ruleToStates.getOrDefault(rule, Collections.emptySet());
+
+				if (ret == null)
+					ret = instances.size() == 1 ? states : new HashSet<>(states);
+				else
+					ret.addAll(states);
+			}
+		}
+
+		return Optional.ofNullable(ret);
+	}
+
 	private void propagateStreamInstanceProperty(Collection<InstanceKey> streamInstancesWithProperty) {
-		streamInstancesWithProperty.addAll(streamInstancesWithProperty.stream()
-				.flatMap(ik -> this.getAllPredecessors(ik).stream()).collect(Collectors.toSet()));
+		streamInstancesWithProperty.addAll(this.instanceGraph.getAncestors(streamInstancesWithProperty));
+	}
+
+	/**
+	 * Runs the typestate solver for each of the given rules, concurrently if
+	 * more than one solver thread has been requested.
+	 *
+	 * @param rules                  The rules whose solvers to run.
+	 * @param prunedCallGraph        The call graph to use.
+	 * @param terminalOperationCalls The terminal operation calls in the given
+	 *                               call graph.
+	 * @param ora                    The benign oracle to use.
+	 * @param options                The typestate options to use.
+	 * @param engine                 The engine containing the pointer analysis.
+	 * @param monitor                A monitor with one unit of work remaining per
+	 *                               rule.
+	 * @return The result of each rule in the order of the given rules.
+	 */
+	private List<RuleResult> solve(StreamAttributeTypestateRule[] rules, CallGraph prunedCallGraph,
+			Collection<TerminalOperationCall> terminalOperationCalls, BenignOracle ora, TypeStateOptions options,
+			EclipseProjectAnalysisEngine<InstanceKey> engine, SubMonitor monitor)
+			throws PropertiesException, CancelException {
+		List<RuleResult> ret = new ArrayList<>(rules.length);
+		int numberOfThreads = Math.min(this.getOptions().getNumberOfTypestateSolverThreads(), rules.length);
+
+		// if the solvers should run one after another.
+		if (numberOfThreads <= 1) {
+			for (StreamAttributeTypestateRule rule : rules)
+				ret.add(this.solve(rule, prunedCallGraph, terminalOperationCalls, ora, options, engine,
+						monitor.split(1, SubMonitor.SUPPRESS_NONE)));
+			return ret;
+		}
+
+		LOGGER.info(() -> "Running " + rules.length + " typestate solvers using " + numberOfThreads + " threads.");
+
+		// the heap graph is lazily created and the IR cache isn't thread-safe, so
+		// build them up front. The IRs are held onto while the solvers run since
+		// the cache only softly references them.
+		engine.getHeapGraph();
+		Collection<Object> irsAndDefUses = buildIRsAndDefUses(prunedCallGraph, engine);
+
+		// progress monitors aren't thread-safe, so the solvers only get to check
+		// for cancellation. Progress is reported as each solver finishes.
+		IProgressMonitor solverMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return monitor.isCanceled();
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+		try {
+			List<Future<RuleResult>> futures = new ArrayList<>(rules.length);
+
+			for (StreamAttributeTypestateRule rule : rules)
+				futures.add(executor.submit(() -> this.solve(rule, prunedCallGraph, terminalOperationCalls, ora,
+						options, engine, solverMonitor)));
+
+			for (Future<RuleResult> future : futures) {
+				ret.add(future.get());
+				monitor.worked(1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancelException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof PropertiesException)
+				throw (PropertiesException) cause;
+			else if (cause instanceof CancelException)
+				throw (CancelException) cause;
+			else if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else if (cause instanceof Error)
+				throw (Error) cause;
+			else
+				throw new RuntimeException("Exception caught during typestate analysis.", cause);
+		} finally {
+			executor.shutdownNow();
+			irsAndDefUses.clear();
+		}
+		return ret;
+	}
+
+	/**
+	 * Runs the typestate solver for the given rule. Only the returned
+	 * {@link RuleResult} is written to so that solvers for different rules may
+	 * run concurrently.
+	 *
+	 * @param rule                   The rule whose solver to run.
+	 * @param prunedCallGraph        The call graph to use.
+	 * @param terminalOperationCalls The terminal operation calls in the given
+	 *                               call graph.
+	 * @param ora                    The benign oracle to use.
+	 * @param options                The typestate options to use.
+	 * @param engine                 The engine containing the pointer analysis.
+	 * @param monitor                The progress monitor to use.
+	 * @return The states of each instance at each terminal operation call along
+	 *         with the solver's statistics.
+	 */
+	private RuleResult solve(StreamAttributeTypestateRule rule, CallGraph prunedCallGraph,
+			Collection<TerminalOperationCall> terminalOperationCalls, BenignOracle ora, TypeStateOptions options,
+			EclipseProjectAnalysisEngine<InstanceKey> engine, IProgressMonitor monitor)
+			throws PropertiesException, CancelException {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 70);
+		RuleResult ret = new RuleResult(rule);
+
+		// create a DFA based on the rule.
+		TypeStateProperty dfa = new TypeStateProperty(rule, engine.getClassHierarchy());
+
+		LOGGER.info(() -> "Starting " + rule.getName() + " solver for: " + engine.getProject().getElementName());
+		TrackingUniqueSolver solver;
+
+		if (this.candidateInstances == null)
+			// this gets a solver that tracks all streams.
+			solver = TypestateSolverFactory.getSolver(engine.getOptions(), prunedCallGraph,
+					engine.getPointerAnalysis(), engine.getHeapGraph(), dfa, ora, options, null, null, null);
+		else
+			// this gets a solver that only tracks the candidate streams.
+			solver = TypestateSolverFactory.getSolver(engine.getOptions(), prunedCallGraph,
+					engine.getPointerAnalysis(), engine.getHeapGraph(), dfa, ora, options, null, null, null,
+					this.candidateInstances);
+
+		// the blocks in context of the terminal operation calls for each
+		// supergraph. Instance results typically share a supergraph.
+		Map<ICFGSupergraph, Map<TerminalOperationCall, BasicBlockInContext<IExplodedBasicBlock>>> supergraphToTerminalBlocks = new HashMap<>();
+
+		if (this.getOptions().shouldStreamInstanceResults())
+			// record the states of each instance as soon as it's solved.
+			solver.setInstanceResultConsumer((instanceKey, instanceResult) -> {
+				ICFGSupergraph supergraph = instanceResult.getSupergraph();
+
+				// only keep the blocks of the current supergraph so that previous ones
+				// may be released. The shared block indices would retain them as well.
+				if (!supergraphToTerminalBlocks.containsKey(supergraph))
+					supergraphToTerminalBlocks.clear();
+
+				Map<TerminalOperationCall, BasicBlockInContext<IExplodedBasicBlock>> terminalBlocks = supergraphToTerminalBlocks
+						.computeIfAbsent(supergraph, s -> getBasicBlocksInContext(terminalOperationCalls,
+								new SupergraphBlockIndex(s)));
+
+				addInstanceResult(ret, instanceKey, instanceResult, terminalOperationCalls, terminalBlocks);
+			});
+
+		AggregateSolverResult result;
+		try {
+			result = (AggregateSolverResult) solver.perform(subMonitor.split(50, SubMonitor.SUPPRESS_NONE));
+		} catch (SolverTimeoutException | MaxFindingsException | SetUpException | WalaException e) {
+			throw new RuntimeException("Exception caught during typestate analysis.", e);
+		}
+
+		// record typestate statistics.
+		outputTypeStateStatistics(result);
+		ret.statistics = new Statistics(result.processedInstancesNum(), result.skippedInstances());
+
+		// if the states were already recorded.
+		if (this.getOptions().shouldStreamInstanceResults())
+			return ret;
+
+		// for each instance in the typestate analysis result.
+		SubMonitor instanceMonitor = subMonitor.split(20, SubMonitor.SUPPRESS_NONE)
+				.setWorkRemaining(result.totalInstancesNum());
+
+		for (Iterator<InstanceKey> iterator = result.iterateInstances(); iterator.hasNext();) {
+			// get the instance's key.
+			InstanceKey instanceKey = iterator.next();
+
+			// get the result for that instance.
+			TypeStateResult instanceResult = (TypeStateResult) result.getInstanceResult(instanceKey);
+
+			// get the supergraph for the instance result.
+			ICFGSupergraph supergraph = instanceResult.getSupergraph();
+
+			// get the blocks in context corresponding to the terminal operation calls.
+			Map<TerminalOperationCall, BasicBlockInContext<IExplodedBasicBlock>> terminalBlocks = supergraphToTerminalBlocks
+					.computeIfAbsent(supergraph, s -> getBasicBlocksInContext(terminalOperationCalls,
+							this.supergraphToBlockIndex.computeIfAbsent(s, SupergraphBlockIndex::new)));
+
+			addInstanceResult(ret, instanceKey, instanceResult, terminalOperationCalls, terminalBlocks);
+			instanceMonitor.worked(1);
+		} // end for each instance in the typestate analysis result.
+
+		return ret;
 	}
 
 	public Map<TypestateRule, Statistics> start(Set<Stream> streamSet, EclipseProjectAnalysisEngine<InstanceKey> engine,
@@ -981,7 +1529,7 @@ public class StreamStateMachine {
 		SubMonitor subMonitor = SubMonitor.convert(monitor, "Performing typestate analysis (may take a while)", 100);
 		Map<TypestateRule, Statistics> ret = new HashMap<>();
 
-		CallGraph prunedCallGraph = pruneCallGraph(engine.getCallGraph(), engine.getClassHierarchy());
+		CallGraph prunedCallGraph = pruneCallGraph(engine, this.getOptions().getNumberOfPruningThreads());
 		BenignOracle ora = new ModifiedBenignOracle(prunedCallGraph, engine.getPointerAnalysis());
 
 		PropertiesManager manager = PropertiesManager.initFromMap(Collections.emptyMap());
@@ -995,195 +1543,70 @@ public class StreamStateMachine {
 				"Ljava/util/stream/BaseStream");
 		IClass streamClass = engine.getClassHierarchy().lookupClass(typeReference);
 
-		StreamAttributeTypestateRule[] ruleArray = createStreamAttributeTypestateRules(streamClass);
-
-		// for each rule.
-		SubMonitor ruleMonitor = subMonitor.split(70, SubMonitor.SUPPRESS_NONE).setWorkRemaining(ruleArray.length);
-
-		for (StreamAttributeTypestateRule rule : ruleArray) {
-			// create a DFA based on the rule.
-			TypeStateProperty dfa = new TypeStateProperty(rule, engine.getClassHierarchy());
+		StreamAttributeTypestateRule[] ruleArray = createStreamAttributeTypestateRules(streamClass,
+				this.getOptions().shouldUseProductAutomaton());
 
-			// this gets a solver that tracks all streams.
-			LOGGER.info(() -> "Starting " + rule.getName() + " solver for: " + engine.getProject().getElementName());
-			ISafeSolver solver = TypestateSolverFactory.getSolver(engine.getOptions(), prunedCallGraph,
-					engine.getPointerAnalysis(), engine.getHeapGraph(), dfa, ora, typeStateOptions, null, null, null);
+		// find the instances to track if they're limited to the candidate streams.
+		if (this.getOptions().shouldUseCandidateStreamSolver())
+			this.candidateInstances = this.computeCandidateInstances(streamSet, engine);
 
-			AggregateSolverResult result;
-			try {
-				result = (AggregateSolverResult) solver.perform(ruleMonitor.split(50, SubMonitor.SUPPRESS_NONE));
-			} catch (SolverTimeoutException | MaxFindingsException | SetUpException | WalaException e) {
-				throw new RuntimeException("Exception caught during typestate analysis.", e);
-			}
+		// index the terminal operation calls once for all rules and instances.
+		Collection<TerminalOperationCall> terminalOperationCalls = findTerminalOperationCalls(prunedCallGraph, engine);
 
-			// record typestate statistics.
-			outputTypeStateStatistics(result);
+		// for each rule, run the solver.
+		SubMonitor ruleMonitor = subMonitor.split(70, SubMonitor.SUPPRESS_NONE).setWorkRemaining(ruleArray.length);
+		List<RuleResult> ruleResults = this.solve(ruleArray, prunedCallGraph, terminalOperationCalls, ora,
+				typeStateOptions, engine, ruleMonitor);
 
-			Statistics lastStatistics = ret.put(rule,
-					new Statistics(result.processedInstancesNum(), result.skippedInstances()));
+		// merge the results of each solver now that they have all finished.
+		for (RuleResult ruleResult : ruleResults) {
+			Statistics lastStatistics = ret.put(ruleResult.rule, ruleResult.statistics);
 			assert lastStatistics == null : "Reassociating statistics.";
 
-			// for each instance in the typestate analysis result.
-			SubMonitor instanceMonitor = ruleMonitor.split(20, SubMonitor.SUPPRESS_NONE)
-					.setWorkRemaining(result.totalInstancesNum());
+			this.trackedInstances.addAll(ruleResult.trackedInstances);
 
-			for (Iterator<InstanceKey> iterator = result.iterateInstances(); iterator.hasNext();) {
-				// get the instance's key.
-				InstanceKey instanceKey = iterator.next();
+			ruleResult.terminalBlockToPossibleReceivers.forEach(this.terminalBlockToPossibleReceivers::putIfAbsent);
 
-				// add to tracked instances.
-				this.trackedInstances.add(instanceKey);
+			for (Cell<InstanceKey, BasicBlockInContext<IExplodedBasicBlock>, Set<IDFAState>> cell : ruleResult.instanceBlockStateTable
+					.cellSet()) {
+				// retrieve the state set for this instance and block.
+				Map<TypestateRule, Set<IDFAState>> ruleToStates = this.instanceBlockStateTable.get(cell.getRowKey(),
+						cell.getColumnKey());
 
-				// get the result for that instance.
-				TypeStateResult instanceResult = (TypeStateResult) result.getInstanceResult(instanceKey);
+				// if it doesn't yet exist.
+				if (ruleToStates == null) {
+					// allocate a new rule map.
+					ruleToStates = new HashMap<>();
 
-				// get the supergraph for the instance result.
-				ICFGSupergraph supergraph = instanceResult.getSupergraph();
+					// place it in the table.
+					this.instanceBlockStateTable.put(cell.getRowKey(), cell.getColumnKey(), ruleToStates);
+				}
 
-				// TODO: Can this be somehow rewritten to get blocks corresponding to terminal
-				// operations?
-				// for each call graph node in the call graph.
-				for (CGNode cgNode : prunedCallGraph)
-					// separating client from library code, improving performance #103.
-					if (cgNode.getMethod().getDeclaringClass().getClassLoader().getReference()
-							.equals(ClassLoaderReference.Application)) {
-
-						// we can verify that only client nodes are being considered
-						LOGGER.fine(() -> "Examining client call graph node: " + cgNode);
-
-						// for each call site in the call graph node.
-						for (Iterator<CallSiteReference> callSites = cgNode.iterateCallSites(); callSites.hasNext();) {
-							// get the call site reference.
-							CallSiteReference callSiteReference = callSites.next();
-
-							// get the (declared) called method at the call site.
-							MethodReference calledMethod = callSiteReference.getDeclaredTarget();
-
-							// is it a terminal operation? TODO: Should this be
-							// cached somehow? Collection of all terminal operation
-							// invocations?
-							if (isTerminalOperation(calledMethod)) {
-								// get the basic block for the call.
-								IR ir = cgNode.getIR();
-
-								ISSABasicBlock[] blocksForCall = ir.getBasicBlocksForCall(callSiteReference);
-
-								assert blocksForCall.length == 1 : "Expecting only a single basic block for the call: "
-										+ callSiteReference;
-
-								for (ISSABasicBlock block : blocksForCall) {
-									BasicBlockInContext<IExplodedBasicBlock> blockInContext = getBasicBlockInContextForBlock(
-											block, cgNode, supergraph)
-													.orElseThrow(() -> new IllegalStateException(
-															"No basic block in context for block: " + block));
-
-									if (!this.terminalBlockToPossibleReceivers.containsKey(blockInContext)) {
-										// associate possible receivers with the
-										// blockInContext.
-										// search through each instruction in the
-										// block.
-										int processedInstructions = 0;
-
-										for (SSAInstruction instruction : block) {
-											// if it's not an invoke instruction.
-											if (!(instruction instanceof SSAAbstractInvokeInstruction))
-												// skip it. Phi instructions will be handled by the pointer analysis
-												// below.
-												continue;
-
-											// Get the possible receivers. This
-											// number corresponds to the value
-											// number of the receiver of the method.
-											int valueNumberForReceiver = instruction.getUse(0);
-
-											// it should be represented by a pointer
-											// key.
-											PointerKey pointerKey = engine.getHeapGraph().getHeapModel()
-													.getPointerKeyForLocal(cgNode, valueNumberForReceiver);
-
-											// get the points to set for the
-											// receiver. This will give us all
-											// object instances that the receiver
-											// reference points to.
-											OrdinalSet<InstanceKey> pointsToSet = engine.getPointerAnalysis()
-													.getPointsToSet(pointerKey);
-											assert pointsToSet != null : "The points-to set (I think) should not be null for pointer: "
-													+ pointerKey;
-
-											OrdinalSet<InstanceKey> previousReceivers = this.terminalBlockToPossibleReceivers
-													.put(blockInContext, pointsToSet);
-											assert previousReceivers == null : "Reassociating a blockInContext: "
-													+ blockInContext + " with a new points-to set: " + pointsToSet
-													+ " that was originally: " + previousReceivers;
-
-											++processedInstructions;
-										}
-
-										assert processedInstructions == 1 : "Expecting to process one and only one instruction here.";
-									}
-
-									IntSet resultingFacts = instanceResult.getResult().getResult(blockInContext);
-									for (IntIterator factIterator = resultingFacts.intIterator(); factIterator
-											.hasNext();) {
-										int fact = factIterator.next();
-
-										// retrieve the state set for this instance
-										// and block.
-										Map<TypestateRule, Set<IDFAState>> ruleToStates = this.instanceBlockStateTable
-												.get(instanceKey, blockInContext);
-
-										// if it doesn't yet exist.
-										if (ruleToStates == null) {
-											// allocate a new rule map.
-											ruleToStates = new HashMap<>();
-
-											// place it in the table.
-											this.instanceBlockStateTable.put(instanceKey, blockInContext, ruleToStates);
-										}
-
-										Set<IDFAState> stateSet = ruleToStates.get(rule);
-
-										// if it does not yet exist.
-										if (stateSet == null) {
-											// allocate a new set.
-											stateSet = new HashSet<>();
-
-											// place it in the map.
-											ruleToStates.put(rule, stateSet);
-										}
-
-										// get the facts.
-										Factoid factoid = instanceResult.getDomain().getMappedObject(fact);
-										if (factoid != DUMMY_ZERO) {
-											BaseFactoid baseFactoid = (BaseFactoid) factoid;
-											assert baseFactoid.instance.equals(
-													instanceKey) : "Sanity check that the fact instance should be the same as the instance being examined.";
-
-											// add the encountered state to the set.
-											LOGGER.fine(() -> "Adding state: " + baseFactoid.state + " for instance: "
-													+ baseFactoid.instance + " for block: " + block + " for rule: "
-													+ rule.getName());
-											stateSet.add(baseFactoid.state);
-										}
-									}
-								}
-							}
-						}
-					}
-				instanceMonitor.worked(1);
-			} // end for each instance in the typestate analysis result.
+				ruleToStates.put(ruleResult.rule, cell.getValue());
+			}
+		}
 
-			// fill the instance to predecessors map if it's empty.
-			if (this.instanceToPredecessorsMap.isEmpty())
-				this.fillInstanceToPredecessorMap(engine);
+		// fill the instance to predecessors map if it's empty.
+		if (this.instanceToPredecessorsMap.isEmpty())
+			this.fillInstanceToPredecessorMap(engine);
 
+		// close it.
+		if (this.instanceGraph == null)
+			this.instanceGraph = new StreamInstanceGraph(this.instanceToPredecessorsMap);
+
+		for (StreamAttributeTypestateRule rule : ruleArray) {
 			// for each terminal operation call.
 			for (BasicBlockInContext<IExplodedBasicBlock> block : this.terminalBlockToPossibleReceivers.keySet()) {
 				OrdinalSet<InstanceKey> possibleReceivers = this.terminalBlockToPossibleReceivers.get(block);
+
+				// the merged states at this block, shared by the receivers.
+				Map<Integer, Set<IDFAState>> componentToMergedStates = new HashMap<>();
+
 				// for each possible receiver of the terminal operation call.
 				for (InstanceKey instanceKey : possibleReceivers) {
-					Set<IDFAState> possibleStates = this.computeMergedTypeState(instanceKey, block, rule);
-					Set<InstanceKey> possibleOriginStreams = this.computePossibleOriginStreams(instanceKey);
+					Set<IDFAState> possibleStates = this.computeMergedTypeState(instanceKey, block, rule,
+							componentToMergedStates);
+					Set<InstanceKey> possibleOriginStreams = this.instanceGraph.getOrigins(instanceKey);
 					possibleOriginStreams.forEach(os -> {
 						// create a new map.
 						Map<TypestateRule, Set<IDFAState>> ruleToStates = new HashMap<>();
@@ -1214,7 +1637,6 @@ public class StreamStateMachine {
 					});
 				}
 			}
-			ruleMonitor.worked(1);
 		} // end for each rule.
 
 		// create a mapping between stream instances (from the analysis) and stream
@@ -1249,10 +1671,11 @@ public class StreamStateMachine {
 				return true;
 		};
 
-		this.instanceToStatefulIntermediateOperationContainment.entrySet().stream().filter(Entry::getValue)
-				.map(Entry::getKey).flatMap(ik -> this.getAllPredecessors(ik).stream())
-				.collect(Collectors.toMap(Function.identity(), v -> true, remappingFunction)).forEach((k,
-						v) -> this.instanceToStatefulIntermediateOperationContainment.merge(k, v, remappingFunction));
+		List<InstanceKey> instancesWithStatefulIntermediateOperations = this.instanceToStatefulIntermediateOperationContainment
+				.entrySet().stream().filter(Entry::getValue).map(Entry::getKey).collect(Collectors.toList());
+
+		this.instanceGraph.getAncestors(instancesWithStatefulIntermediateOperations).forEach(
+				k -> this.instanceToStatefulIntermediateOperationContainment.merge(k, true, remappingFunction));
 
 		// propagate the instances whose reduce ordering possibly matters.
 		this.propagateStreamInstanceProperty(this.instancesWhoseReduceOrderingPossiblyMatters);
@@ -1295,25 +1718,61 @@ public class StreamStateMachine {
 	/**
 	 * This method is used to prune call graph. For each CGNode in the callGraph, it
 	 * check whether it is a stream node. If it is, then keep it. If it not, then
-	 * remove it.
+	 * remove it. Since the checks are independent, they are performed in parallel
+	 * when more than one thread is requested.
 	 * 
-	 * @param callGraph
-	 * @param classHierarchy
+	 * @param engine
+	 *            The engine whose call graph to prune.
+	 * @param numberOfThreads
+	 *            The number of threads used to classify the nodes.
 	 * @return A pruned callGraph
 	 */
-	private static CallGraph pruneCallGraph(CallGraph callGraph, IClassHierarchy classHierarchy) {
+	private static CallGraph pruneCallGraph(EclipseProjectAnalysisEngine<InstanceKey> engine, int numberOfThreads) {
+		long start = System.currentTimeMillis();
+
+		CallGraph callGraph = engine.getCallGraph();
 		int numberOfNodesInCallGraph = callGraph.getNumberOfNodes();
 		LOGGER.info("The number of nodes in the call graph: " + numberOfNodesInCallGraph);
-		HashSet<CGNode> keep = new HashSet<>();
-		for (CGNode node : callGraph) {
-			if (Util.isStreamNode(node, classHierarchy))
-				keep.add(node);
+
+		Set<CGNode> keep;
+
+		if (numberOfThreads > 1) {
+			List<CGNode> nodes = new ArrayList<>(numberOfNodesInCallGraph);
+			callGraph.forEach(nodes::add);
+
+			ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+			try {
+				keep = pool.submit(() -> nodes.parallelStream().filter(n -> Util.isStreamNode(n, engine))
+						.collect(Collectors.toSet())).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				else if (cause instanceof Error)
+					throw (Error) cause;
+				else
+					throw new RuntimeException(cause);
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			keep = new HashSet<>();
+			for (CGNode node : callGraph) {
+				if (Util.isStreamNode(node, engine))
+					keep.add(node);
+			}
 		}
 
 		PrunedCallGraph prunedCallGraph = new PrunedCallGraph(callGraph, keep);
 		int numberOfNodesInPrunedCallGraph = prunedCallGraph.getNumberOfNodes();
+		long elapsed = System.currentTimeMillis() - start;
 		LOGGER.info("The number of nodes in partial graph: " + numberOfNodesInPrunedCallGraph
-				+ ". The number of saved nodes: " + (numberOfNodesInCallGraph - numberOfNodesInPrunedCallGraph));
+				+ ". The number of saved nodes: " + (numberOfNodesInCallGraph - numberOfNodesInPrunedCallGraph)
+				+ ". Pruning took " + elapsed + " ms using " + Math.max(1, numberOfThreads) + " thread(s).");
 
 		return prunedCallGraph;
 	}
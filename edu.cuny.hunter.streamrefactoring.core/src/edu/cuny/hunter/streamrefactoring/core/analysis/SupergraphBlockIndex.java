@@ -0,0 +1,76 @@
+package edu.cuny.hunter.streamrefactoring.core.analysis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ibm.safe.ICFGSupergraph;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.cfg.BasicBlockInContext;
+import com.ibm.wala.ssa.ISSABasicBlock;
+import com.ibm.wala.ssa.analysis.IExplodedBasicBlock;
+
+/**
+ * Indexes the {@link BasicBlockInContext}s of an {@link ICFGSupergraph} by
+ * their procedure and the number of the original block they were exploded
+ * from. A procedure is indexed the first time one of its blocks is looked up
+ * by only visiting the blocks of that procedure, so that the supergraph is
+ * never scanned as a whole. The index may be shared by concurrent solvers using
+ * the same supergraph.
+ */
+final class SupergraphBlockIndex {
+
+	private final Map<CGNode, Map<Integer, BasicBlockInContext<IExplodedBasicBlock>>> nodeToBlockNumberToBlockInContext = new ConcurrentHashMap<>();
+
+	private final ICFGSupergraph supergraph;
+
+	SupergraphBlockIndex(ICFGSupergraph supergraph) {
+		this.supergraph = supergraph;
+	}
+
+	/**
+	 * Return the basic block in context for the given block in the procedure
+	 * represented by the given call graph node. Since there isn't a one-to-one
+	 * mapping between blocks and blocks in context, the first exploded block of
+	 * the given block that has an instruction is returned.
+	 *
+	 * @param block  The block in which to find the corresponding block in context
+	 *               in the supergraph.
+	 * @param cgNode The call graph node representing the procedure that contains
+	 *               the block.
+	 * @return The block in context in the supergraph that corresponds to the
+	 *         given block with the procedure represented by the given call graph
+	 *         node.
+	 */
+	Optional<BasicBlockInContext<IExplodedBasicBlock>> getBasicBlockInContext(ISSABasicBlock block, CGNode cgNode) {
+		Map<Integer, BasicBlockInContext<IExplodedBasicBlock>> blockNumberToBlockInContext = this.nodeToBlockNumberToBlockInContext
+				.computeIfAbsent(cgNode, this::index);
+		return Optional.ofNullable(blockNumberToBlockInContext.get(block.getNumber()));
+	}
+
+	ICFGSupergraph getSupergraph() {
+		return this.supergraph;
+	}
+
+	private Map<Integer, BasicBlockInContext<IExplodedBasicBlock>> index(CGNode cgNode) {
+		int numberOfBlocks = this.getSupergraph().getNumberOfBlocks(cgNode);
+		Map<Integer, BasicBlockInContext<IExplodedBasicBlock>> ret = new HashMap<>(numberOfBlocks);
+
+		for (int i = 0; i < numberOfBlocks; i++) {
+			BasicBlockInContext<IExplodedBasicBlock> basicBlockInContext = this.getSupergraph().getLocalBlock(cgNode,
+					i);
+
+			if (basicBlockInContext == null)
+				continue;
+
+			IExplodedBasicBlock delegate = basicBlockInContext.getDelegate();
+
+			// keep the first exploded block of each original block.
+			if (!delegate.isEntryBlock() && !delegate.isExitBlock() && delegate.getInstruction() != null)
+				ret.putIfAbsent(delegate.getOriginalNumber(), basicBlockInContext);
+		}
+
+		return ret;
+	}
+}
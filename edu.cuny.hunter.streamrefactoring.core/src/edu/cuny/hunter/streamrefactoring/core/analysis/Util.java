@@ -57,6 +57,7 @@ import com.ibm.wala.ipa.callgraph.propagation.cfa.CallStringContext;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.CallStringContextSelector;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.DefUse;
 import com.ibm.wala.ssa.IR;
 import com.ibm.wala.ssa.PhiValue;
 import com.ibm.wala.ssa.SSAInstruction;
@@ -410,19 +411,20 @@ public final class Util {
 		return lineNumberFromIR;
 	}
 
-	/**
-	 * This set is used to store visited values. Without this set, the method
-	 * getPossibleTypes could be infinitely recursively called and would never
-	 * return. So adding this set means to add a base case.
-	 */
-	static private HashSet<Value> seenValues = new HashSet<>();
-
 	static Collection<TypeAbstraction> getPossibleTypes(int valueNumber, TypeInference inference) {
-		seenValues.clear();
-		return getPossibleTypesInternal(valueNumber, inference);
+		return getPossibleTypesInternal(valueNumber, inference, new HashSet<>());
 	}
 
-	static private Collection<TypeAbstraction> getPossibleTypesInternal(int valueNumber, TypeInference inference) {
+	/**
+	 * @param seenValues Stores visited values. Without this set, this method could
+	 *                   be infinitely recursively called and would never return.
+	 *                   So adding this set means to add a base case. It is local
+	 *                   to each call of
+	 *                   {@link #getPossibleTypes(int, TypeInference)} so that
+	 *                   concurrent calls don't interfere.
+	 */
+	static private Collection<TypeAbstraction> getPossibleTypesInternal(int valueNumber, TypeInference inference,
+			Set<Value> seenValues) {
 		Set<TypeAbstraction> ret = new HashSet<>();
 		Value value;
 		try {
@@ -449,7 +451,7 @@ public final class Util {
 			// get the possible types for each use.
 			for (int i = 0; i < numberOfUses; i++) {
 				int use = phiInstruction.getUse(i);
-				Collection<TypeAbstraction> possibleTypes = getPossibleTypesInternal(use, inference);
+				Collection<TypeAbstraction> possibleTypes = getPossibleTypesInternal(use, inference, seenValues);
 				ret.addAll(possibleTypes);
 			}
 		} else
@@ -485,7 +487,16 @@ public final class Util {
 					// Due to type erasure, we may have the problem if the return
 					// type is java.lang.Object.
 					// Find the return type of the instruction.
-					TypeInference inference = TypeInference.make(node.getIR(), false);
+					IR ir;
+					DefUse du;
+
+					// the IR cache isn't thread-safe.
+					synchronized (engine.getCache()) {
+						ir = node.getIR();
+						du = node.getDU();
+					}
+
+					TypeInference inference = engine.getTypeInferenceCache().get(ir);
 					// Get all possible types
 					Collection<TypeAbstraction> returnTypes = Util.getPossibleTypes(valueNumber, inference);
 
@@ -494,12 +505,11 @@ public final class Util {
 						PointType concreteType = new PointType(concreteClass);
 
 						if (rType.getType().getReference().equals(TypeReference.JavaLangObject)) {
-							IR ir = node.getIR();
 							IMethod method = ir.getMethod();
 							IBytecodeMethod bytecodeMethod = (IBytecodeMethod) method;
 
 							// get the definition instruction.
-							SSAInvokeInstruction def = (SSAInvokeInstruction) node.getDU().getDef(valueNumber);
+							SSAInvokeInstruction def = (SSAInvokeInstruction) du.getDef(valueNumber);
 
 							// which index is it into the instruction array?
 							int instructionIndex = Util.indexOf(ir.getInstructions(), def);
@@ -526,12 +536,15 @@ public final class Util {
 										e);
 							}
 
-							// let's assume that the source file is in the same project.
-							IJavaProject enclosingProject = engine.getProject();
-
 							String fqn = method.getDeclaringClass().getName().getPackage().toUnicodeString() + "."
 									+ method.getDeclaringClass().getName().getClassName().toUnicodeString();
-							IType type = enclosingProject.findType(fqn.replace('/', '.'));
+
+							// let's assume that the source file is in one of the analyzed projects.
+							IType type = null;
+
+							for (Iterator<IJavaProject> it = engine.getProjects().iterator(); type == null
+									&& it.hasNext();)
+								type = it.next().findType(fqn.replace('/', '.'));
 							// FIXME: Need to (i) exclude from result timer and (ii) use the cache in
 							// OptimizeStreamsRefactoringProcessor #141.
 							CompilationUnit unit = RefactoringASTParser.parseWithASTProvider(type.getTypeRoot(), true,
@@ -818,17 +831,28 @@ public final class Util {
 	 * 
 	 * @param node:
 	 *            CGNode
-	 * @param classHierarchy
+	 * @param engine
+	 *            The engine whose call graph contains the node.
 	 */
-	public static boolean isStreamNode(CGNode node, IClassHierarchy classHierarchy) {
+	public static boolean isStreamNode(CGNode node, EclipseProjectAnalysisEngine<InstanceKey> engine) {
+		IClassHierarchy classHierarchy = engine.getClassHierarchy();
+
 		if (isDeclaredStreamClass(node, classHierarchy))
 			return true;
 
-		IR ir = node.getIR();
+		IR ir;
+
+		// the IR cache isn't thread-safe.
+		synchronized (engine.getCache()) {
+			ir = node.getIR();
+		}
 
 		if (ir == null || ir.isEmptyIR())
 			return true;
 
+		// the types of the IR, which are inferred once needed.
+		TypeInference inference = null;
+
 		for (SSAInstruction instruction : ir.getInstructions()) {
 			if (instruction == null)
 				continue;
@@ -841,13 +865,16 @@ public final class Util {
 				return true;
 
 			// otherwise, let's check the defs and uses.
-			TypeInference inference = TypeInference.make(ir, false);
+			if (inference == null)
+				inference = engine.getTypeInferenceCache().get(ir);
+
+			TypeInference irInference = inference;
 
 			Stream<TypeAbstraction> defs = IntStream.range(0, instruction.getNumberOfDefs())
-					.mapToObj(i -> instruction.getDef(i)).flatMap(d -> getPossibleTypes(d, inference).stream());
+					.mapToObj(i -> instruction.getDef(i)).flatMap(d -> getPossibleTypes(d, irInference).stream());
 
 			Stream<TypeAbstraction> uses = IntStream.range(0, instruction.getNumberOfUses())
-					.mapToObj(i -> instruction.getUse(i)).flatMap(u -> getPossibleTypes(u, inference).stream());
+					.mapToObj(i -> instruction.getUse(i)).flatMap(u -> getPossibleTypes(u, irInference).stream());
 
 			if (Stream.concat(defs, uses).anyMatch(t -> implementsBaseStream(t.getTypeReference(), classHierarchy)))
 				return true;
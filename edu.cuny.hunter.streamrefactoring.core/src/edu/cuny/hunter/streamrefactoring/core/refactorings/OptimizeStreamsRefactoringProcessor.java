@@ -3,15 +3,29 @@ package edu.cuny.hunter.streamrefactoring.core.refactorings;
 import static org.eclipse.jdt.ui.JavaElementLabels.ALL_FULLY_QUALIFIED;
 import static org.eclipse.jdt.ui.JavaElementLabels.getElementLabel;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -20,6 +34,7 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.jdt.core.IClasspathEntry;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
@@ -29,11 +44,15 @@ import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.ITypeHierarchy;
 import org.eclipse.jdt.core.ITypeRoot;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.refactoring.CompilationUnitChange;
 import org.eclipse.jdt.core.search.SearchEngine;
 import org.eclipse.jdt.internal.corext.codemanipulation.CodeGenerationSettings;
+import org.eclipse.jdt.internal.corext.dom.IASTSharedValues;
 import org.eclipse.jdt.internal.corext.refactoring.changes.DynamicValidationRefactoringChange;
 import org.eclipse.jdt.internal.corext.refactoring.structure.CompilationUnitRewrite;
 import org.eclipse.jdt.internal.corext.refactoring.util.JavaStatusContext;
@@ -52,14 +71,18 @@ import org.eclipse.ltk.core.refactoring.participants.RefactoringProcessor;
 import org.eclipse.ltk.core.refactoring.participants.SharableParticipants;
 import org.osgi.framework.FrameworkUtil;
 
+import com.google.common.collect.Lists;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 
 import edu.cuny.hunter.streamrefactoring.core.analysis.PreconditionFailure;
+import edu.cuny.hunter.streamrefactoring.core.analysis.ProjectAnalysisOutcome;
 import edu.cuny.hunter.streamrefactoring.core.analysis.Stream;
+import edu.cuny.hunter.streamrefactoring.core.analysis.StreamAnalysisOptions;
 import edu.cuny.hunter.streamrefactoring.core.analysis.StreamAnalyzer;
 import edu.cuny.hunter.streamrefactoring.core.descriptors.OptimizeStreamRefactoringDescriptor;
 import edu.cuny.hunter.streamrefactoring.core.messages.Messages;
 import edu.cuny.hunter.streamrefactoring.core.utils.TimeCollector;
+import edu.cuny.hunter.streamrefactoring.core.wala.PrimordialClassLoaderCache;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -83,6 +106,51 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 			new GroupCategory("edu.cuny.hunter.streamrefactoring", //$NON-NLS-1$
 					Messages.CategoryName, Messages.CategoryDescription));
 
+	/**
+	 * Releases the primordial class loaders and analysis snapshots retained
+	 * across refactoring invocations.
+	 */
+	public static void clearAnalysisCaches() {
+		PrimordialClassLoaderCache.clear();
+		ProjectAnalysisSnapshot.clear();
+	}
+
+	/**
+	 * Computes the content digest of each of the given
+	 * {@link ICompilationUnit}s.
+	 *
+	 * @param units The {@link ICompilationUnit}s whose content to digest.
+	 * @return A {@link Map} from each unit to the digest of its source.
+	 */
+	private static Map<ICompilationUnit, String> computeCompilationUnitDigests(Collection<ICompilationUnit> units)
+			throws JavaModelException {
+		Map<ICompilationUnit, String> ret = new HashMap<>();
+
+		for (ICompilationUnit unit : units) {
+			String source = unit.getSource();
+			ret.put(unit, ProjectAnalysisSnapshot.computeDigest(source == null ? "" : source));
+		}
+
+		return ret;
+	}
+
+	private static List<ICompilationUnit> getCompilationUnits(IJavaProject project) throws JavaModelException {
+		List<ICompilationUnit> ret = new ArrayList<>();
+
+		IPackageFragmentRoot[] roots = project.getPackageFragmentRoots();
+		for (IPackageFragmentRoot root : roots) {
+			IJavaElement[] children = root.getChildren();
+			for (IJavaElement child : children)
+				if (child.getElementType() == IJavaElement.PACKAGE_FRAGMENT) {
+					IPackageFragment fragment = (IPackageFragment) child;
+					ICompilationUnit[] units = fragment.getCompilationUnits();
+					ret.addAll(Arrays.asList(units));
+				}
+		}
+
+		return ret;
+	}
+
 	protected static int getLoggingLevel() {
 		return loggingLevel;
 	}
@@ -99,6 +167,33 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		log(IStatus.WARNING, message);
 	}
 
+	/**
+	 * Parses the given {@link ICompilationUnit}s as a single batch so that they
+	 * share the same binding environment.
+	 *
+	 * @param project The project containing the given units.
+	 * @param units   The units to parse.
+	 * @return A {@link Map} from each unit to its AST with resolved bindings.
+	 */
+	private static Map<ICompilationUnit, CompilationUnit> parse(IJavaProject project, List<ICompilationUnit> units) {
+		Map<ICompilationUnit, CompilationUnit> ret = new HashMap<>();
+
+		ASTParser parser = ASTParser.newParser(IASTSharedValues.SHARED_AST_LEVEL);
+		parser.setProject(project);
+		parser.setResolveBindings(true);
+		parser.setStatementsRecovery(IASTSharedValues.SHARED_AST_STATEMENT_RECOVERY);
+		parser.setBindingsRecovery(IASTSharedValues.SHARED_BINDING_RECOVERY);
+
+		parser.createASTs(units.toArray(new ICompilationUnit[units.size()]), new String[0], new ASTRequestor() {
+			@Override
+			public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
+				ret.put(source, ast);
+			}
+		}, new NullProgressMonitor());
+
+		return ret;
+	}
+
 	/**
 	 * Minimum logging level. One of the constants in
 	 * org.eclipse.core.runtime.IStatus.
@@ -128,8 +223,15 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 
 	private int numberOfSkippedStreamInstances;
 
+	/**
+	 * The options tuning the analysis.
+	 */
+	private StreamAnalysisOptions options = new StreamAnalysisOptions();
+
 	private Map<IJavaProject, Collection<Entrypoint>> projectToEntryPoints;
 
+	private Map<IJavaProject, ProjectAnalysisOutcome> projectToOutcome = Collections.emptyMap();
+
 	private SearchEngine searchEngine = new SearchEngine();
 
 	/** The code generation settings, or <code>null</code> */
@@ -223,27 +325,57 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 					this.getUseImplicitTestEntrypoints(), this.getUseImplicitBenchmarkEntrypoints(),
 					this.getUseImplicitJavaFXEntrypoints());
 
+			analyzer.setOptions(this.getOptions());
+
 			this.setStreamSet(analyzer.getStreamSet());
 
 			IJavaProject[] projects = this.getJavaProjects();
 
+			// the projects whose previous analysis still holds.
+			Map<IJavaProject, ProjectAnalysisSnapshot> projectToReusedSnapshot = new HashMap<>();
+
+			// the current configuration and compilation unit digests of the
+			// projects to be analyzed.
+			Map<IJavaProject, String> projectToConfigurationDigest = new HashMap<>();
+			Map<IJavaProject, Map<ICompilationUnit, String>> projectToCompilationUnitDigests = new HashMap<>();
+
 			subMonitor.beginTask("Collecting streams...", projects.length);
 
 			for (IJavaProject jproj : projects) {
-				IPackageFragmentRoot[] roots = jproj.getPackageFragmentRoots();
-				for (IPackageFragmentRoot root : roots) {
-					IJavaElement[] children = root.getChildren();
-					for (IJavaElement child : children)
-						if (child.getElementType() == IJavaElement.PACKAGE_FRAGMENT) {
-							IPackageFragment fragment = (IPackageFragment) child;
-							ICompilationUnit[] units = fragment.getCompilationUnits();
-							for (ICompilationUnit unit : units) {
-								CompilationUnit compilationUnit = this.getCompilationUnit(unit,
-										subMonitor.split(1, SubMonitor.SUPPRESS_NONE));
-								compilationUnit.accept(analyzer);
-							}
-						}
+				List<ICompilationUnit> units = getCompilationUnits(jproj);
+
+				// if the analysis of unchanged projects should be reused.
+				if (this.getOptions().shouldUseIncrementalAnalysis()) {
+					String configurationDigest = this.computeConfigurationDigest(jproj);
+					Map<ICompilationUnit, String> compilationUnitToDigest = computeCompilationUnitDigests(units);
+					Optional<ProjectAnalysisSnapshot> snapshot = ProjectAnalysisSnapshot.get(jproj);
+
+					if (snapshot.isPresent() && snapshot.get().isUpToDate(configurationDigest, compilationUnitToDigest)) {
+						this.logInfo("Reusing analysis of unchanged project: " + jproj.getElementName() + ".");
+						projectToReusedSnapshot.put(jproj, snapshot.get());
+						continue;
+					}
+
+					snapshot.ifPresent(s -> {
+						Set<ICompilationUnit> changedUnits = s.getChangedCompilationUnits(compilationUnitToDigest);
+						this.logInfo("Reanalyzing project: " + jproj.getElementName() + " due to "
+								+ changedUnits.size() + " changed compilation unit(s) previously containing "
+								+ changedUnits.stream().map(s::getStreams).mapToInt(Set::size).sum() + " stream(s).");
+					});
+
+					projectToConfigurationDigest.put(jproj, configurationDigest);
+					projectToCompilationUnitDigests.put(jproj, compilationUnitToDigest);
 				}
+
+				if (this.getOptions().shouldUseBatchParsing())
+					this.collectStreamsInBatches(jproj, units, analyzer,
+							subMonitor.split(units.size(), SubMonitor.SUPPRESS_NONE));
+				else
+					for (ICompilationUnit unit : units) {
+						CompilationUnit compilationUnit = this.getCompilationUnit(unit,
+								subMonitor.split(1, SubMonitor.SUPPRESS_NONE));
+						compilationUnit.accept(analyzer);
+					}
 			}
 
 			subMonitor.worked(1);
@@ -253,10 +385,47 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 					subMonitor.split(IProgressMonitor.UNKNOWN, SubMonitor.SUPPRESS_NONE));
 			subMonitor.worked(1);
 
+			this.projectToOutcome = analyzer.getProjectToOutcome();
+
 			// set statistics for stream instances.
 			this.setNumberOfProcessedStreamInstances(analyzer.getNumberOfProcessedStreamInstances());
 			this.setNumberOfSkippedStreamInstances(analyzer.getNumberOfSkippedStreamInstances());
 
+			// take snapshots of the analyzed projects.
+			projectToCompilationUnitDigests.forEach((project, compilationUnitToDigest) -> {
+				ProjectAnalysisOutcome outcome = this.projectToOutcome.get(project);
+
+				// failed analyses are retried next time.
+				if (outcome != null && outcome.hasFailed())
+					return;
+
+				Set<Stream> projectStreams = this.getStreamSet().stream()
+						.filter(s -> s.getCreationJavaProject().equals(project)).collect(Collectors.toSet());
+
+				// projects merged into another one share its outcome, so the statistics
+				// are only recorded for the latter.
+				boolean hasStatistics = outcome != null && outcome.getProject().equals(project);
+
+				ProjectAnalysisSnapshot.put(project,
+						new ProjectAnalysisSnapshot(projectToConfigurationDigest.get(project),
+								compilationUnitToDigest, projectStreams,
+								this.projectToEntryPoints.getOrDefault(project, Collections.emptySet()),
+								hasStatistics ? outcome.getNumberOfProcessedStreamInstances() : 0,
+								hasStatistics ? outcome.getNumberOfSkippedStreamInstances() : 0));
+			});
+
+			// restore the outcome of the unchanged projects.
+			projectToReusedSnapshot.forEach((project, snapshot) -> {
+				this.getStreamSet().addAll(snapshot.getStreams());
+				this.projectToEntryPoints.put(project, snapshot.getEntryPoints());
+
+				// add the statistics of the reused project to those of the analyzed ones.
+				this.setNumberOfProcessedStreamInstances(
+						this.getNumberOfProcessedStreamInstances() + snapshot.getNumberOfProcessedStreamInstances());
+				this.setNumberOfSkippedStreamInstances(
+						this.getNumberOfSkippedStreamInstances() + snapshot.getNumberOfSkippedStreamInstances());
+			});
+
 			// map empty set to unprocessed projects.
 			for (IJavaProject project : projects)
 				this.projectToEntryPoints.computeIfAbsent(project, p -> Collections.emptySet());
@@ -346,6 +515,143 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		this.getTypeRootToCompilationUnitMap().clear();
 	}
 
+	/**
+	 * Collects the {@link Stream}s of the given {@link ICompilationUnit}s by
+	 * parsing them in batches rather than one at a time. Each batch is parsed
+	 * with a shared binding environment and visited by its own
+	 * {@link StreamAnalyzer}. Batches are processed concurrently by the parser
+	 * threads, and their streams are merged into the given analyzer.
+	 *
+	 * @param project  The project containing the given units.
+	 * @param units    The units whose streams to collect.
+	 * @param analyzer The {@link StreamAnalyzer} receiving the collected streams.
+	 * @param monitor  The progress monitor to use.
+	 */
+	private void collectStreamsInBatches(IJavaProject project, List<ICompilationUnit> units,
+			StreamAnalyzer analyzer, IProgressMonitor monitor) {
+		if (units.isEmpty())
+			return;
+
+		SubMonitor subMonitor = SubMonitor.convert(monitor, "Collecting streams...", 2);
+
+		int numberOfThreads = Math.max(1, Math.min(this.getOptions().getNumberOfParserThreads(), units.size()));
+		List<List<ICompilationUnit>> batches = Lists.partition(units,
+				(units.size() + numberOfThreads - 1) / numberOfThreads);
+
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+		try {
+			// parse the batches (but exclude it from the time).
+			this.getExcludedTimeCollector().start();
+
+			List<Callable<Map<ICompilationUnit, CompilationUnit>>> parseTasks = batches.stream()
+					.map(b -> (Callable<Map<ICompilationUnit, CompilationUnit>>) () -> parse(project, b))
+					.collect(Collectors.toList());
+
+			for (Future<Map<ICompilationUnit, CompilationUnit>> future : pool.invokeAll(parseTasks))
+				this.getTypeRootToCompilationUnitMap().putAll(future.get());
+
+			this.getExcludedTimeCollector().stop();
+			subMonitor.worked(1);
+
+			// visit each batch with its own visitor.
+			Set<Stream> streams = ConcurrentHashMap.newKeySet();
+
+			List<Callable<Void>> visitTasks = batches.stream().map(b -> (Callable<Void>) () -> {
+				StreamAnalyzer visitor = new StreamAnalyzer();
+
+				for (ICompilationUnit unit : b)
+					this.getTypeRootToCompilationUnitMap().get(unit).accept(visitor);
+
+				streams.addAll(visitor.getStreamSet());
+				return null;
+			}).collect(Collectors.toList());
+
+			for (Future<Void> future : pool.invokeAll(visitTasks))
+				future.get();
+
+			analyzer.getStreamSet().addAll(streams);
+			subMonitor.worked(1);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else if (cause instanceof Error)
+				throw (Error) cause;
+			else
+				throw new RuntimeException(cause);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Computes a digest of the settings used to analyze the given project and of
+	 * the project's classpath, i.e., everything other than the project's own
+	 * sources that the analysis outcome depends on. Libraries are identified by
+	 * their paths, sizes, and modification times, and required projects by the
+	 * contents of their sources.
+	 *
+	 * @param project The project to be analyzed.
+	 * @return A hexadecimal digest of the analysis configuration.
+	 */
+	private String computeConfigurationDigest(IJavaProject project) throws CoreException {
+		List<String> inputs = new ArrayList<>();
+
+		inputs.add(Arrays.toString(new Object[] { this.getNForStreams(), this.getUseImplicitEntrypoints(),
+				this.getUseImplicitTestEntrypoints(), this.getUseImplicitBenchmarkEntrypoints(),
+				this.getUseImplicitJavaFXEntrypoints() }));
+		inputs.add(this.getOptions().getOutcomeDeterminingOptions());
+
+		// when merged, the project may be analyzed along with any of the others.
+		if (this.getOptions().shouldMergeDependentProjects())
+			for (IJavaProject otherProject : this.getJavaProjects())
+				if (!otherProject.equals(project))
+					computeCompilationUnitDigests(getCompilationUnits(otherProject)).entrySet().stream()
+							.map(e -> e.getKey().getHandleIdentifier() + ":" + e.getValue()).sorted()
+							.forEach(inputs::add);
+
+		for (IClasspathEntry entry : project.getResolvedClasspath(true)) {
+			inputs.add(entry.getPath().toString());
+
+			switch (entry.getEntryKind()) {
+			case IClasspathEntry.CPE_LIBRARY:
+				IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(entry.getPath());
+				File file = resource == null || resource.getLocation() == null ? entry.getPath().toFile()
+						: resource.getLocation().toFile();
+				inputs.add(file.length() + ":" + file.lastModified());
+				break;
+			case IClasspathEntry.CPE_PROJECT:
+				IJavaProject requiredProject = JavaCore
+						.create(ResourcesPlugin.getWorkspace().getRoot().getProject(entry.getPath().lastSegment()));
+
+				if (requiredProject.exists())
+					computeCompilationUnitDigests(getCompilationUnits(requiredProject)).entrySet().stream()
+							.map(e -> e.getKey().getHandleIdentifier() + ":" + e.getValue()).sorted()
+							.forEach(inputs::add);
+				break;
+			}
+		}
+
+		// the entry points file, if any, determines the entry points.
+		File entryPointsFile = StreamAnalyzer.getEntryPointsFile(project.getResource().getLocation(),
+				StreamAnalyzer.ENTRY_POINT_FILENAME);
+
+		if (entryPointsFile != null)
+			try {
+				inputs.add(new String(Files.readAllBytes(entryPointsFile.toPath()), StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				throw new CoreException(new Status(IStatus.ERROR,
+						FrameworkUtil.getBundle(OptimizeStreamsRefactoringProcessor.class).getSymbolicName(),
+						"Could not read entry points file: " + entryPointsFile + ".", e));
+			}
+
+		return ProjectAnalysisSnapshot.computeDigest(inputs.toArray(new String[inputs.size()]));
+	}
+
 	@Override
 	public Change createChange(IProgressMonitor pm) throws CoreException, OperationCanceledException {
 		try {
@@ -469,12 +775,28 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		return this.numberOfSkippedStreamInstances;
 	}
 
+	public StreamAnalysisOptions getOptions() {
+		return this.options;
+	}
+
 	public Set<Stream> getOptimizableStreams() {
 		Set<Stream> streamSet = this.getStreamSet();
 		return streamSet == null ? Collections.emptySet()
 				: streamSet.parallelStream().filter(s -> !s.getStatus().hasError()).collect(Collectors.toSet());
 	}
 
+	/**
+	 * Get the outcome of the analysis of each project analyzed by the last
+	 * precondition check. Projects whose previous analysis was reused aren't
+	 * included.
+	 *
+	 * @return A {@link Map} from each analyzed project to its
+	 *         {@link ProjectAnalysisOutcome}.
+	 */
+	public Map<IJavaProject, ProjectAnalysisOutcome> getProjectToOutcome() {
+		return this.projectToOutcome;
+	}
+
 	@Override
 	public String getProcessorName() {
 		return Messages.Name;
@@ -559,6 +881,10 @@ public class OptimizeStreamsRefactoringProcessor extends RefactoringProcessor {
 		this.numberOfSkippedStreamInstances = numberOfSkippedStreamInstances;
 	}
 
+	public void setOptions(StreamAnalysisOptions options) {
+		this.options = options;
+	}
+
 	protected void setStreamSet(Set<Stream> streamSet) {
 		this.streamSet = streamSet;
 	}
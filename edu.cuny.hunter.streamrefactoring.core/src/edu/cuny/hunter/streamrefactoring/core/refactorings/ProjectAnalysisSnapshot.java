@@ -0,0 +1,211 @@
+package edu.cuny.hunter.streamrefactoring.core.refactorings;
+
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+
+import edu.cuny.hunter.streamrefactoring.core.analysis.Stream;
+
+/**
+ * The outcome of analyzing a single {@link IJavaProject}, i.e., the content
+ * digests of its {@link ICompilationUnit}s, the {@link Stream}s found in each
+ * of them along with their instance keys and precondition outcomes, and the
+ * {@link Entrypoint}s used. Snapshots are kept across refactoring invocations
+ * so that projects whose inputs haven't changed need not be re-parsed nor
+ * re-analyzed. Snapshots are only softly reachable and may be reclaimed when
+ * memory runs low.
+ */
+final class ProjectAnalysisSnapshot {
+
+	private static final Map<IJavaProject, SoftReference<ProjectAnalysisSnapshot>> PROJECT_TO_SNAPSHOT = new ConcurrentHashMap<>();
+
+	/**
+	 * Removes all snapshots.
+	 */
+	static void clear() {
+		PROJECT_TO_SNAPSHOT.clear();
+	}
+
+	/**
+	 * Computes a hexadecimal SHA-256 digest of the given inputs.
+	 *
+	 * @param inputs The inputs to digest.
+	 * @return The hexadecimal digest of the given inputs.
+	 */
+	static String computeDigest(String... inputs) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		for (String input : inputs) {
+			digest.update(input.getBytes(StandardCharsets.UTF_8));
+			// separate the inputs.
+			digest.update((byte) 0);
+		}
+
+		StringBuilder ret = new StringBuilder();
+
+		for (byte b : digest.digest())
+			ret.append(String.format("%02x", b));
+
+		return ret.toString();
+	}
+
+	/**
+	 * Returns the last snapshot taken of the given project.
+	 *
+	 * @param project The project whose snapshot to retrieve.
+	 * @return The snapshot or {@link Optional#empty()} if there is none or it has
+	 *         been reclaimed.
+	 */
+	static Optional<ProjectAnalysisSnapshot> get(IJavaProject project) {
+		SoftReference<ProjectAnalysisSnapshot> reference = PROJECT_TO_SNAPSHOT.get(project);
+
+		if (reference == null)
+			return Optional.empty();
+
+		ProjectAnalysisSnapshot snapshot = reference.get();
+
+		// if the snapshot has been reclaimed.
+		if (snapshot == null)
+			PROJECT_TO_SNAPSHOT.remove(project, reference);
+
+		return Optional.ofNullable(snapshot);
+	}
+
+	/**
+	 * Replaces the snapshot of the given project.
+	 *
+	 * @param project  The project that was analyzed.
+	 * @param snapshot The outcome of the analysis.
+	 */
+	static void put(IJavaProject project, ProjectAnalysisSnapshot snapshot) {
+		PROJECT_TO_SNAPSHOT.put(project, new SoftReference<>(snapshot));
+	}
+
+	private final Map<ICompilationUnit, String> compilationUnitToDigest;
+
+	private final Map<ICompilationUnit, Set<Stream>> compilationUnitToStreams;
+
+	/**
+	 * A digest of the analysis settings and of the project's classpath.
+	 */
+	private final String configurationDigest;
+
+	private final Collection<Entrypoint> entryPoints;
+
+	private final int numberOfProcessedStreamInstances;
+
+	private final int numberOfSkippedStreamInstances;
+
+	/**
+	 * Creates a new snapshot.
+	 *
+	 * @param configurationDigest              A digest of the analysis settings
+	 *                                         and of the project's classpath.
+	 * @param compilationUnitToDigest          The content digest of each
+	 *                                         {@link ICompilationUnit} in the
+	 *                                         project.
+	 * @param streams                          The analyzed {@link Stream}s of the
+	 *                                         project.
+	 * @param entryPoints                      The {@link Entrypoint}s used to
+	 *                                         analyze the project.
+	 * @param numberOfProcessedStreamInstances The number of stream instances
+	 *                                         processed.
+	 * @param numberOfSkippedStreamInstances   The number of stream instances
+	 *                                         skipped.
+	 */
+	ProjectAnalysisSnapshot(String configurationDigest, Map<ICompilationUnit, String> compilationUnitToDigest,
+			Collection<Stream> streams, Collection<Entrypoint> entryPoints, int numberOfProcessedStreamInstances,
+			int numberOfSkippedStreamInstances) {
+		this.configurationDigest = configurationDigest;
+		this.compilationUnitToDigest = Collections.unmodifiableMap(compilationUnitToDigest);
+		this.compilationUnitToStreams = streams.stream().collect(Collectors.groupingBy(
+				s -> (ICompilationUnit) s.getEnclosingCompilationUnit().getJavaElement(), Collectors.toSet()));
+		this.entryPoints = Collections.unmodifiableCollection(entryPoints);
+		this.numberOfProcessedStreamInstances = numberOfProcessedStreamInstances;
+		this.numberOfSkippedStreamInstances = numberOfSkippedStreamInstances;
+	}
+
+	/**
+	 * Returns the {@link ICompilationUnit}s that have been added, removed, or
+	 * modified since this snapshot was taken.
+	 *
+	 * @param compilationUnitToDigest The current content digest of each
+	 *                                {@link ICompilationUnit} in the project.
+	 * @return The {@link ICompilationUnit}s whose digests differ.
+	 */
+	Set<ICompilationUnit> getChangedCompilationUnits(Map<ICompilationUnit, String> compilationUnitToDigest) {
+		Set<ICompilationUnit> ret = new HashSet<>();
+
+		// added or modified.
+		compilationUnitToDigest.forEach((unit, digest) -> {
+			if (!digest.equals(this.compilationUnitToDigest.get(unit)))
+				ret.add(unit);
+		});
+
+		// removed.
+		this.compilationUnitToDigest.keySet().stream().filter(u -> !compilationUnitToDigest.containsKey(u))
+				.forEach(ret::add);
+
+		return ret;
+	}
+
+	Collection<Entrypoint> getEntryPoints() {
+		return this.entryPoints;
+	}
+
+	int getNumberOfProcessedStreamInstances() {
+		return this.numberOfProcessedStreamInstances;
+	}
+
+	int getNumberOfSkippedStreamInstances() {
+		return this.numberOfSkippedStreamInstances;
+	}
+
+	Set<Stream> getStreams() {
+		return this.compilationUnitToStreams.values().stream().flatMap(Set::stream).collect(Collectors.toSet());
+	}
+
+	/**
+	 * Returns the {@link Stream}s found in the given {@link ICompilationUnit}.
+	 *
+	 * @param unit The {@link ICompilationUnit} in question.
+	 * @return The {@link Stream}s whose creations are in the given unit.
+	 */
+	Set<Stream> getStreams(ICompilationUnit unit) {
+		return this.compilationUnitToStreams.getOrDefault(unit, Collections.emptySet());
+	}
+
+	/**
+	 * Returns true iff this snapshot was taken with the given configuration and
+	 * none of the project's {@link ICompilationUnit}s have changed since.
+	 *
+	 * @param configurationDigest     The current digest of the analysis settings
+	 *                                and of the project's classpath.
+	 * @param compilationUnitToDigest The current content digest of each
+	 *                                {@link ICompilationUnit} in the project.
+	 * @return True iff the analysis outcome recorded in this snapshot still holds.
+	 */
+	boolean isUpToDate(String configurationDigest, Map<ICompilationUnit, String> compilationUnitToDigest) {
+		return this.configurationDigest.equals(configurationDigest)
+				&& this.getChangedCompilationUnits(compilationUnitToDigest).isEmpty();
+	}
+}
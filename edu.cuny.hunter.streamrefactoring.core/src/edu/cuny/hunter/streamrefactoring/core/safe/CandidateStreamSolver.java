@@ -0,0 +1,58 @@
+package edu.cuny.hunter.streamrefactoring.core.safe;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.logging.Logger;
+
+import com.ibm.safe.internal.exceptions.PropertiesException;
+import com.ibm.safe.reporting.IReporter;
+import com.ibm.safe.typestate.core.BenignOracle;
+import com.ibm.safe.typestate.core.TypeStateProperty;
+import com.ibm.safe.typestate.merge.IMergeFunctionFactory;
+import com.ibm.safe.typestate.metrics.TypeStateMetrics;
+import com.ibm.safe.typestate.mine.TraceReporter;
+import com.ibm.safe.typestate.options.TypeStateOptions;
+import com.ibm.wala.escape.ILiveObjectAnalysis;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+
+import edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames;
+
+/**
+ * A solver that only tracks the given candidate instances, e.g., those of the
+ * streams found in the source code along with the streams derived from them,
+ * instead of every instance whose type is tracked by the DFA.
+ */
+public class CandidateStreamSolver extends TrackingUniqueSolver {
+
+	private static final Logger LOGGER = Logger.getLogger(LoggerNames.LOGGER_NAME);
+
+	private Collection<InstanceKey> candidateInstances;
+
+	public CandidateStreamSolver(CallGraph cg, PointerAnalysis<?> pointerAnalysis, TypeStateProperty property,
+			TypeStateOptions options, ILiveObjectAnalysis live, BenignOracle ora, TypeStateMetrics metrics,
+			IReporter reporter, TraceReporter traceReporter, IMergeFunctionFactory mergeFactory,
+			Collection<InstanceKey> candidateInstances) {
+		super(cg, pointerAnalysis, property, options, live, ora, metrics, reporter, traceReporter, mergeFactory);
+		this.candidateInstances = candidateInstances;
+	}
+
+	@Override
+	protected Collection<InstanceKey> computeTrackedInstances() throws PropertiesException {
+		// compute all instances whose type is tracked by the DFA.
+		Collection<InstanceKey> trackedInstancesByType = this.computeTrackedInstancesByType();
+
+		// keep only the candidates.
+		Collection<InstanceKey> ret = new HashSet<>(trackedInstancesByType);
+		ret.retainAll(this.getCandidateInstances());
+
+		LOGGER.info(() -> "Tracking " + ret.size() + " of " + trackedInstancesByType.size() + " instances.");
+		this.setTrackedInstances(ret);
+		return ret;
+	}
+
+	protected Collection<InstanceKey> getCandidateInstances() {
+		return this.candidateInstances;
+	}
+}
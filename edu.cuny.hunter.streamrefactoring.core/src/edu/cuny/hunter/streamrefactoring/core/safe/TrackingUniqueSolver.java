@@ -1,10 +1,13 @@
 package edu.cuny.hunter.streamrefactoring.core.safe;
 
 import java.util.Collection;
+import java.util.function.BiConsumer;
 
 import com.ibm.safe.internal.exceptions.PropertiesException;
+import com.ibm.safe.internal.exceptions.SetUpException;
 import com.ibm.safe.reporting.IReporter;
 import com.ibm.safe.typestate.core.BenignOracle;
+import com.ibm.safe.typestate.core.TypeStateResult;
 import com.ibm.safe.typestate.merge.IMergeFunctionFactory;
 import com.ibm.safe.typestate.metrics.TypeStateMetrics;
 import com.ibm.safe.typestate.mine.TraceReporter;
@@ -12,13 +15,22 @@ import com.ibm.safe.typestate.options.TypeStateOptions;
 import com.ibm.safe.typestate.rules.ITypeStateDFA;
 import com.ibm.safe.typestate.unique.UniqueSolver;
 import com.ibm.wala.escape.ILiveObjectAnalysis;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.WalaException;
 
 // NOTE: UniqueSolver isn't sound.
 public class TrackingUniqueSolver extends UniqueSolver {
 
+	/**
+	 * Consumes the result of each instance as soon as it's computed or null if
+	 * the results should be kept.
+	 */
+	private BiConsumer<InstanceKey, TypeStateResult> instanceResultConsumer;
+
 	private Collection<InstanceKey> trackedInstances;
 
 	public TrackingUniqueSolver(CallGraph cg, PointerAnalysis pointerAnalysis, ITypeStateDFA dfa,
@@ -34,12 +46,46 @@ public class TrackingUniqueSolver extends UniqueSolver {
 		return instances;
 	}
 
+	public BiConsumer<InstanceKey, TypeStateResult> getInstanceResultConsumer() {
+		return this.instanceResultConsumer;
+	}
+
 	public Collection<InstanceKey> getTrackedInstances() {
 		return this.trackedInstances;
 	}
 
+	/**
+	 * Sets the consumer of the result of each instance. Once consumed, only the
+	 * result's domain, which holds its messages, is kept in the aggregate result
+	 * so that the instance's supergraph and tabulation result may be released
+	 * before the next instance is solved.
+	 *
+	 * @param instanceResultConsumer
+	 *            Consumes each instance along with its result or null if the
+	 *            results should be kept.
+	 */
+	public void setInstanceResultConsumer(BiConsumer<InstanceKey, TypeStateResult> instanceResultConsumer) {
+		this.instanceResultConsumer = instanceResultConsumer;
+	}
+
 	protected void setTrackedInstances(Collection<InstanceKey> trackedInstances) {
 		this.trackedInstances = trackedInstances;
 	}
 
+	@Override
+	protected TypeStateResult solveForInstances(Collection<InstanceKey> instances, AnalysisCache cache)
+			throws WalaException, PropertiesException, SetUpException, CancelException {
+		TypeStateResult result = super.solveForInstances(instances, cache);
+
+		if (this.getInstanceResultConsumer() == null)
+			return result;
+
+		// this solver separates instances.
+		assert instances.size() == 1 : "Expecting a single instance per solution.";
+		this.getInstanceResultConsumer().accept(instances.iterator().next(), result);
+
+		// keep only the messages.
+		return new TypeStateResult(null, result.getDomain(), null);
+	}
+
 }
\ No newline at end of file
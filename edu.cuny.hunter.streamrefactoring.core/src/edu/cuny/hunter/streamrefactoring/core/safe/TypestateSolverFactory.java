@@ -1,6 +1,7 @@
 package edu.cuny.hunter.streamrefactoring.core.safe;
 
-import com.ibm.safe.controller.ISafeSolver;
+import java.util.Collection;
+
 import com.ibm.safe.internal.exceptions.PropertiesException;
 import com.ibm.safe.reporting.IReporter;
 import com.ibm.safe.typestate.controller.TypeStateSolverCreator;
@@ -11,7 +12,6 @@ import com.ibm.safe.typestate.merge.IMergeFunctionFactory;
 import com.ibm.safe.typestate.metrics.TypeStateMetrics;
 import com.ibm.safe.typestate.mine.TraceReporter;
 import com.ibm.safe.typestate.options.TypeStateOptions;
-import com.ibm.safe.typestate.unique.UniqueSolver;
 import com.ibm.wala.analysis.pointers.HeapGraph;
 import com.ibm.wala.escape.ILiveObjectAnalysis;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
@@ -30,14 +30,27 @@ public class TypestateSolverFactory extends com.ibm.safe.typestate.core.Typestat
 		return options.shouldUseLiveAnalysis() ? TypeStateSolverCreator.computeLiveObjectAnalysis(cg, hg, false) : null;
 	}
 
-	public static ISafeSolver getSolver(AnalysisOptions domoOptions, CallGraph cg, PointerAnalysis<?> pointerAnalysis,
-			HeapGraph<?> hg, TypeStateProperty dfa, BenignOracle ora, TypeStateOptions options,
-			TypeStateMetrics metrics, IReporter reporter, TraceReporter traceReporter)
+	public static TrackingUniqueSolver getSolver(AnalysisOptions domoOptions, CallGraph cg,
+			PointerAnalysis<?> pointerAnalysis, HeapGraph<?> hg, TypeStateProperty dfa, BenignOracle ora,
+			TypeStateOptions options, TypeStateMetrics metrics, IReporter reporter, TraceReporter traceReporter)
 			throws PropertiesException, CancelException {
 		IMergeFunctionFactory mergeFactory = makeMergeFactory(options, TypeStateSolverKind.UNIQUE);
 		ILiveObjectAnalysis live = getLiveObjectAnalysis(cg, hg, options);
-		return new UniqueSolver(cg, pointerAnalysis, dfa, options, live, ora, metrics, reporter, traceReporter,
-				mergeFactory);
+		return new TrackingUniqueSolver(cg, pointerAnalysis, dfa, options, live, ora, metrics, reporter,
+				traceReporter, mergeFactory);
+	}
+
+	/**
+	 * Returns a solver that only tracks the given candidate instances.
+	 */
+	public static TrackingUniqueSolver getSolver(AnalysisOptions domoOptions, CallGraph cg,
+			PointerAnalysis<?> pointerAnalysis, HeapGraph<?> hg, TypeStateProperty dfa, BenignOracle ora,
+			TypeStateOptions options, TypeStateMetrics metrics, IReporter reporter, TraceReporter traceReporter,
+			Collection<InstanceKey> candidateInstances) throws PropertiesException, CancelException {
+		IMergeFunctionFactory mergeFactory = makeMergeFactory(options, TypeStateSolverKind.UNIQUE);
+		ILiveObjectAnalysis live = getLiveObjectAnalysis(cg, hg, options);
+		return new CandidateStreamSolver(cg, pointerAnalysis, dfa, options, live, ora, metrics, reporter,
+				traceReporter, mergeFactory, candidateInstances);
 	}
 
 	public static TrackingUniqueSolver getSolver(CallGraph cg, PointerAnalysis<?> pointerAnalysis, HeapGraph<?> hg,
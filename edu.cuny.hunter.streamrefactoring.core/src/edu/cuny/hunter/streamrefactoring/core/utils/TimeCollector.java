@@ -23,6 +23,10 @@ public class TimeCollector {
 		return this.collectedTime;
 	}
 
+	public boolean isStarted() {
+		return this.started;
+	}
+
 	public void start() {
 		assert !this.started : "Time colletor is already started.";
 		this.started = true;
@@ -1,30 +1,51 @@
 package edu.cuny.hunter.streamrefactoring.core.wala;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.CallString;
+import com.ibm.wala.util.intset.MutableIntSet;
+import com.ibm.wala.util.intset.MutableMapping;
+import com.ibm.wala.util.intset.MutableSparseIntSet;
+import com.ibm.wala.util.intset.OrdinalSet;
 
 public class CallStringWithReceivers extends CallString {
 
-	private Set<InstanceKey> possibleReceivers = new HashSet<>();
+	/**
+	 * The indices of the possible receivers in {@link #receiverMapping}.
+	 */
+	private MutableIntSet possibleReceivers = MutableSparseIntSet.makeEmpty();
 
-	public CallStringWithReceivers(CallSiteReference site, IMethod method) {
-		super(site, method);
-	}
+	/**
+	 * Numbers the receivers of all call strings sharing it.
+	 */
+	private MutableMapping<InstanceKey> receiverMapping;
 
-	public CallStringWithReceivers(CallSiteReference site, IMethod method, int length, CallString callString) {
+	public CallStringWithReceivers(CallSiteReference site, IMethod method, int length, CallString callString,
+			MutableMapping<InstanceKey> receiverMapping) {
 		super(site, method, length, callString);
+		this.receiverMapping = receiverMapping;
+	}
+
+	public CallStringWithReceivers(CallSiteReference site, IMethod method,
+			MutableMapping<InstanceKey> receiverMapping) {
+		super(site, method);
+		this.receiverMapping = receiverMapping;
 	}
 
 	public void addPossibleReceiver(InstanceKey receiver) {
-		this.getPossibleReceivers().add(receiver);
+		int index;
+
+		synchronized (this.receiverMapping) {
+			index = this.receiverMapping.add(receiver);
+		}
+
+		synchronized (this) {
+			this.possibleReceivers.add(index);
+		}
 	}
 
-	public Set<InstanceKey> getPossibleReceivers() {
-		return this.possibleReceivers;
+	public synchronized OrdinalSet<InstanceKey> getPossibleReceivers() {
+		return new OrdinalSet<>(this.possibleReceivers, this.receiverMapping);
 	}
-}
\ No newline at end of file
+}
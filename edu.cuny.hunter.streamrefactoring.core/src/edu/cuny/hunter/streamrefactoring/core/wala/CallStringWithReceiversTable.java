@@ -0,0 +1,185 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
+
+/**
+ * Interns the {@link CallStringWithReceivers} of calls, i.e., of the triples
+ * made of a calling {@link CGNode}, a {@link CallSiteReference}, and a target
+ * {@link IMethod}. The table is a single map keyed by small immutable triples
+ * whose hash codes are precomputed. The table doesn't reference any call after
+ * it's cleared. Calls without a call string, i.e., those whose context length
+ * is 0, are interned as well. The table may be used concurrently.
+ */
+public class CallStringWithReceiversTable {
+
+	/**
+	 * Computes the call string of a call.
+	 */
+	@FunctionalInterface
+	public interface Factory {
+
+		/**
+		 * @param node
+		 *            The calling {@link CGNode}.
+		 * @param site
+		 *            The call site in the calling node.
+		 * @param target
+		 *            The target of the call.
+		 * @return The call string of the given call or null if it has none.
+		 */
+		CallStringWithReceivers make(CGNode node, CallSiteReference site, IMethod target);
+	}
+
+	/**
+	 * The key of an interned call.
+	 */
+	private static final class Key {
+
+		private final int hashCode;
+
+		private final CGNode node;
+
+		private final CallSiteReference site;
+
+		private final IMethod target;
+
+		private Key(CGNode node, CallSiteReference site, IMethod target) {
+			this.node = node;
+			this.site = site;
+			this.target = target;
+			this.hashCode = hash(node, site, target);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			return this.hashCode == other.hashCode && this.node.equals(other.node) && this.site.equals(other.site)
+					&& this.target.equals(other.target);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCode;
+		}
+	}
+
+	/**
+	 * Interned in place of a call string for calls that don't have one.
+	 */
+	private static final Object NO_CALL_STRING = new Object();
+
+	/**
+	 * Maps each interned call to its call string or to {@link #NO_CALL_STRING}.
+	 */
+	private final ConcurrentMap<Key, Object> callToCallString = new ConcurrentHashMap<>();
+
+	private final Factory factory;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Create a new {@link CallStringWithReceiversTable}.
+	 *
+	 * @param factory
+	 *            Computes the call strings of calls that haven't been interned.
+	 */
+	public CallStringWithReceiversTable(Factory factory) {
+		this.factory = factory;
+	}
+
+	/**
+	 * Removes all call strings from the table and resets its statistics.
+	 */
+	public void clear() {
+		this.callToCallString.clear();
+		this.hits.reset();
+		this.misses.reset();
+	}
+
+	/**
+	 * Returns the interned call string of the given call, computing it if it
+	 * hasn't been interned yet. Only one call string is interned per call even if
+	 * it is computed concurrently.
+	 *
+	 * @param node
+	 *            The calling {@link CGNode}.
+	 * @param site
+	 *            The call site in the calling node.
+	 * @param target
+	 *            The target of the call.
+	 * @return The interned call string of the given call or null if it has none.
+	 */
+	public CallStringWithReceivers get(CGNode node, CallSiteReference site, IMethod target) {
+		Key key = new Key(node, site, target);
+		Object callString = this.callToCallString.get(key);
+
+		if (callString != null) {
+			// found.
+			this.hits.increment();
+			return toCallString(callString);
+		}
+
+		// not found. Compute it.
+		this.misses.increment();
+
+		CallStringWithReceivers newCallString = this.factory.make(node, site, target);
+		Object ret = this.callToCallString.putIfAbsent(key, newCallString == null ? NO_CALL_STRING : newCallString);
+
+		// if we won the race.
+		if (ret == null)
+			return newCallString;
+
+		return toCallString(ret);
+	}
+
+	/**
+	 * @return The number of lookups that found an interned call string.
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * @return The number of lookups that computed a call string.
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * @return The number of interned calls.
+	 */
+	public long getSize() {
+		return this.callToCallString.size();
+	}
+
+	private static int hash(CGNode node, CallSiteReference site, IMethod target) {
+		return 31 * (31 * node.hashCode() + site.hashCode()) + target.hashCode();
+	}
+
+	private static CallStringWithReceivers toCallString(Object value) {
+		return value == NO_CALL_STRING ? null : (CallStringWithReceivers) value;
+	}
+
+	@Override
+	public String toString() {
+		long hits = this.getHits();
+		long lookups = hits + this.getMisses();
+
+		return "size: " + this.getSize() + ", lookups: " + lookups + ", hits: " + hits + " ("
+				+ (lookups == 0 ? 0 : hits * 100 / lookups) + "%)";
+	}
+}
@@ -0,0 +1,143 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NAME;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.modref.ExtendedHeapModel;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAInstruction;
+
+/**
+ * Computes the locations possibly modified by {@link CGNode}s on demand. Unlike
+ * {@link ModRef#computeMod(CallGraph, PointerAnalysis)}, which computes the
+ * transitive mod sets of every node in the {@link CallGraph}, only the nodes
+ * transitively called by the queried nodes are scanned. Both the local and the
+ * transitive mod sets are memoized per {@link CGNode}. Instances aren't
+ * thread-safe.
+ */
+public class DemandDrivenModRef {
+
+	private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+	private final CallGraph callGraph;
+
+	private final ExtendedHeapModel heapModel;
+
+	private final ModRef<InstanceKey> modRef = ModRef.make();
+
+	/**
+	 * The locations modified by the instructions of each scanned node, i.e.,
+	 * excluding its callees.
+	 */
+	private final Map<CGNode, Set<PointerKey>> nodeToLocalMod = new HashMap<>();
+
+	/**
+	 * The locations modified by each queried node and its transitive callees.
+	 */
+	private final Map<CGNode, Set<PointerKey>> nodeToMod = new HashMap<>();
+
+	private final PointerAnalysis<InstanceKey> pointerAnalysis;
+
+	public DemandDrivenModRef(CallGraph callGraph, PointerAnalysis<InstanceKey> pointerAnalysis) {
+		this.callGraph = callGraph;
+		this.pointerAnalysis = pointerAnalysis;
+		this.heapModel = this.modRef.makeHeapModel(pointerAnalysis);
+	}
+
+	private Set<PointerKey> computeLocalMod(CGNode node) {
+		IR ir = node.getIR();
+
+		if (ir == null)
+			return Collections.emptySet();
+
+		Set<PointerKey> ret = new HashSet<>();
+
+		for (SSAInstruction instruction : ir.getInstructions())
+			if (instruction != null)
+				ret.addAll(this.modRef.getMod(node, this.heapModel, this.pointerAnalysis, instruction, null));
+
+		return ret.isEmpty() ? Collections.emptySet() : ret;
+	}
+
+	private Set<PointerKey> computeMod(CGNode node) {
+		Set<PointerKey> ret = new HashSet<>();
+		Set<CGNode> seen = new HashSet<>();
+		Deque<CGNode> worklist = new ArrayDeque<>();
+
+		seen.add(node);
+		worklist.push(node);
+
+		while (!worklist.isEmpty()) {
+			CGNode current = worklist.pop();
+			Set<PointerKey> memoizedMod = this.nodeToMod.get(current);
+
+			// reuse the transitive mod set of previously queried callees.
+			if (memoizedMod != null && current != node) {
+				ret.addAll(memoizedMod);
+				continue;
+			}
+
+			ret.addAll(this.getLocalMod(current));
+
+			for (Iterator<CGNode> it = this.callGraph.getSuccNodes(current); it.hasNext();) {
+				CGNode callee = it.next();
+
+				if (seen.add(callee))
+					worklist.push(callee);
+			}
+		}
+
+		LOGGER.fine(() -> "Scanned " + seen.size() + " nodes for the mod set of: " + node);
+		return ret;
+	}
+
+	private Set<PointerKey> getLocalMod(CGNode node) {
+		return this.nodeToLocalMod.computeIfAbsent(node, this::computeLocalMod);
+	}
+
+	/**
+	 * Returns the locations possibly modified by the given node and its
+	 * transitive callees.
+	 *
+	 * @param node The {@link CGNode} in question.
+	 * @return The {@link PointerKey}s possibly modified by the given node.
+	 */
+	public Set<PointerKey> getMod(CGNode node) {
+		Set<PointerKey> ret = this.nodeToMod.get(node);
+
+		if (ret == null) {
+			ret = Collections.unmodifiableSet(this.computeMod(node));
+			this.nodeToMod.put(node, ret);
+		}
+
+		return ret;
+	}
+
+	/**
+	 * @return The number of {@link CGNode}s whose instructions have been scanned.
+	 */
+	public int getNumberOfScannedNodes() {
+		return this.nodeToLocalMod.size();
+	}
+
+	@Override
+	public String toString() {
+		return "DemandDrivenModRef [queriedNodes=" + this.nodeToMod.size() + ", scannedNodes="
+				+ this.getNumberOfScannedNodes() + ", callGraphNodes=" + this.callGraph.getNumberOfNodes() + "]";
+	}
+}
@@ -10,7 +10,18 @@ import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NA
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.logging.Logger;
 import java.util.stream.BaseStream;
@@ -23,22 +34,40 @@ import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.launching.IVMInstall;
 import org.eclipse.jdt.launching.JavaRuntime;
 
+import com.ibm.wala.analysis.typeInference.TypeInference;
 import com.ibm.wala.cast.java.client.JDTJavaSourceAnalysisEngine;
+import com.ibm.wala.cast.java.translator.jdt.JDTClassLoaderFactory;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.ClassLoaderFactory;
+import com.ibm.wala.classLoader.ClassLoaderFactoryImpl;
+import com.ibm.wala.classLoader.DirectoryTreeModule;
+import com.ibm.wala.classLoader.FileModule;
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.ide.util.EclipseProjectPath;
 import com.ibm.wala.ide.util.ProgressMonitorDelegate;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.callgraph.ContextSelector;
 import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.nCFABuilder;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.IR;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.collections.Pair;
 import com.ibm.wala.util.config.FileOfClasses;
+import com.ibm.wala.util.config.SetOfClasses;
 
 /**
  * Modified from EclipseAnalysisEngine.java, originally from Keshmesh. Authored
@@ -61,18 +90,71 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 	 */
 	private static final int N_FOR_STREAMS_DEFAULT = 2;
 
+	private static void updateDigest(MessageDigest digest, File file) {
+		digest.update(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+		digest.update(ByteBuffer.allocate(2 * Long.BYTES).putLong(file.length()).putLong(file.lastModified()).array());
+	}
+
+	private static void updateDigest(MessageDigest digest, Module module) {
+		if (module instanceof JarFileModule)
+			updateDigest(digest, new File(((JarFileModule) module).getAbsolutePath()));
+		else if (module instanceof FileModule)
+			updateDigest(digest, ((FileModule) module).getFile());
+		else if (module instanceof DirectoryTreeModule) {
+			List<File> files = new ArrayList<>();
+
+			for (Iterator<FileModule> entries = ((DirectoryTreeModule) module).getEntries(); entries.hasNext();)
+				files.add(entries.next().getFile());
+
+			// the order in which the directory is walked isn't specified.
+			files.sort(Comparator.naturalOrder());
+			files.forEach(f -> updateDigest(digest, f));
+		} else
+			// fall back to the module's description.
+			digest.update(module.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
 	private CallGraphBuilder<?> callGraphBuilder;
 
+	/**
+	 * The projects whose analysis scopes are merged into the scope of the project
+	 * used to create this engine.
+	 */
+	private Collection<IJavaProject> mergedProjects = Collections.emptySet();
+
 	/**
 	 * The N to use for instances of {@link BaseStream}.
 	 */
 	private int nToUseForStreams = N_FOR_STREAMS_DEFAULT;
 
+	/**
+	 * The N to use for instances of {@link BaseStream} created by the refined call
+	 * sites.
+	 */
+	private int nToUseForRefinedStreams;
+
 	/**
 	 * The project used to create this engine.
 	 */
 	private IJavaProject project;
 
+	/**
+	 * The call sites, along with the signatures of their enclosing methods,
+	 * whose streams are analyzed with a deeper context.
+	 */
+	private Set<Pair<String, CallSiteReference>> refinedCallSites = Collections.emptySet();
+
+	/**
+	 * Caches the {@link TypeInference}s of the {@link IR}s of this engine.
+	 */
+	private TypeInferenceCache typeInferenceCache = new TypeInferenceCache();
+
+	/**
+	 * True iff the primordial class loader should be shared with the engines of
+	 * other projects via the {@link PrimordialClassLoaderCache}.
+	 */
+	private boolean useSharedPrimordialClassLoader;
+
 	public EclipseProjectAnalysisEngine(IJavaProject project) throws IOException, CoreException {
 		super(project);
 		this.project = project;
@@ -83,6 +165,21 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 		this.nToUseForStreams = nForStreams;
 	}
 
+	/**
+	 * Creates an engine analyzing the given project along with the given projects
+	 * as a single analysis scope and call graph.
+	 *
+	 * @param project        The project used to create this engine.
+	 * @param mergedProjects The projects whose analysis scopes are merged into the
+	 *                       scope of the given project.
+	 * @param nForStreams    The N to use for instances of {@link BaseStream}.
+	 */
+	public EclipseProjectAnalysisEngine(IJavaProject project, Collection<IJavaProject> mergedProjects, int nForStreams)
+			throws IOException, CoreException {
+		this(project, nForStreams);
+		this.mergedProjects = mergedProjects;
+	}
+
 	void addToScopeNotWindows(String fileName, Path installPath) throws IOException {
 		this.scope.addToScope(Primordial,
 				new JarFile(installPath.resolve("jre").resolve("lib").resolve(fileName).toFile()));
@@ -93,14 +190,25 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 	}
 
 	@Override
+	@SuppressWarnings("rawtypes")
 	public void buildAnalysisScope() throws IOException {
+		Collection<EclipseProjectPath> projectPaths = new ArrayList<>();
 		try {
 			this.ePath = this.createProjectPath(this.getProject());
+			projectPaths.add(this.ePath);
+
+			for (IJavaProject mergedProject : this.getMergedProjects())
+				projectPaths.add(this.createProjectPath(mergedProject));
 		} catch (CoreException e) {
 			e.printStackTrace();
 			throw new RuntimeException(e);
 		}
-		this.scope = this.ePath.toAnalysisScope(this.makeAnalysisScope());
+
+		if (this.getMergedProjects().isEmpty())
+			this.scope = this.ePath.toAnalysisScope(this.makeAnalysisScope());
+		else
+			// the modules shared by the projects are only added once.
+			this.scope = Util.mergeProjectPaths(projectPaths, this.makeAnalysisScope());
 
 		// if no primordial classes are in scope.
 		if (this.scope.getModules(ClassLoaderReference.Primordial).isEmpty()) {
@@ -152,8 +260,15 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 		} else
 			LOGGER.info("Reusing call graph builder.");
 
+		CallGraph ret = this.callGraphBuilder.makeCallGraph(options, null);
+
+		CallStringWithReceiversTable table = this.getCallStringWithReceiversTable();
+
+		if (table != null)
+			LOGGER.info(() -> "Call string table: " + table + ".");
+
 		LOGGER.exiting(this.getClass().getName(), "buildSafeCallGraph", this.callGraphBuilder);
-		return this.callGraphBuilder.makeCallGraph(options, null);
+		return ret;
 	}
 
 	public CallGraph buildSafeCallGraph(Iterable<Entrypoint> entryPoints, IProgressMonitor monitor)
@@ -162,9 +277,42 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 	}
 
 	public void clearCallGraphBuilder() {
+		// the builder may be reused until it's discarded, so only then is its call
+		// string table no longer needed.
+		CallStringWithReceiversTable table = this.getCallStringWithReceiversTable();
+
+		if (table != null)
+			table.clear();
+
 		this.callGraphBuilder = null;
 	}
 
+	/**
+	 * @return A digest of the primordial modules of the analysis scope and of its
+	 *         exclusions, which determine the primordial class loader.
+	 */
+	private String computePrimordialDigest() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		for (Module module : this.scope.getModules(Primordial))
+			updateDigest(digest, module);
+
+		// the exclusions are always read from the same resource.
+		digest.update((byte) (this.scope.getExclusions() == null ? 0 : 1));
+
+		StringBuilder ret = new StringBuilder();
+
+		for (byte b : digest.digest())
+			ret.append(String.format("%02x", b));
+
+		return ret.toString();
+	}
+
 	@Override
 	protected EclipseProjectPath<?, IJavaProject> createProjectPath(IJavaProject project)
 			throws IOException, CoreException {
@@ -185,7 +333,39 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 	protected CallGraphBuilder<?> getCallGraphBuilder(IClassHierarchy cha, AnalysisOptions options,
 			IAnalysisCacheView cache) {
 		LOGGER.fine(() -> "Using N = " + this.getNToUseForStreams() + ".");
-		return Util.makeNCFABuilder(N, options, (AnalysisCache) cache, cha, this.scope, this.getNToUseForStreams());
+		return Util.makeNCFABuilder(N, options, (AnalysisCache) cache, cha, this.scope, this.getNToUseForStreams(),
+				this.getRefinedCallSites(), this.getNToUseForRefinedStreams());
+	}
+
+	/**
+	 * @return The call string table of the context selector of the current call
+	 *         graph builder or null if there is none.
+	 */
+	private CallStringWithReceiversTable getCallStringWithReceiversTable() {
+		if (this.callGraphBuilder instanceof SSAPropagationCallGraphBuilder) {
+			ContextSelector contextSelector = ((SSAPropagationCallGraphBuilder) this.callGraphBuilder)
+					.getContextSelector();
+
+			if (contextSelector instanceof nCFAContextWithReceiversSelector)
+				return ((nCFAContextWithReceiversSelector) contextSelector).getCallStringWithReceiversTable();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Get the projects whose analysis scopes are merged into the scope of the
+	 * project used to create this engine.
+	 *
+	 * @return The merged projects, which are empty unless multiple projects are
+	 *         analyzed together.
+	 */
+	public Collection<IJavaProject> getMergedProjects() {
+		return this.mergedProjects;
+	}
+
+	public int getNToUseForRefinedStreams() {
+		return this.nToUseForRefinedStreams;
 	}
 
 	public int getNToUseForStreams() {
@@ -201,7 +381,101 @@ public class EclipseProjectAnalysisEngine<I extends InstanceKey> extends JDTJava
 		return this.project;
 	}
 
+	public Set<Pair<String, CallSiteReference>> getRefinedCallSites() {
+		return this.refinedCallSites;
+	}
+
+	/**
+	 * Get the projects analyzed by this engine.
+	 *
+	 * @return The project used to create this engine followed by the merged
+	 *         projects.
+	 */
+	public List<IJavaProject> getProjects() {
+		List<IJavaProject> ret = new ArrayList<>(1 + this.mergedProjects.size());
+		ret.add(this.getProject());
+		ret.addAll(this.getMergedProjects());
+		return ret;
+	}
+
+	/**
+	 * Get the cache of {@link TypeInference}s shared by the analyses using this
+	 * engine.
+	 *
+	 * @return The {@link TypeInferenceCache} of this engine.
+	 */
+	public TypeInferenceCache getTypeInferenceCache() {
+		return this.typeInferenceCache;
+	}
+
+	@Override
+	protected ClassLoaderFactory makeClassLoaderFactory(SetOfClasses exclusions) {
+		if (!this.shouldUseSharedPrimordialClassLoader())
+			return super.makeClassLoaderFactory(exclusions);
+
+		String digest = this.computePrimordialDigest();
+
+		return new JDTClassLoaderFactory(exclusions) {
+
+			@Override
+			protected IClassLoader makeNewClassLoader(ClassLoaderReference classLoaderReference,
+					IClassHierarchy cha, IClassLoader parent, AnalysisScope scope) throws IOException {
+				if (classLoaderReference.equals(Primordial))
+					return PrimordialClassLoaderCache.get(digest,
+							() -> EclipseProjectAnalysisEngine.this.makePrimordialClassLoader(exclusions));
+				else
+					return super.makeNewClassLoader(classLoaderReference, cha, parent, scope);
+			}
+		};
+	}
+
+	/**
+	 * Makes a primordial class loader within its own {@link IClassHierarchy}
+	 * consisting solely of the primordial modules of this engine's scope. The
+	 * loader thus doesn't retain the class hierarchy of any project, and the
+	 * primordial classes it loads resolve types through the standalone hierarchy
+	 * regardless of which project they're shared with.
+	 *
+	 * @param exclusions The classes to exclude from the loader.
+	 * @return A new primordial class loader.
+	 */
+	private IClassLoader makePrimordialClassLoader(SetOfClasses exclusions) throws ClassHierarchyException {
+		AnalysisScope primordialScope = AnalysisScope.createJavaAnalysisScope();
+		primordialScope.setExclusions(exclusions);
+
+		for (Module module : this.scope.getModules(Primordial))
+			primordialScope.addToScope(Primordial, module);
+
+		IClassHierarchy primordialClassHierarchy = ClassHierarchyFactory.make(primordialScope,
+				new ClassLoaderFactoryImpl(exclusions));
+		return primordialClassHierarchy.getLoader(Primordial);
+	}
+
 	protected void setNToUseForStreams(int nToUseForStreams) {
 		this.nToUseForStreams = nToUseForStreams;
 	}
+
+	/**
+	 * Analyze the streams created by the given call sites with a deeper context.
+	 * Must be set before the call graph is built.
+	 *
+	 * @param refinedCallSites
+	 *            The call sites, along with the signatures of their enclosing
+	 *            methods, whose streams to analyze with a deeper context.
+	 * @param nToUseForRefinedStreams
+	 *            The N to use for the streams created by the refined call sites.
+	 */
+	public void setRefinedCallSites(Set<Pair<String, CallSiteReference>> refinedCallSites,
+			int nToUseForRefinedStreams) {
+		this.refinedCallSites = refinedCallSites;
+		this.nToUseForRefinedStreams = nToUseForRefinedStreams;
+	}
+
+	public void setUseSharedPrimordialClassLoader(boolean useSharedPrimordialClassLoader) {
+		this.useSharedPrimordialClassLoader = useSharedPrimordialClassLoader;
+	}
+
+	public boolean shouldUseSharedPrimordialClassLoader() {
+		return this.useSharedPrimordialClassLoader;
+	}
 }
@@ -0,0 +1,73 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NAME;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.ibm.wala.classLoader.IClassLoader;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+
+/**
+ * A cache of primordial (JDK) {@link IClassLoader}s keyed by a digest of their
+ * modules and exclusions. Since the primordial loader is the root of the loader
+ * hierarchy, the {@link IClassHierarchy}s of different projects using the same
+ * JDK intentionally stack their application loaders on the same immutable
+ * primordial layer, so that the JDK is only loaded once per VM. Each shared
+ * loader is built within its own standalone {@link IClassHierarchy} consisting
+ * solely of the primordial modules, so that it neither retains nor resolves
+ * types through the hierarchy of any project; primordial classes can't refer to
+ * application classes anyway. Loaders are only softly reachable from the cache
+ * and may be reclaimed when memory runs low.
+ */
+public final class PrimordialClassLoaderCache {
+
+	private static final Map<String, SoftReference<IClassLoader>> DIGEST_TO_LOADER = new ConcurrentHashMap<>();
+
+	private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+	/**
+	 * Removes all loaders from the cache.
+	 */
+	public static void clear() {
+		DIGEST_TO_LOADER.clear();
+	}
+
+	/**
+	 * Returns the primordial loader with the given digest, creating it if
+	 * necessary. Callers asking for the same digest wait for the loader to be
+	 * created rather than loading the JDK again.
+	 *
+	 * @param digest  The digest of the loader's modules and exclusions.
+	 * @param factory Creates the loader if it isn't cached.
+	 * @return The shared primordial loader.
+	 */
+	static synchronized IClassLoader get(String digest, Callable<IClassLoader> factory) throws IOException {
+		SoftReference<IClassLoader> reference = DIGEST_TO_LOADER.get(digest);
+		IClassLoader ret = reference == null ? null : reference.get();
+
+		if (ret != null) {
+			LOGGER.info(() -> "Reusing primordial class loader with digest: " + digest + ".");
+			return ret;
+		}
+
+		try {
+			ret = factory.call();
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+
+		DIGEST_TO_LOADER.put(digest, new SoftReference<>(ret));
+		LOGGER.info(() -> "Created primordial class loader with digest: " + digest + ".");
+		return ret;
+	}
+
+	private PrimordialClassLoaderCache() {
+	}
+}
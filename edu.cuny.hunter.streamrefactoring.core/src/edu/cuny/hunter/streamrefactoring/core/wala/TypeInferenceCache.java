@@ -0,0 +1,88 @@
+package edu.cuny.hunter.streamrefactoring.core.wala;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.ibm.wala.analysis.typeInference.TypeInference;
+import com.ibm.wala.ssa.IR;
+
+/**
+ * A bounded cache of {@link TypeInference} results keyed by {@link IR}. The
+ * cache is safe to use from multiple threads. Results are only softly reachable
+ * and may be reclaimed when memory runs low.
+ */
+public class TypeInferenceCache {
+
+	/**
+	 * The default maximum number of {@link TypeInference} results to retain.
+	 */
+	private static final long MAXIMUM_SIZE_DEFAULT = 10_000;
+
+	/**
+	 * Keys are compared by identity since {@link IR} doesn't override
+	 * {@link Object#equals(Object)}.
+	 */
+	private final Cache<IR, TypeInference> cache;
+
+	public TypeInferenceCache() {
+		this(MAXIMUM_SIZE_DEFAULT);
+	}
+
+	public TypeInferenceCache(long maximumSize) {
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).weakKeys().softValues().recordStats()
+				.build();
+	}
+
+	/**
+	 * Removes all results from the cache. The statistics are retained.
+	 */
+	public void clear() {
+		this.cache.invalidateAll();
+	}
+
+	/**
+	 * Returns the {@link TypeInference} of the given {@link IR}, computing it if
+	 * necessary. Primitive types are not inferred.
+	 *
+	 * @param ir The {@link IR} whose types to infer.
+	 * @return The {@link TypeInference} of the given {@link IR}.
+	 */
+	public TypeInference get(IR ir) {
+		TypeInference ret = this.cache.getIfPresent(ir);
+
+		if (ret == null) {
+			// computing it twice in a race is harmless.
+			ret = TypeInference.make(ir, false);
+			this.cache.put(ir, ret);
+		}
+
+		return ret;
+	}
+
+	public long getHitCount() {
+		return this.getStats().hitCount();
+	}
+
+	/**
+	 * @return The ratio of lookups that were served from the cache or 1.0 if
+	 *         there were none.
+	 */
+	public double getHitRate() {
+		return this.getStats().hitRate();
+	}
+
+	public long getMissCount() {
+		return this.getStats().missCount();
+	}
+
+	private CacheStats getStats() {
+		return this.cache.stats();
+	}
+
+	@Override
+	public String toString() {
+		CacheStats stats = this.getStats();
+		return "TypeInferenceCache [size=" + this.cache.size() + ", hits=" + stats.hitCount() + ", misses="
+				+ stats.missCount() + ", hitRate=" + stats.hitRate() + "]";
+	}
+}
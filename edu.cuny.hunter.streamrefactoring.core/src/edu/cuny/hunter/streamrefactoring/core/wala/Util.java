@@ -14,8 +14,11 @@ import static com.ibm.wala.types.ClassLoaderReference.Primordial;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 import java.util.stream.BaseStream;
 
+import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.ide.util.EclipseProjectPath;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
@@ -29,6 +32,7 @@ import com.ibm.wala.ipa.callgraph.propagation.cfa.ZeroXInstanceKeys;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.types.ClassLoaderReference;
 import com.ibm.wala.util.collections.HashSetFactory;
+import com.ibm.wala.util.collections.Pair;
 
 public final class Util {
 
@@ -80,6 +84,25 @@ public final class Util {
 	 */
 	public static SSAPropagationCallGraphBuilder makeNCFABuilder(int n, AnalysisOptions options, AnalysisCache cache,
 			IClassHierarchy cha, AnalysisScope scope, int nToUseForStreams) {
+		return makeNCFABuilder(n, options, cache, cha, scope, nToUseForStreams, Collections.emptySet(), 0);
+	}
+
+	/**
+	 * make a {@link CallGraphBuilder} that uses call-string context sensitivity,
+	 * with call-string length limited to n, and a context-sensitive
+	 * allocation-site-based heap abstraction.
+	 *
+	 * @param nToUseForStreams
+	 *            The N to use specifically for instances of {@link BaseStream}.
+	 * @param refinedCallSites
+	 *            The call sites, along with the signatures of their enclosing
+	 *            methods, whose streams should be analyzed with a deeper context.
+	 * @param nToUseForRefinedStreams
+	 *            The N to use for the streams created by the refined call sites.
+	 */
+	public static SSAPropagationCallGraphBuilder makeNCFABuilder(int n, AnalysisOptions options, AnalysisCache cache,
+			IClassHierarchy cha, AnalysisScope scope, int nToUseForStreams,
+			Set<Pair<String, CallSiteReference>> refinedCallSites, int nToUseForRefinedStreams) {
 		if (options == null)
 			throw new IllegalArgumentException("options is null");
 		addDefaultSelectors(options, cha);
@@ -87,7 +110,7 @@ public final class Util {
 		ContextSelector appSelector = null;
 		SSAContextInterpreter appInterpreter = null;
 		SSAPropagationCallGraphBuilder result = new nCFABuilderWithActualParametersInContext(n, cha, options, cache,
-				appSelector, appInterpreter, nToUseForStreams);
+				appSelector, appInterpreter, nToUseForStreams, refinedCallSites, nToUseForRefinedStreams);
 		// nCFABuilder uses type-based heap abstraction by default, but we want
 		// allocation sites
 		result.setInstanceKeys(new ZeroXInstanceKeys(options, cha, result.getContextInterpreter(),
@@ -99,8 +122,21 @@ public final class Util {
 	 * create an analysis scope as the union of a bunch of EclipseProjectPath
 	 */
 	public static AnalysisScope mergeProjectPaths(Collection<EclipseProjectPath> projectPaths) throws IOException {
-		AnalysisScope scope = AnalysisScope.createJavaAnalysisScope();
+		return mergeProjectPaths(projectPaths, AnalysisScope.createJavaAnalysisScope());
+	}
 
+	/**
+	 * Add the union of a bunch of EclipseProjectPath to the given analysis scope.
+	 *
+	 * @param projectPaths
+	 *            Eclipse project paths to add to the analysis scope
+	 * @param scope
+	 *            the {@link AnalysisScope} under construction. This will be
+	 *            mutated.
+	 * @return the given {@link AnalysisScope}
+	 */
+	public static AnalysisScope mergeProjectPaths(Collection<EclipseProjectPath> projectPaths, AnalysisScope scope)
+			throws IOException {
 		Collection<Module> seen = HashSetFactory.make();
 		// to avoid duplicates, we first add all application modules, then
 		// extension
@@ -1,6 +1,10 @@
 package edu.cuny.hunter.streamrefactoring.core.wala;
 
+import java.util.Collections;
+import java.util.Set;
+
 import com.ibm.wala.analysis.reflection.ReflectionContextInterpreter;
+import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.ipa.callgraph.AnalysisCache;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.ContextSelector;
@@ -13,6 +17,7 @@ import com.ibm.wala.ipa.callgraph.propagation.cfa.DefaultPointerKeyFactory;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.DefaultSSAInterpreter;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.DelegatingSSAContextInterpreter;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.util.collections.Pair;
 
 public class nCFABuilderWithActualParametersInContext extends SSAPropagationCallGraphBuilder {
 
@@ -26,6 +31,14 @@ public class nCFABuilderWithActualParametersInContext extends SSAPropagationCall
 	public nCFABuilderWithActualParametersInContext(int n, IClassHierarchy cha, AnalysisOptions options,
 			AnalysisCache cache, ContextSelector appContextSelector, SSAContextInterpreter appContextInterpreter,
 			int nToUseForStreams) {
+		this(n, cha, options, cache, appContextSelector, appContextInterpreter, nToUseForStreams,
+				Collections.emptySet(), 0);
+	}
+
+	public nCFABuilderWithActualParametersInContext(int n, IClassHierarchy cha, AnalysisOptions options,
+			AnalysisCache cache, ContextSelector appContextSelector, SSAContextInterpreter appContextInterpreter,
+			int nToUseForStreams, Set<Pair<String, CallSiteReference>> refinedCallSites,
+			int nToUseForRefinedStreams) {
 		super(cha, options, cache, new DefaultPointerKeyFactory());
 		if (options == null)
 			throw new IllegalArgumentException("options is null");
@@ -35,7 +48,8 @@ public class nCFABuilderWithActualParametersInContext extends SSAPropagationCall
 		ContextSelector def = new DefaultContextSelector(options, cha);
 		ContextSelector contextSelector = appContextSelector == null ? def
 				: new DelegatingContextSelector(appContextSelector, def);
-		contextSelector = new nCFAContextWithReceiversSelector(n, contextSelector, nToUseForStreams);
+		contextSelector = new nCFAContextWithReceiversSelector(n, contextSelector, nToUseForStreams,
+				refinedCallSites, nToUseForRefinedStreams);
 		this.setContextSelector(contextSelector);
 
 		SSAContextInterpreter defI = new DefaultSSAInterpreter(options, cache);
@@ -2,8 +2,8 @@ package edu.cuny.hunter.streamrefactoring.core.wala;
 
 import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NAME;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.stream.BaseStream;
 
@@ -18,45 +18,13 @@ import com.ibm.wala.ipa.callgraph.propagation.cfa.CallString;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.CallStringContext;
 import com.ibm.wala.ipa.callgraph.propagation.cfa.nCFAContextSelector;
 import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.collections.Pair;
+import com.ibm.wala.util.intset.MutableMapping;
 
 import edu.cuny.hunter.streamrefactoring.core.analysis.Util;
 
 public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 
-	protected class CallStringTriple {
-
-		CGNode node;
-
-		CallSiteReference site;
-		IMethod target;
-
-		public CallStringTriple(CGNode node, CallSiteReference site, IMethod target) {
-			this.node = node;
-			this.site = site;
-			this.target = target;
-		}
-
-		@Override
-		public boolean equals(Object obj) {
-			if (obj instanceof CallStringTriple) {
-				CallStringTriple rhs = (CallStringTriple) obj;
-				return this.node.equals(rhs.node) && this.site.equals(rhs.site) && this.target.equals(rhs.target);
-			} else
-				return false;
-		}
-
-		@Override
-		public int hashCode() {
-			StringBuilder builder = new StringBuilder();
-
-			builder.append(this.node.hashCode());
-			builder.append(this.site.hashCode());
-			builder.append(this.target.hashCode());
-
-			return builder.toString().hashCode();
-		}
-	}
-
 	/**
 	 * The default N to use if the instance implements BaseStream.
 	 */
@@ -64,13 +32,35 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 
 	private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
 
-	protected Map<CallStringTriple, CallStringWithReceivers> callStringWithReceiversMap = new HashMap<>();
+	/**
+	 * Interns the call strings of calls.
+	 */
+	protected CallStringWithReceiversTable callStringWithReceiversTable = new CallStringWithReceiversTable(
+			this::computeCallString);
+
+	/**
+	 * Numbers the receivers of the call strings so that each call string only
+	 * stores the indices of its receivers.
+	 */
+	private final MutableMapping<InstanceKey> receiverMapping = MutableMapping.make();
 
 	/**
 	 * The N to use if the instance implements {@link BaseStream}.
 	 */
 	private int contextLengthForStreams = CONTEXT_LENGTH_FOR_STREAMS_DEFAULT;
 
+	/**
+	 * The N to use if the instance implements {@link BaseStream} and the call is
+	 * made from, or on behalf of, a refined call site.
+	 */
+	private int contextLengthForRefinedStreams;
+
+	/**
+	 * The signatures of the methods enclosing call sites creating streams that
+	 * should be analyzed with a deeper context, along with the call sites.
+	 */
+	private Set<Pair<String, CallSiteReference>> refinedCallSites = Collections.emptySet();
+
 	/**
 	 * Create a new {@link nCFAContextWithReceiversSelector}.
 	 *
@@ -99,6 +89,30 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 		this.contextLengthForStreams = nToUseForStreams;
 	}
 
+	/**
+	 * Create a new {@link nCFAContextWithReceiversSelector}.
+	 *
+	 * @param n
+	 *            The N to use generally.
+	 * @param base
+	 *            The base {@link ContextSelector}.
+	 * @param nToUseForStreams
+	 *            The particular N to use if the instance is ok {@link BaseStream}.
+	 * @param refinedCallSites
+	 *            The call sites, along with the signatures of their enclosing
+	 *            methods, whose streams should be analyzed with a deeper context.
+	 * @param nToUseForRefinedStreams
+	 *            The N to use for the streams created by the refined call sites.
+	 */
+	public nCFAContextWithReceiversSelector(int n, ContextSelector base, int nToUseForStreams,
+			Set<Pair<String, CallSiteReference>> refinedCallSites, int nToUseForRefinedStreams) {
+		this(n, base, nToUseForStreams);
+		LOGGER.fine(() -> "Using N = " + nToUseForRefinedStreams + " for " + refinedCallSites.size()
+				+ " refined call sites.");
+		this.refinedCallSites = refinedCallSites;
+		this.contextLengthForRefinedStreams = nToUseForRefinedStreams;
+	}
+
 	@Override
 	public Context getCalleeTarget(CGNode caller, CallSiteReference site, IMethod callee,
 			InstanceKey[] actualParameters) {
@@ -112,46 +126,51 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 			return new CallStringContextPair(cs, baseContext);
 	}
 
+	/**
+	 * Computes the call string of the given call.
+	 *
+	 * @param caller
+	 *            The calling {@link CGNode}.
+	 * @param site
+	 *            The call site in the caller.
+	 * @param target
+	 *            The target of the call.
+	 * @return The call string of the call or null if the context length of the
+	 *         call is 0.
+	 */
+	protected CallStringWithReceivers computeCallString(CGNode caller, CallSiteReference site, IMethod target) {
+		int length = this.getLength(caller, site, target);
+
+		if (length > 0) {
+			CallString callString = (CallString) caller.getContext().get(CALL_STRING);
+
+			if (callString != null)
+				return new CallStringWithReceivers(site, caller.getMethod(), length, callString,
+						this.receiverMapping);
+			else
+				return new CallStringWithReceivers(site, caller.getMethod(), this.receiverMapping);
+		} else
+			return null;
+	}
+
 	protected CallStringWithReceivers getCallString(CGNode caller, CallSiteReference site, IMethod target,
 			InstanceKey[] actualParameters) {
-		CallStringTriple triple = new CallStringTriple(caller, site, target);
-
-		if (this.getCallStringWithReceiversMap().containsKey(triple)) {
-			// found.
-			CallStringWithReceivers ret = this.getCallStringWithReceiversMap().get(triple);
-
-			// add the receiver.
-			if (actualParameters != null && actualParameters.length > 0)
-				ret.addPossibleReceiver(actualParameters[0]);
-
-			return ret;
-		} else {
-			// not found. Compute it.
-			CallStringWithReceivers ret = null;
-			int length = this.getLength(caller, site, target);
-
-			if (length > 0) {
-				CallString callString = (CallString) caller.getContext().get(CALL_STRING);
-
-				if (callString != null)
-					ret = new CallStringWithReceivers(site, caller.getMethod(), length, callString);
-				else
-					ret = new CallStringWithReceivers(site, caller.getMethod());
-			} else
-				ret = null;
-
-			// if we have a receiver.
-			if (ret != null && actualParameters != null && actualParameters.length > 0)
-				// add it.
-				ret.addPossibleReceiver(actualParameters[0]);
-
-			this.getCallStringWithReceiversMap().put(triple, ret);
-			return ret;
-		}
+		CallStringWithReceivers ret = this.getCallStringWithReceiversTable().get(caller, site, target);
+
+		// if we have a receiver.
+		if (ret != null && actualParameters != null && actualParameters.length > 0)
+			// add it.
+			ret.addPossibleReceiver(actualParameters[0]);
+
+		return ret;
+	}
+
+	public CallStringWithReceiversTable getCallStringWithReceiversTable() {
+		return this.callStringWithReceiversTable;
 	}
 
-	protected Map<CallStringTriple, CallStringWithReceivers> getCallStringWithReceiversMap() {
-		return this.callStringWithReceiversMap;
+	public int getContextLengthForRefinedStreams() {
+		return this.contextLengthForRefinedStreams;
 	}
 
 	public int getContextLengthForStreams() {
@@ -162,21 +181,58 @@ public class nCFAContextWithReceiversSelector extends nCFAContextSelector {
 	 * {@inheritDoc}
 	 *
 	 * @return CONTEXT_LENGTH_FOR_STREAMS if the target's return type implements
-	 *         {@link BaseStream}, otherwise, return the original value.
+	 *         {@link BaseStream}, or the length for refined streams if the call
+	 *         is also made on behalf of a refined call site, otherwise, return the
+	 *         original value.
 	 */
 	@Override
 	protected int getLength(CGNode caller, CallSiteReference site, IMethod target) {
 		TypeReference typeToCheck = Util.getEvaluationType(target);
-		boolean implementsBaseStream = Util.implementsBaseStream(typeToCheck, target.getClassHierarchy());
+		boolean implementsBaseStream = Util.implementsBaseStream(typeToCheck, caller.getClassHierarchy());
 
 		if (implementsBaseStream) {
-			int lengthForStreams = this.getContextLengthForStreams();
+			int lengthForStreams = this.isRefined(caller, site) ? this.getContextLengthForRefinedStreams()
+					: this.getContextLengthForStreams();
 			LOGGER.finer(() -> "Using N = " + lengthForStreams + ".");
 			return lengthForStreams;
 		} else
 			return super.getLength(caller, site, target);
 	}
 
+	/**
+	 * Returns true iff the given call site or any call site in the call string of
+	 * the given caller is refined, i.e., the call is made on behalf of a refined
+	 * call site. Since the call strings of the callees of refined call sites are
+	 * longer, a refined call site remains in the call strings down to the depth
+	 * of the refined context length.
+	 *
+	 * @param caller
+	 *            The calling {@link CGNode}.
+	 * @param site
+	 *            The call site in the caller.
+	 * @return True iff the call should use the refined context length.
+	 */
+	private boolean isRefined(CGNode caller, CallSiteReference site) {
+		if (this.refinedCallSites.isEmpty())
+			return false;
+
+		if (this.refinedCallSites.contains(Pair.make(caller.getMethod().getSignature(), site)))
+			return true;
+
+		CallString callString = (CallString) caller.getContext().get(CALL_STRING);
+
+		if (callString != null) {
+			CallSiteReference[] callSiteRefs = callString.getCallSiteRefs();
+			IMethod[] methods = callString.getMethods();
+
+			for (int i = 0; i < callSiteRefs.length; i++)
+				if (this.refinedCallSites.contains(Pair.make(methods[i].getSignature(), callSiteRefs[i])))
+					return true;
+		}
+
+		return false;
+	}
+
 	protected void setContextLengthForStreams(int contextLengthForStreams) {
 		this.contextLengthForStreams = contextLengthForStreams;
 	}
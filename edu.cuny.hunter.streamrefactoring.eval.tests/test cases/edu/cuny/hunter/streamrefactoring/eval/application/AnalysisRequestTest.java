@@ -0,0 +1,129 @@
+package edu.cuny.hunter.streamrefactoring.eval.application;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the arguments parsed by {@link AnalysisRequest}.
+ */
+public class AnalysisRequestTest extends TestCase {
+
+	private static void assertInvalid(String... args) {
+		try {
+			AnalysisRequest.parse(args);
+			fail("Arguments should be invalid: " + String.join(" ", args) + ".");
+		} catch (IllegalArgumentException e) {
+			assertNotNull(e.getMessage());
+		}
+	}
+
+	private static String paths(String... paths) {
+		return String.join(File.pathSeparator, paths);
+	}
+
+	public void testAllArguments() {
+		AnalysisRequest request = AnalysisRequest.parse(new String[] { "-source", paths("a", "b"), "-classpath",
+				paths("c.jar", "d.jar"), "-output", "out", "-name", "project", "-entryPoints", "entry_points.txt",
+				"-n", "3", "-threads", "4", "-noImplicitEntrypoints", "-findImplicitTestEntrypoints",
+				"-findImplicitBenchmarkEntrypoints", "-findImplicitJavaFXEntrypoints", "-useBatchParsing" });
+
+		assertEquals(2, request.getSourceDirectories().length);
+		assertEquals("a", request.getSourceDirectories()[0]);
+		assertEquals("b", request.getSourceDirectories()[1]);
+		assertEquals(2, request.getClasspath().length);
+		assertEquals("c.jar", request.getClasspath()[0]);
+		assertEquals("d.jar", request.getClasspath()[1]);
+		assertEquals(new File("out"), request.getOutputDirectory());
+		assertEquals("project", request.getProjectName());
+		assertEquals(new File("entry_points.txt"), request.getEntryPointsFile());
+		assertEquals(Integer.valueOf(3), request.getNForStreams());
+		assertEquals(Integer.valueOf(4), request.getNumberOfThreads());
+		assertFalse(request.shouldFindImplicitEntrypoints());
+		assertTrue(request.shouldFindImplicitTestEntrypoints());
+		assertTrue(request.shouldFindImplicitBenchmarkEntrypoints());
+		assertTrue(request.shouldFindImplicitJavaFXEntrypoints());
+		assertTrue(request.shouldUseBatchParsing());
+	}
+
+	public void testDefaults() {
+		AnalysisRequest request = AnalysisRequest.parse(new String[] { "-source", "src" });
+
+		assertEquals(0, request.getClasspath().length);
+		assertEquals(new File("."), request.getOutputDirectory());
+		assertEquals("src", request.getProjectName());
+		assertNull(request.getEntryPointsFile());
+		assertNull(request.getNForStreams());
+		assertNull(request.getNumberOfThreads());
+		assertTrue(request.shouldFindImplicitEntrypoints());
+		assertFalse(request.shouldFindImplicitTestEntrypoints());
+		assertFalse(request.shouldFindImplicitBenchmarkEntrypoints());
+		assertFalse(request.shouldFindImplicitJavaFXEntrypoints());
+		assertFalse(request.shouldUseBatchParsing());
+	}
+
+	public void testInvalidArguments() {
+		assertInvalid();
+		assertInvalid("-source");
+		assertInvalid("-source", File.pathSeparator);
+		assertInvalid("-source", "src", "-unknown");
+		assertInvalid("-source", "src", "-n");
+		assertInvalid("-source", "src", "-n", "many");
+	}
+
+	/**
+	 * Projects are named after their first source directory by default.
+	 */
+	public void testProjectName() {
+		String directory = new File("project", "src").getPath();
+		assertEquals("src", AnalysisRequest.parse(new String[] { "-source", paths(directory, "other") })
+				.getProjectName());
+	}
+
+	/**
+	 * Only projects with the same sources and classpath have the same setup.
+	 */
+	public void testProjectSetup() {
+		String setup = AnalysisRequest.parse(new String[] { "-source", "src", "-classpath", "a.jar" })
+				.getProjectSetup();
+
+		assertEquals(setup, AnalysisRequest
+				.parse(new String[] { "-source", "src", "-classpath", "a.jar", "-output", "out", "-n", "3" })
+				.getProjectSetup());
+		assertFalse(setup.equals(AnalysisRequest.parse(new String[] { "-source", "src" }).getProjectSetup()));
+		assertFalse(setup.equals(
+				AnalysisRequest.parse(new String[] { "-source", "src2", "-classpath", "a.jar" }).getProjectSetup()));
+	}
+
+	/**
+	 * Arguments on a line are separated by whitespace unless it's quoted.
+	 */
+	public void testQuotes() {
+		AnalysisRequest request = AnalysisRequest.parse(" -source\t\"my sources\"  -name a\" \"b -output \"\" ");
+
+		assertEquals(1, request.getSourceDirectories().length);
+		assertEquals("my sources", request.getSourceDirectories()[0]);
+		assertEquals("a b", request.getProjectName());
+		assertEquals(new File(""), request.getOutputDirectory());
+
+		try {
+			AnalysisRequest.parse("-source \"my sources");
+			fail("An unterminated quote should be invalid.");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().startsWith("Unterminated quote"));
+		}
+	}
+
+	/**
+	 * Empty entries between path separators are ignored.
+	 */
+	public void testSeparators() {
+		String[] sourceDirectories = AnalysisRequest
+				.parse(new String[] { "-source", File.pathSeparator + paths("a", "", "b") + File.pathSeparator })
+				.getSourceDirectories();
+
+		assertEquals(2, sourceDirectories.length);
+		assertEquals("a", sourceDirectories[0]);
+		assertEquals("b", sourceDirectories[1]);
+	}
+}
@@ -0,0 +1,250 @@
+package edu.cuny.hunter.streamrefactoring.eval.application;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.ILogListener;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.QualifiedName;
+
+import edu.cuny.hunter.streamrefactoring.core.refactorings.OptimizeStreamsRefactoringProcessor;
+import junit.framework.TestCase;
+
+/**
+ * Checks the patches written and the requests served by
+ * {@link AnalyzeStreamsApplication}.
+ */
+public class AnalyzeStreamsApplicationTest extends TestCase {
+
+	private static final String EXISTING_PROJECT_NAME = "existing";
+
+	/**
+	 * Marks a project to find out whether it's replaced.
+	 */
+	private static final QualifiedName MARKER_PROPERTY = new QualifiedName(
+			"edu.cuny.hunter.streamrefactoring.eval.tests", "marker");
+
+	private static final String PATH = "src/p/A.java";
+
+	private static final String PROJECT_NAME = "served";
+
+	/**
+	 * A source file with a stream reachable from an implicit entry point.
+	 */
+	private static final String SOURCE = "package p;\n\nimport java.util.HashSet;\n\npublic class A {\n"
+			+ "\tpublic static void main(String[] args) {\n\t\tnew HashSet<Object>().stream().count();\n\t}\n}\n";
+
+	/**
+	 * @return The unified diff between the given contents.
+	 */
+	private static String diff(String original, String modified) {
+		StringWriter ret = new StringWriter();
+
+		try (PrintWriter patch = new PrintWriter(ret)) {
+			AnalyzeStreamsApplication.appendDiff(patch, PATH, original, modified);
+		}
+
+		return ret.toString();
+	}
+
+	/**
+	 * @return The given lines, each terminated by the platform's line separator as
+	 *         written by {@link PrintWriter#println(String)}.
+	 */
+	private static String lines(String... lines) {
+		return Stream.of(lines).map(l -> l + System.lineSeparator()).collect(Collectors.joining());
+	}
+
+	/**
+	 * @return The numbers from 1 to the given number, each on its own line.
+	 */
+	private static String numbers(int count) {
+		return IntStream.rangeClosed(1, count).mapToObj(i -> i + "\n").collect(Collectors.joining());
+	}
+
+	private static String quote(Path path) {
+		return "\"" + path + "\"";
+	}
+
+	private AnalyzeStreamsApplication application = new AnalyzeStreamsApplication();
+
+	/**
+	 * Contains the sources and output of the requests. Its name contains a space
+	 * so that paths must be quoted.
+	 */
+	private Path directory;
+
+	/**
+	 * Serves the given requests.
+	 *
+	 * @param serving True iff the application should still be serving after the
+	 *                given requests.
+	 * @return The responses to the given requests.
+	 */
+	private List<String> serve(boolean serving, String... requests) throws IOException {
+		StringWriter responses = new StringWriter();
+
+		try (BufferedReader reader = new BufferedReader(new StringReader(String.join("\n", requests)));
+				PrintWriter writer = new PrintWriter(responses)) {
+			assertEquals(serving, this.application.serve(reader, writer));
+		}
+
+		return new BufferedReader(new StringReader(responses.toString())).lines().collect(Collectors.toList());
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		this.directory = Files.createTempDirectory("stream analysis");
+
+		Path file = this.directory.resolve("my sources").resolve("p").resolve("A.java");
+		Files.createDirectories(file.getParent());
+		Files.write(file, SOURCE.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (String name : new String[] { PROJECT_NAME, EXISTING_PROJECT_NAME }) {
+			IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(name);
+
+			// deleting links never deletes their targets.
+			if (project.exists())
+				project.delete(true, true, null);
+		}
+
+		OptimizeStreamsRefactoringProcessor.clearAnalysisCaches();
+
+		try (Stream<Path> paths = Files.walk(this.directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+
+		super.tearDown();
+	}
+
+	/**
+	 * The context of a change at the beginning of a file only follows it.
+	 */
+	public void testChangeAtStart() {
+		assertEquals(lines("--- a/" + PATH, "+++ b/" + PATH, "@@ -1,4 +1,4 @@", "-1", "+one", " 2", " 3", " 4"),
+				diff(numbers(10), numbers(10).replaceFirst("1\n", "one\n")));
+	}
+
+	/**
+	 * A change in the middle of a file is surrounded by three lines of context.
+	 */
+	public void testChangeWithContext() {
+		assertEquals(lines("--- a/" + PATH, "+++ b/" + PATH, "@@ -2,7 +2,7 @@", " 2", " 3", " 4", "-5", "+five",
+				" 6", " 7", " 8"), diff(numbers(10), numbers(10).replace("5\n", "five\n")));
+	}
+
+	/**
+	 * Lines appended to the end of a file are only preceded by context.
+	 */
+	public void testInsertionAtEnd() {
+		assertEquals(lines("--- a/" + PATH, "+++ b/" + PATH, "@@ -3,3 +3,4 @@", " 3", " 4", " 5", "+6"),
+				diff(numbers(5), numbers(6)));
+	}
+
+	/**
+	 * Line terminators aren't part of the lines, and files differing only in a
+	 * trailing one aren't changed.
+	 */
+	public void testLineTerminators() {
+		assertEquals(lines("--- a/" + PATH, "+++ b/" + PATH, "@@ -1,2 +1,2 @@", " a", "-b", "+c"),
+				diff("a\r\nb\r\n", "a\nc\n"));
+		assertEquals("", diff("a\nb", "a\nb\n"));
+	}
+
+	/**
+	 * Changes far apart are written as a single hunk including the unchanged lines
+	 * between them.
+	 */
+	public void testSeparateChanges() {
+		String modified = numbers(10).replace("2\n", "two\n").replace("8\n", "eight\n");
+		assertEquals(lines("--- a/" + PATH, "+++ b/" + PATH, "@@ -1,10 +1,10 @@", " 1", "-2", "-3", "-4", "-5",
+				"-6", "-7", "-8", "+two", "+3", "+4", "+5", "+6", "+7", "+eight", " 9", " 10"),
+				diff(numbers(10), modified));
+	}
+
+	/**
+	 * Commands are answered, invalid requests are reported, and nothing is read
+	 * after <code>quit</code>.
+	 */
+	public void testServeCommands() throws IOException {
+		List<String> responses = this.serve(false, "", " clear ", "-unknown", "-source", "-source \"src", "quit",
+				"clear");
+
+		assertEquals(4, responses.size());
+		assertEquals("OK", responses.get(0));
+		assertTrue(responses.get(1), responses.get(1).startsWith("ERROR Unknown argument: -unknown."));
+		assertTrue(responses.get(2), responses.get(2).startsWith("ERROR Missing value of argument: -source."));
+		assertTrue(responses.get(3), responses.get(3).startsWith("ERROR Unterminated quote in: -source \"src."));
+	}
+
+	public void testServeEndOfInput() throws IOException {
+		assertEquals(Collections.singletonList("OK"), this.serve(true, "clear"));
+	}
+
+	/**
+	 * Projects that weren't created by the application are left alone.
+	 */
+	public void testServeExistingProject() throws IOException, CoreException {
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(EXISTING_PROJECT_NAME);
+		project.create(null);
+		project.open(null);
+
+		assertEquals(Collections.singletonList("EXIT 1"), this.serve(true,
+				"-source " + quote(this.directory.resolve("my sources")) + " -name " + EXISTING_PROJECT_NAME));
+		assertTrue(project.isOpen());
+	}
+
+	/**
+	 * Repeating a request reuses both the project and the analysis of its
+	 * unchanged sources.
+	 */
+	public void testServeReuse() throws IOException, CoreException {
+		Path output = this.directory.resolve("my output");
+		String request = "-source " + quote(this.directory.resolve("my sources")) + " -output " + quote(output)
+				+ " -name " + PROJECT_NAME;
+
+		assertEquals(Collections.singletonList("EXIT 0"), this.serve(true, request));
+		assertTrue(Files.exists(output.resolve("streams.csv")));
+
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(PROJECT_NAME);
+		project.setSessionProperty(MARKER_PROPERTY, Boolean.TRUE);
+
+		List<String> messages = new CopyOnWriteArrayList<>();
+		ILogListener listener = (status, plugin) -> messages.add(status.getMessage());
+		Platform.addLogListener(listener);
+
+		try {
+			assertEquals(Collections.singletonList("EXIT 0"), this.serve(true, request));
+		} finally {
+			Platform.removeLogListener(listener);
+		}
+
+		assertEquals("The project should be reused.", Boolean.TRUE, project.getSessionProperty(MARKER_PROPERTY));
+		assertTrue("The analysis should be reused: " + messages + ".",
+				messages.contains("Reusing analysis of unchanged project: " + PROJECT_NAME + "."));
+	}
+
+	public void testUnchanged() {
+		assertEquals("", diff(numbers(10), numbers(10)));
+	}
+}
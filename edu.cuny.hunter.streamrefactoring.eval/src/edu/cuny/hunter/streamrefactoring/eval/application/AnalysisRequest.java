@@ -0,0 +1,225 @@
+package edu.cuny.hunter.streamrefactoring.eval.application;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The options of a single analysis run by {@link AnalyzeStreamsApplication},
+ * parsed from command-line style arguments.
+ */
+final class AnalysisRequest {
+
+	private static final char QUOTE = '"';
+
+	static final String USAGE = "-source <dirs> [-classpath <entries>] [-output <dir>] [-name <project>] "
+			+ "[-entryPoints <file>] [-n <N>] [-threads <count>] [-noImplicitEntrypoints] "
+			+ "[-findImplicitTestEntrypoints] [-findImplicitBenchmarkEntrypoints] "
+			+ "[-findImplicitJavaFXEntrypoints] [-useBatchParsing]";
+
+	/**
+	 * Parses the arguments on the given line, which are separated by whitespace.
+	 * Arguments, or parts of them, enclosed in double quotes may contain
+	 * whitespace, e.g., <code>-source "my sources"</code>. Quotes can't be
+	 * escaped.
+	 *
+	 * @param line The line whose arguments to parse.
+	 * @return The parsed {@link AnalysisRequest}.
+	 * @throws IllegalArgumentException If the arguments are invalid or a quote
+	 *                                  isn't closed.
+	 */
+	static AnalysisRequest parse(String line) {
+		return parse(tokenize(line));
+	}
+
+	/**
+	 * Parses the given arguments.
+	 *
+	 * @param args The arguments to parse.
+	 * @return The parsed {@link AnalysisRequest}.
+	 * @throws IllegalArgumentException If the arguments are invalid.
+	 */
+	static AnalysisRequest parse(String[] args) {
+		AnalysisRequest ret = new AnalysisRequest();
+
+		try {
+			for (int i = 0; i < args.length; i++)
+				switch (args[i]) {
+				case "-source":
+					ret.sourceDirectories = split(args[++i]);
+					break;
+				case "-classpath":
+					ret.classpath = split(args[++i]);
+					break;
+				case "-output":
+					ret.outputDirectory = new File(args[++i]);
+					break;
+				case "-name":
+					ret.projectName = args[++i];
+					break;
+				case "-entryPoints":
+					ret.entryPointsFile = new File(args[++i]);
+					break;
+				case "-n":
+					ret.nForStreams = Integer.valueOf(args[++i]);
+					break;
+				case "-threads":
+					ret.numberOfThreads = Integer.valueOf(args[++i]);
+					break;
+				case "-noImplicitEntrypoints":
+					ret.findImplicitEntrypoints = false;
+					break;
+				case "-findImplicitTestEntrypoints":
+					ret.findImplicitTestEntrypoints = true;
+					break;
+				case "-findImplicitBenchmarkEntrypoints":
+					ret.findImplicitBenchmarkEntrypoints = true;
+					break;
+				case "-findImplicitJavaFXEntrypoints":
+					ret.findImplicitJavaFXEntrypoints = true;
+					break;
+				case "-useBatchParsing":
+					ret.useBatchParsing = true;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown argument: " + args[i]);
+				}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Missing value of argument: " + args[args.length - 1], e);
+		}
+
+		if (ret.sourceDirectories.length == 0)
+			throw new IllegalArgumentException("No source directories.");
+
+		if (ret.projectName == null)
+			ret.projectName = new File(ret.sourceDirectories[0]).getAbsoluteFile().getName();
+
+		return ret;
+	}
+
+	private static String[] split(String paths) {
+		return Arrays.stream(paths.split(File.pathSeparator)).filter(s -> !s.isEmpty()).toArray(String[]::new);
+	}
+
+	/**
+	 * Splits the given line into whitespace-separated arguments, removing the
+	 * quotes enclosing whitespace.
+	 */
+	private static String[] tokenize(String line) {
+		List<String> ret = new ArrayList<>();
+
+		// the argument being read, if any.
+		StringBuilder argument = null;
+		boolean quoted = false;
+
+		for (char c : line.toCharArray())
+			if (Character.isWhitespace(c) && !quoted) {
+				if (argument != null) {
+					ret.add(argument.toString());
+					argument = null;
+				}
+			} else {
+				// quotes start an argument even if they enclose nothing.
+				if (argument == null)
+					argument = new StringBuilder();
+
+				if (c == QUOTE)
+					quoted = !quoted;
+				else
+					argument.append(c);
+			}
+
+		if (quoted)
+			throw new IllegalArgumentException("Unterminated quote in: " + line);
+
+		if (argument != null)
+			ret.add(argument.toString());
+
+		return ret.toArray(new String[ret.size()]);
+	}
+
+	private String[] classpath = new String[0];
+
+	private File entryPointsFile;
+
+	private boolean findImplicitBenchmarkEntrypoints;
+
+	private boolean findImplicitEntrypoints = true;
+
+	private boolean findImplicitJavaFXEntrypoints;
+
+	private boolean findImplicitTestEntrypoints;
+
+	private Integer nForStreams;
+
+	private Integer numberOfThreads;
+
+	private File outputDirectory = new File(".");
+
+	private String projectName;
+
+	private String[] sourceDirectories = new String[0];
+
+	private boolean useBatchParsing;
+
+	private AnalysisRequest() {
+	}
+
+	String[] getClasspath() {
+		return this.classpath;
+	}
+
+	File getEntryPointsFile() {
+		return this.entryPointsFile;
+	}
+
+	Integer getNForStreams() {
+		return this.nForStreams;
+	}
+
+	Integer getNumberOfThreads() {
+		return this.numberOfThreads;
+	}
+
+	File getOutputDirectory() {
+		return this.outputDirectory;
+	}
+
+	String getProjectName() {
+		return this.projectName;
+	}
+
+	/**
+	 * @return A description of how the project is set up, i.e., its source
+	 *         directories and classpath. Projects set up the same way can be
+	 *         reused.
+	 */
+	String getProjectSetup() {
+		return Arrays.toString(this.sourceDirectories) + Arrays.toString(this.classpath);
+	}
+
+	String[] getSourceDirectories() {
+		return this.sourceDirectories;
+	}
+
+	boolean shouldFindImplicitBenchmarkEntrypoints() {
+		return this.findImplicitBenchmarkEntrypoints;
+	}
+
+	boolean shouldFindImplicitEntrypoints() {
+		return this.findImplicitEntrypoints;
+	}
+
+	boolean shouldFindImplicitJavaFXEntrypoints() {
+		return this.findImplicitJavaFXEntrypoints;
+	}
+
+	boolean shouldFindImplicitTestEntrypoints() {
+		return this.findImplicitTestEntrypoints;
+	}
+
+	boolean shouldUseBatchParsing() {
+		return this.useBatchParsing;
+	}
+}
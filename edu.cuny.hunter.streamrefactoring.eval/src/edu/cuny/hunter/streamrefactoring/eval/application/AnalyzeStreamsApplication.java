@@ -0,0 +1,620 @@
+package edu.cuny.hunter.streamrefactoring.eval.application;
+
+import static edu.cuny.hunter.streamrefactoring.core.utils.LoggerNames.LOGGER_NAME;
+import static edu.cuny.hunter.streamrefactoring.core.utils.Util.createConvertToParallelStreamRefactoringProcessor;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceDescription;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.QualifiedName;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.RefactoringStatusEntry;
+import org.eclipse.ltk.core.refactoring.TextFileChange;
+import org.eclipse.ltk.core.refactoring.participants.ProcessorBasedRefactoring;
+import org.eclipse.osgi.service.datalocation.Location;
+
+import edu.cuny.hunter.streamrefactoring.core.analysis.Stream;
+import edu.cuny.hunter.streamrefactoring.core.analysis.StreamAnalysisOptions;
+import edu.cuny.hunter.streamrefactoring.core.refactorings.OptimizeStreamsRefactoringProcessor;
+import edu.cuny.hunter.streamrefactoring.eval.utils.Util;
+
+/**
+ * Analyzes a source tree without a workbench. The given source directories and
+ * classpath are imported into a (temporary) workspace as a Java project, which
+ * is built and then analyzed. The analyzed streams and failed preconditions are
+ * written as CSV files and the resulting source changes as a unified diff whose
+ * paths are relative to the working directory. The source tree itself is left
+ * untouched. Temporary workspaces are deleted on exit, while the existing
+ * projects of a given workspace are never replaced unless they were created by
+ * this application. Usage:
+ *
+ * <pre>
+ * eclipse -nosplash -data @noDefault -application edu.cuny.hunter.streamrefactoring.eval.analyze
+ *     -source &lt;dirs&gt; [-classpath &lt;entries&gt;] [-output &lt;dir&gt;] [-name &lt;project&gt;]
+ *     [-entryPoints &lt;file&gt;] [-n &lt;N&gt;] [-threads &lt;count&gt;] [-noImplicitEntrypoints]
+ *     [-findImplicitTestEntrypoints] [-findImplicitBenchmarkEntrypoints]
+ *     [-findImplicitJavaFXEntrypoints] [-useBatchParsing]
+ * </pre>
+ *
+ * Directories and classpath entries are separated using the platform's path
+ * separator. Alternatively, <code>-server [-port &lt;port&gt;]</code> keeps
+ * the application running and serves requests, each consisting of the above
+ * arguments on a single line, where arguments containing whitespace are
+ * enclosed in double quotes, read from the standard input or from clients
+ * connecting to the given local port. The projects, the primordial class
+ * loader, and the analysis results are retained between requests so that only
+ * what changed is rebuilt and re-analyzed.
+ */
+public class AnalyzeStreamsApplication implements IApplication {
+
+	private static final String CLEAR_COMMAND = "clear";
+
+	/**
+	 * Marks the projects created by this application, which may be replaced by
+	 * subsequent runs.
+	 */
+	private static final QualifiedName CREATED_PROPERTY = new QualifiedName("edu.cuny.hunter.streamrefactoring.eval",
+			"created");
+
+	private static final String ENTRY_POINTS_FILE_NAME = "entry_points.txt";
+
+	private static final Integer EXIT_ANALYSIS_FAILURE = 2;
+
+	private static final Integer EXIT_USAGE = 1;
+
+	private static final String FAILED_PRECONDITIONS_FILE_NAME = "failed_preconditions.csv";
+
+	private static final String JRE_CONTAINER_PATH = "org.eclipse.jdt.launching.JRE_CONTAINER";
+
+	private static final Logger LOGGER = Logger.getLogger(LOGGER_NAME);
+
+	private static final String OUTPUT_FOLDER_NAME = "bin";
+
+	private static final String PATCH_FILE_NAME = "refactoring.patch";
+
+	/**
+	 * The number of unchanged lines surrounding each hunk of the patch.
+	 */
+	private static final int PATCH_CONTEXT_LINES = 3;
+
+	private static final String PORT_ARGUMENT = "-port";
+
+	private static final String QUIT_COMMAND = "quit";
+
+	private static final String RESPONSE_ERROR = "ERROR";
+
+	private static final String RESPONSE_EXIT = "EXIT";
+
+	private static final String RESPONSE_OK = "OK";
+
+	private static final String SERVER_ARGUMENT = "-server";
+
+	private static final String SOURCE_FOLDER_NAME_PREFIX = "src";
+
+	private static final String STREAMS_FILE_NAME = "streams.csv";
+
+	private static final String USAGE = "Usage: " + AnalysisRequest.USAGE + "\n   or: " + SERVER_ARGUMENT + " ["
+			+ PORT_ARGUMENT + " <port>]";
+
+	/**
+	 * Appends a unified diff hunk between the given contents to the given patch.
+	 * Since refactorings only touch few lines, a single hunk spanning from the
+	 * first to the last changed line is used.
+	 */
+	static void appendDiff(PrintWriter patch, String path, String original, String modified) {
+		String[] originalLines = toLines(original);
+		String[] modifiedLines = toLines(modified);
+
+		// skip the common prefix and suffix.
+		int prefix = 0;
+		while (prefix < originalLines.length && prefix < modifiedLines.length
+				&& originalLines[prefix].equals(modifiedLines[prefix]))
+			++prefix;
+
+		if (prefix == originalLines.length && prefix == modifiedLines.length)
+			return; // no changes.
+
+		int suffix = 0;
+		while (suffix < originalLines.length - prefix && suffix < modifiedLines.length - prefix
+				&& originalLines[originalLines.length - 1 - suffix]
+						.equals(modifiedLines[modifiedLines.length - 1 - suffix]))
+			++suffix;
+
+		int start = Math.max(0, prefix - PATCH_CONTEXT_LINES);
+		int originalEnd = Math.min(originalLines.length, originalLines.length - suffix + PATCH_CONTEXT_LINES);
+		int modifiedEnd = Math.min(modifiedLines.length, modifiedLines.length - suffix + PATCH_CONTEXT_LINES);
+
+		patch.println("--- a/" + path);
+		patch.println("+++ b/" + path);
+		patch.println("@@ -" + (start + 1) + "," + (originalEnd - start) + " +" + (start + 1) + ","
+				+ (modifiedEnd - start) + " @@");
+
+		for (int i = start; i < prefix; i++)
+			patch.println(" " + originalLines[i]);
+
+		for (int i = prefix; i < originalLines.length - suffix; i++)
+			patch.println("-" + originalLines[i]);
+
+		for (int i = prefix; i < modifiedLines.length - suffix; i++)
+			patch.println("+" + modifiedLines[i]);
+
+		for (int i = originalLines.length - suffix; i < originalEnd; i++)
+			patch.println(" " + originalLines[i]);
+	}
+
+	private static CSVPrinter createCSVPrinter(File directory, String fileName, String[] header) throws IOException {
+		return new CSVPrinter(new FileWriter(new File(directory, fileName)), CSVFormat.EXCEL.withHeader(header));
+	}
+
+	/**
+	 * Deletes the given directory along with its contents, without following
+	 * links.
+	 */
+	private static void delete(Path directory) {
+		try (java.util.stream.Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		} catch (IOException e) {
+			System.err.println("Can't delete: " + directory + ": " + e);
+		}
+	}
+
+	/**
+	 * Collects the {@link TextFileChange}s contained in the given {@link Change}.
+	 */
+	private static void getTextFileChanges(Change change, List<TextFileChange> result) {
+		if (change instanceof TextFileChange)
+			result.add((TextFileChange) change);
+		else if (change instanceof CompositeChange)
+			for (Change child : ((CompositeChange) change).getChildren())
+				getTextFileChanges(child, result);
+	}
+
+	/**
+	 * @return True iff the given project was created by this application.
+	 */
+	private static boolean isCreatedByThisApplication(IProject project) throws CoreException {
+		return project.isOpen() && Boolean.parseBoolean(project.getPersistentProperty(CREATED_PROPERTY));
+	}
+
+	private static String[] toLines(String content) {
+		String[] ret = content.split("\r?\n", -1);
+
+		// a trailing line terminator doesn't start another line.
+		if (ret.length > 0 && ret[ret.length - 1].isEmpty())
+			return Arrays.copyOf(ret, ret.length - 1);
+
+		return ret;
+	}
+
+	/**
+	 * The setup of each project created by this application, so that projects can
+	 * be reused by subsequent requests.
+	 */
+	private final Map<String, String> projectNameToSetup = new HashMap<>();
+
+	private volatile ServerSocket serverSocket;
+
+	private volatile boolean stopped;
+
+	/**
+	 * Runs the given analysis request.
+	 *
+	 * @param request The options of the analysis.
+	 * @param warm    True iff the primordial class loader and analysis results
+	 *                should be retained for subsequent requests.
+	 * @param monitor The progress monitor to use.
+	 * @return The exit code.
+	 */
+	private Integer analyze(AnalysisRequest request, boolean warm, IProgressMonitor monitor)
+			throws CoreException, IOException {
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(request.getProjectName());
+
+		// never replace the user's own projects, e.g., of a workspace given using
+		// -data.
+		if (project.exists() && !isCreatedByThisApplication(project)) {
+			System.err.println("Project: " + project.getName() + " already exists and wasn't created by this "
+					+ "application. Use -name to choose another name.");
+			return EXIT_USAGE;
+		}
+
+		IJavaProject javaProject = this.getProject(request, monitor);
+
+		if (!javaProject.isStructureKnown()) {
+			System.err.println("Project: " + javaProject.getElementName() + " doesn't compile.");
+			return EXIT_ANALYSIS_FAILURE;
+		}
+
+		OptimizeStreamsRefactoringProcessor processor = createConvertToParallelStreamRefactoringProcessor(
+				new IJavaProject[] { javaProject }, request.shouldFindImplicitEntrypoints(),
+				request.shouldFindImplicitTestEntrypoints(), request.shouldFindImplicitBenchmarkEntrypoints(),
+				request.shouldFindImplicitJavaFXEntrypoints(), Optional.of(monitor));
+
+		if (request.getNForStreams() != null)
+			processor.setNForStreams(request.getNForStreams());
+
+		StreamAnalysisOptions options = processor.getOptions();
+
+		if (request.getNumberOfThreads() != null) {
+			options.setNumberOfTypestateSolverThreads(request.getNumberOfThreads());
+			options.setNumberOfParserThreads(request.getNumberOfThreads());
+			options.setNumberOfInferenceThreads(request.getNumberOfThreads());
+			options.setNumberOfPruningThreads(request.getNumberOfThreads());
+		}
+
+		options.setUseBatchParsing(request.shouldUseBatchParsing());
+
+		// only re-analyze what changed since the previous requests and load the JDK
+		// once for all of them.
+		options.setUseIncrementalAnalysis(warm);
+		options.setUseSharedPrimordialClassLoader(warm);
+
+		OptimizeStreamsRefactoringProcessor.setLoggingLevel(IStatus.INFO);
+
+		try {
+			ProcessorBasedRefactoring refactoring = new ProcessorBasedRefactoring(processor);
+			RefactoringStatus status = refactoring.checkAllConditions(monitor);
+
+			request.getOutputDirectory().mkdirs();
+			this.writeStreams(processor, request.getOutputDirectory());
+
+			if (status.hasFatalError()) {
+				System.err.println("Analysis failed: " + status);
+				return EXIT_ANALYSIS_FAILURE;
+			}
+
+			this.writePatch(refactoring.createChange(monitor), request.getOutputDirectory(), monitor);
+		} catch (CoreException | IOException | RuntimeException e) {
+			LOGGER.log(Level.SEVERE, "Encountered exception during analysis.", e);
+			return EXIT_ANALYSIS_FAILURE;
+		} finally {
+			processor.clearCaches();
+		}
+
+		return IApplication.EXIT_OK;
+	}
+
+	/**
+	 * Creates a Java project in the workspace whose source folders link to the
+	 * given source directories.
+	 */
+	private IJavaProject createProject(AnalysisRequest request, IProgressMonitor monitor) throws CoreException {
+		IWorkspace workspace = ResourcesPlugin.getWorkspace();
+
+		// we build explicitly.
+		IWorkspaceDescription workspaceDescription = workspace.getDescription();
+		workspaceDescription.setAutoBuilding(false);
+		workspace.setDescription(workspaceDescription);
+
+		IProject project = workspace.getRoot().getProject(request.getProjectName());
+
+		// start from scratch. Only projects created by this application get here, and
+		// deleting links never deletes their targets.
+		if (project.exists())
+			project.delete(true, true, monitor);
+
+		project.create(monitor);
+		project.open(monitor);
+		project.setPersistentProperty(CREATED_PROPERTY, Boolean.TRUE.toString());
+
+		IProjectDescription description = project.getDescription();
+		description.setNatureIds(new String[] { JavaCore.NATURE_ID });
+		project.setDescription(description, monitor);
+
+		List<IClasspathEntry> entries = new ArrayList<>();
+		String[] sourceDirectories = request.getSourceDirectories();
+
+		for (int i = 0; i < sourceDirectories.length; i++) {
+			IFolder folder = project.getFolder(SOURCE_FOLDER_NAME_PREFIX + i);
+			folder.createLink(new org.eclipse.core.runtime.Path(new File(sourceDirectories[i]).getAbsolutePath()),
+					IResource.NONE, monitor);
+			entries.add(JavaCore.newSourceEntry(folder.getFullPath()));
+		}
+
+		entries.add(JavaCore.newContainerEntry(new org.eclipse.core.runtime.Path(JRE_CONTAINER_PATH)));
+
+		for (String entry : request.getClasspath())
+			entries.add(JavaCore.newLibraryEntry(new org.eclipse.core.runtime.Path(new File(entry).getAbsolutePath()),
+					null, null));
+
+		IJavaProject javaProject = JavaCore.create(project);
+		javaProject.setRawClasspath(entries.toArray(new IClasspathEntry[entries.size()]),
+				project.getFolder(OUTPUT_FOLDER_NAME).getFullPath(), monitor);
+
+		Map<String, String> options = javaProject.getOptions(false);
+		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+		javaProject.setOptions(options);
+
+		return javaProject;
+	}
+
+	/**
+	 * Returns the Java project for the given request. Projects created by previous
+	 * requests with the same setup are refreshed and incrementally built rather
+	 * than recreated, so that only what changed is recompiled.
+	 */
+	private IJavaProject getProject(AnalysisRequest request, IProgressMonitor monitor)
+			throws CoreException, IOException {
+		IProject project = ResourcesPlugin.getWorkspace().getRoot().getProject(request.getProjectName());
+		IJavaProject ret;
+		int buildKind;
+
+		if (project.isOpen() && request.getProjectSetup().equals(this.projectNameToSetup.get(project.getName()))) {
+			project.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+			ret = JavaCore.create(project);
+			buildKind = IncrementalProjectBuilder.INCREMENTAL_BUILD;
+		} else {
+			ret = this.createProject(request, monitor);
+			this.projectNameToSetup.put(project.getName(), request.getProjectSetup());
+			buildKind = IncrementalProjectBuilder.FULL_BUILD;
+		}
+
+		// explicit entry points are looked up in the project directory.
+		Path entryPointsPath = project.getLocation().append(ENTRY_POINTS_FILE_NAME).toFile().toPath();
+
+		if (request.getEntryPointsFile() != null)
+			Files.copy(request.getEntryPointsFile().toPath(), entryPointsPath, StandardCopyOption.REPLACE_EXISTING);
+		else
+			Files.deleteIfExists(entryPointsPath);
+
+		// the analysis runs on the bytecode.
+		project.build(buildKind, monitor);
+
+		return ret;
+	}
+
+	/**
+	 * Serves requests read line by line from the given reader until its end, a
+	 * <code>quit</code> command, or the application being stopped. Each line
+	 * contains the same arguments as a single run, where arguments containing
+	 * whitespace are enclosed in double quotes, and is answered by a line
+	 * containing the exit code. A <code>clear</code> command releases the
+	 * retained class loaders and analysis results.
+	 *
+	 * @return False iff a <code>quit</code> command was read.
+	 */
+	boolean serve(BufferedReader reader, PrintWriter writer) throws IOException {
+		String line;
+
+		while (!this.stopped && (line = reader.readLine()) != null) {
+			line = line.trim();
+
+			if (line.isEmpty())
+				continue;
+			else if (line.equals(QUIT_COMMAND))
+				return false;
+			else if (line.equals(CLEAR_COMMAND)) {
+				OptimizeStreamsRefactoringProcessor.clearAnalysisCaches();
+				writer.println(RESPONSE_OK);
+			} else
+				try {
+					AnalysisRequest request = AnalysisRequest.parse(line);
+					writer.println(RESPONSE_EXIT + " " + this.analyze(request, true, new NullProgressMonitor()));
+				} catch (IllegalArgumentException e) {
+					writer.println(RESPONSE_ERROR + " " + e.getMessage() + ". Usage: " + AnalysisRequest.USAGE);
+				} catch (CoreException | IOException | RuntimeException e) {
+					LOGGER.log(Level.SEVERE, "Encountered exception while serving: " + line, e);
+					writer.println(RESPONSE_ERROR + " " + e);
+				}
+
+			writer.flush();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Serves requests from clients connecting to the given local port, one client
+	 * at a time.
+	 */
+	private void serve(int port) throws IOException {
+		try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+			this.serverSocket = server;
+			LOGGER.info(() -> "Listening on: " + server.getLocalSocketAddress());
+
+			boolean serving = true;
+
+			while (serving && !this.stopped)
+				try (Socket socket = server.accept();
+						BufferedReader reader = new BufferedReader(
+								new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+						PrintWriter writer = new PrintWriter(
+								new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+					serving = this.serve(reader, writer);
+				} catch (SocketException e) {
+					// the socket was closed by stop().
+					if (!this.stopped)
+						throw e;
+				}
+		} finally {
+			this.serverSocket = null;
+		}
+	}
+
+	/**
+	 * Sets the workspace location to a temporary directory unless one was given,
+	 * e.g., using <code>-data</code>. The temporary directory is deleted on exit.
+	 */
+	private void setUpWorkspace() throws IOException {
+		Location location = Platform.getInstanceLocation();
+
+		if (!location.isSet()) {
+			File directory = Files.createTempDirectory("streamrefactoring-workspace").toFile();
+
+			if (!location.set(directory.toURI().toURL(), false))
+				throw new IllegalStateException("Can't set the workspace location to: " + directory);
+
+			LOGGER.info(() -> "Using temporary workspace: " + directory);
+
+			// the workspace is saved while the platform shuts down, i.e., before the VM
+			// does.
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(directory.toPath())));
+		}
+	}
+
+	@Override
+	public Object start(IApplicationContext context) throws Exception {
+		String[] args = (String[]) context.getArguments().get(IApplicationContext.APPLICATION_ARGS);
+
+		if (args == null)
+			args = new String[0];
+
+		// server mode.
+		if (args.length > 0 && args[0].equals(SERVER_ARGUMENT)) {
+			Integer port = null;
+
+			if (args.length == 3 && args[1].equals(PORT_ARGUMENT))
+				port = Integer.valueOf(args[2]);
+			else if (args.length != 1) {
+				System.err.println(USAGE);
+				return EXIT_USAGE;
+			}
+
+			this.setUpWorkspace();
+			context.applicationRunning();
+
+			if (port == null)
+				this.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+						new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+			else
+				this.serve(port);
+
+			return IApplication.EXIT_OK;
+		}
+
+		AnalysisRequest request;
+
+		try {
+			request = AnalysisRequest.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			return EXIT_USAGE;
+		}
+
+		this.setUpWorkspace();
+		context.applicationRunning();
+
+		return this.analyze(request, false, new NullProgressMonitor());
+	}
+
+	@Override
+	public void stop() {
+		this.stopped = true;
+		ServerSocket server = this.serverSocket;
+
+		if (server != null)
+			try {
+				server.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARNING, "Can't close the server socket.", e);
+			}
+	}
+
+	/**
+	 * Writes the source changes as a unified diff, leaving the sources untouched.
+	 */
+	private void writePatch(Change change, File outputDirectory, IProgressMonitor monitor)
+			throws CoreException, IOException {
+		List<TextFileChange> changes = new ArrayList<>();
+		getTextFileChanges(change, changes);
+
+		Path workingDirectory = Paths.get("").toAbsolutePath();
+
+		try (PrintWriter patch = new PrintWriter(new FileWriter(new File(outputDirectory, PATCH_FILE_NAME)))) {
+			for (TextFileChange textFileChange : changes) {
+				IFile file = textFileChange.getFile();
+				Path location = file.getLocation().toFile().toPath().toAbsolutePath();
+				String path = location.startsWith(workingDirectory) ? workingDirectory.relativize(location).toString()
+						: location.toString();
+
+				appendDiff(patch, path.replace(File.separatorChar, '/'), textFileChange.getCurrentContent(monitor),
+						textFileChange.getPreviewContent(monitor));
+			}
+		}
+
+		LOGGER.info(() -> "Wrote changes to " + changes.size() + " files.");
+	}
+
+	private void writeStreams(OptimizeStreamsRefactoringProcessor processor, File outputDirectory)
+			throws IOException, JavaModelException {
+		Set<Stream> streams = processor.getStreamSet();
+
+		if (streams == null)
+			return;
+
+		try (CSVPrinter streamPrinter = createCSVPrinter(outputDirectory, STREAMS_FILE_NAME,
+				new String[] { "stream", "start pos", "length", "method", "type FQN", "optimizable", "refactoring",
+						"passingPrecondition", "actions" });
+				CSVPrinter errorPrinter = createCSVPrinter(outputDirectory, FAILED_PRECONDITIONS_FILE_NAME,
+						new String[] { "stream", "start pos", "length", "method", "type FQN", "code", "message" })) {
+			Set<Stream> optimizableStreams = processor.getOptimizableStreams();
+
+			for (Stream stream : streams) {
+				String method = Util.getMethodIdentifier(stream.getEnclosingEclipseMethod());
+				String type = stream.getEnclosingType() == null ? null
+						: stream.getEnclosingType().getFullyQualifiedName();
+
+				streamPrinter.printRecord(stream.getCreation(), stream.getCreation().getStartPosition(),
+						stream.getCreation().getLength(), method, type, optimizableStreams.contains(stream),
+						stream.getRefactoring(), stream.getPassingPrecondition(),
+						stream.getActions() == null ? null
+								: stream.getActions().stream().map(String::valueOf)
+										.collect(Collectors.joining(" ")));
+
+				for (RefactoringStatusEntry entry : stream.getStatus().getEntries())
+					if (entry.isError())
+						errorPrinter.printRecord(stream.getCreation(), stream.getCreation().getStartPosition(),
+								stream.getCreation().getLength(), method, type, entry.getCode(), entry.getMessage());
+			}
+		}
+	}
+}
@@ -64,8 +64,10 @@ import com.ibm.wala.ipa.callgraph.Entrypoint;
 
 import edu.cuny.hunter.streamrefactoring.core.analysis.PreconditionFailure;
 import edu.cuny.hunter.streamrefactoring.core.analysis.PreconditionSuccess;
+import edu.cuny.hunter.streamrefactoring.core.analysis.ProjectAnalysisOutcome;
 import edu.cuny.hunter.streamrefactoring.core.analysis.Refactoring;
 import edu.cuny.hunter.streamrefactoring.core.analysis.Stream;
+import edu.cuny.hunter.streamrefactoring.core.analysis.StreamAnalysisOptions;
 import edu.cuny.hunter.streamrefactoring.core.analysis.TransformationAction;
 import edu.cuny.hunter.streamrefactoring.core.refactorings.OptimizeStreamsRefactoringProcessor;
 import edu.cuny.hunter.streamrefactoring.core.utils.TimeCollector;
@@ -107,10 +109,32 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 
 	private static final int LOGGING_LEVEL = IStatus.INFO;
 
+	private static final int N_TO_USE_FOR_REFINED_STREAMS_DEFAULT = 0;
+
+	private static final String N_TO_USE_FOR_REFINED_STREAMS_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.nToUseForRefinedStreams";
+
 	private static final int N_TO_USE_FOR_STREAMS_DEFAULT = 2;
 
 	private static final String N_TO_USE_FOR_STREAMS_PROPERTY_KEY = "nToUseForStreams";
 
+	private static final int NUMBER_OF_INFERENCE_THREADS_DEFAULT = 1;
+
+	private static final String NUMBER_OF_INFERENCE_THREADS_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.numberOfInferenceThreads";
+
+	private static final int NUMBER_OF_PARSER_THREADS_DEFAULT = 1;
+
+	private static final String NUMBER_OF_PARSER_THREADS_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.numberOfParserThreads";
+
+	private static final int NUMBER_OF_PRUNING_THREADS_DEFAULT = 1;
+
+	private static final String NUMBER_OF_PRUNING_THREADS_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.numberOfPruningThreads";
+
+	private static final int NUMBER_OF_TYPESTATE_SOLVER_THREADS_DEFAULT = 1;
+
+	private static final String NUMBER_OF_TYPESTATE_SOLVER_THREADS_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.numberOfTypestateSolverThreads";
+
+	private static final String ORDERING_MEMO_FILE_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.orderingMemoFile";
+
 	private static final boolean PERFORM_ANALYSIS_DEFAULT = true;
 
 	private static final String PERFORM_ANALYSIS_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.performAnalysis";
@@ -119,10 +143,53 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 
 	private static final String PERFORM_CHANGE_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.performChange";
 
+	private static final boolean STREAM_INSTANCE_RESULTS_DEFAULT = false;
+
+	private static final String STREAM_INSTANCE_RESULTS_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.streamInstanceResults";
+
+	private static final boolean USE_BATCH_PARSING_DEFAULT = false;
+
+	private static final String USE_BATCH_PARSING_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.useBatchParsing";
+
+	private static final boolean USE_CANDIDATE_STREAM_SOLVER_DEFAULT = false;
+
+	private static final String USE_CANDIDATE_STREAM_SOLVER_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.useCandidateStreamSolver";
+
+	private static final boolean USE_INCREMENTAL_ANALYSIS_DEFAULT = false;
+
+	private static final String USE_INCREMENTAL_ANALYSIS_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.useIncrementalAnalysis";
+
+	private static final boolean USE_PRODUCT_AUTOMATON_DEFAULT = false;
+
+	private static final String USE_PRODUCT_AUTOMATON_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.useProductAutomaton";
+
+	private static final boolean USE_SHARED_PRIMORDIAL_CLASS_LOADER_DEFAULT = false;
+
+	private static final String USE_SHARED_PRIMORDIAL_CLASS_LOADER_PROPERTY_KEY = "edu.cuny.hunter.streamrefactoring.eval.useSharedPrimordialClassLoader";
+
 	private static String[] buildAttributeColumns(String attribute) {
 		return new String[] { "subject", "stream", "start pos", "length", "method", "type FQN", attribute };
 	}
 
+	private static StreamAnalysisOptions createAnalysisOptions() {
+		StreamAnalysisOptions options = new StreamAnalysisOptions();
+
+		options.setNForRefinedStreams(getNForRefinedStreams());
+		options.setNumberOfInferenceThreads(getNumberOfInferenceThreads());
+		options.setNumberOfParserThreads(getNumberOfParserThreads());
+		options.setNumberOfPruningThreads(getNumberOfPruningThreads());
+		options.setNumberOfTypestateSolverThreads(getNumberOfTypestateSolverThreads());
+		options.setOrderingMemoFile(getOrderingMemoFile());
+		options.setStreamInstanceResults(shouldStreamInstanceResults());
+		options.setUseBatchParsing(shouldUseBatchParsing());
+		options.setUseCandidateStreamSolver(shouldUseCandidateStreamSolver());
+		options.setUseIncrementalAnalysis(shouldUseIncrementalAnalysis());
+		options.setUseProductAutomaton(shouldUseProductAutomaton());
+		options.setUseSharedPrimordialClassLoader(shouldUseSharedPrimordialClassLoader());
+
+		return options;
+	}
+
 	private static CSVPrinter createCSVPrinter(String fileName, String[] header) throws IOException {
 		return new CSVPrinter(new FileWriter(fileName, true), CSVFormat.EXCEL.withHeader(header));
 	}
@@ -188,6 +255,15 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 		}
 	}
 
+	private static int getNForRefinedStreams() {
+		String nToUseForRefinedStreams = System.getenv(N_TO_USE_FOR_REFINED_STREAMS_PROPERTY_KEY);
+
+		if (nToUseForRefinedStreams == null)
+			return N_TO_USE_FOR_REFINED_STREAMS_DEFAULT;
+		else
+			return Integer.valueOf(nToUseForRefinedStreams);
+	}
+
 	private static int getNForStreams(IJavaProject project) throws IOException, JavaModelException {
 		Properties properties = new Properties();
 		File file = findEvaluationPropertiesFile(project);
@@ -223,6 +299,51 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 		return getMetric(javaProject, Constants.NUM_METHODS);
 	}
 
+	private static int getNumberOfInferenceThreads() {
+		String numberOfInferenceThreads = System.getenv(NUMBER_OF_INFERENCE_THREADS_PROPERTY_KEY);
+
+		if (numberOfInferenceThreads == null)
+			return NUMBER_OF_INFERENCE_THREADS_DEFAULT;
+		else
+			return Integer.valueOf(numberOfInferenceThreads);
+	}
+
+	private static int getNumberOfParserThreads() {
+		String numberOfParserThreads = System.getenv(NUMBER_OF_PARSER_THREADS_PROPERTY_KEY);
+
+		if (numberOfParserThreads == null)
+			return NUMBER_OF_PARSER_THREADS_DEFAULT;
+		else
+			return Integer.valueOf(numberOfParserThreads);
+	}
+
+	private static int getNumberOfPruningThreads() {
+		String numberOfPruningThreads = System.getenv(NUMBER_OF_PRUNING_THREADS_PROPERTY_KEY);
+
+		if (numberOfPruningThreads == null)
+			return NUMBER_OF_PRUNING_THREADS_DEFAULT;
+		else
+			return Integer.valueOf(numberOfPruningThreads);
+	}
+
+	private static int getNumberOfTypestateSolverThreads() {
+		String numberOfTypestateSolverThreads = System.getenv(NUMBER_OF_TYPESTATE_SOLVER_THREADS_PROPERTY_KEY);
+
+		if (numberOfTypestateSolverThreads == null)
+			return NUMBER_OF_TYPESTATE_SOLVER_THREADS_DEFAULT;
+		else
+			return Integer.valueOf(numberOfTypestateSolverThreads);
+	}
+
+	private static File getOrderingMemoFile() {
+		String orderingMemoFile = System.getenv(ORDERING_MEMO_FILE_PROPERTY_KEY);
+
+		if (orderingMemoFile == null)
+			return null;
+		else
+			return new File(orderingMemoFile);
+	}
+
 	private static Collection<Entrypoint> getProjectEntryPoints(IJavaProject javaProject,
 			OptimizeStreamsRefactoringProcessor processor) {
 		return processor.getEntryPoints(javaProject);
@@ -295,6 +416,60 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 			return Boolean.valueOf(performChangePropertyValue);
 	}
 
+	private static boolean shouldStreamInstanceResults() {
+		String streamInstanceResults = System.getenv(STREAM_INSTANCE_RESULTS_PROPERTY_KEY);
+
+		if (streamInstanceResults == null)
+			return STREAM_INSTANCE_RESULTS_DEFAULT;
+		else
+			return Boolean.valueOf(streamInstanceResults);
+	}
+
+	private static boolean shouldUseBatchParsing() {
+		String useBatchParsing = System.getenv(USE_BATCH_PARSING_PROPERTY_KEY);
+
+		if (useBatchParsing == null)
+			return USE_BATCH_PARSING_DEFAULT;
+		else
+			return Boolean.valueOf(useBatchParsing);
+	}
+
+	private static boolean shouldUseCandidateStreamSolver() {
+		String useCandidateStreamSolver = System.getenv(USE_CANDIDATE_STREAM_SOLVER_PROPERTY_KEY);
+
+		if (useCandidateStreamSolver == null)
+			return USE_CANDIDATE_STREAM_SOLVER_DEFAULT;
+		else
+			return Boolean.valueOf(useCandidateStreamSolver);
+	}
+
+	private static boolean shouldUseIncrementalAnalysis() {
+		String useIncrementalAnalysis = System.getenv(USE_INCREMENTAL_ANALYSIS_PROPERTY_KEY);
+
+		if (useIncrementalAnalysis == null)
+			return USE_INCREMENTAL_ANALYSIS_DEFAULT;
+		else
+			return Boolean.valueOf(useIncrementalAnalysis);
+	}
+
+	private static boolean shouldUseProductAutomaton() {
+		String useProductAutomaton = System.getenv(USE_PRODUCT_AUTOMATON_PROPERTY_KEY);
+
+		if (useProductAutomaton == null)
+			return USE_PRODUCT_AUTOMATON_DEFAULT;
+		else
+			return Boolean.valueOf(useProductAutomaton);
+	}
+
+	private static boolean shouldUseSharedPrimordialClassLoader() {
+		String useSharedPrimordialClassLoader = System.getenv(USE_SHARED_PRIMORDIAL_CLASS_LOADER_PROPERTY_KEY);
+
+		if (useSharedPrimordialClassLoader == null)
+			return USE_SHARED_PRIMORDIAL_CLASS_LOADER_DEFAULT;
+		else
+			return Boolean.valueOf(useSharedPrimordialClassLoader);
+	}
+
 	/**
 	 * the command has been executed, so extract extract the needed information from
 	 * the application context.
@@ -312,6 +487,7 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 			CSVPrinter streamExecutionModePrinter = null;
 			CSVPrinter streamOrderingPrinter = null;
 			CSVPrinter entryPointsPrinter = null;
+			CSVPrinter projectOutcomePrinter = null;
 			PrintWriter entryPointsTXTPrinter = null;
 
 			OptimizeStreamsRefactoringProcessor processor = null;
@@ -371,6 +547,9 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 				entryPointsPrinter = createCSVPrinter("entry_points.csv",
 						new String[] { "subject", "method", "type FQN" });
 
+				projectOutcomePrinter = createCSVPrinter("project_outcomes.csv", new String[] { "subject",
+						"analyzed project", "streams", "time (s)", "has entry points", "failure" });
+
 				entryPointsTXTPrinter = new PrintWriter("entry_points.txt");
 
 				// set up analysis parameters for all projects.
@@ -405,6 +584,7 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 							nToUseForStreams, shouldFindImplicitEntrypoints, shouldFindImplicitTestEntrypoints,
 							shouldFindImplicitBenchmarkEntrypoints, shouldFindImplicitJavaFXEntrypoints,
 							Optional.of(monitor));
+					processor.setOptions(createAnalysisOptions());
 					resultsTimeCollector.stop();
 					OptimizeStreamsRefactoringProcessor.setLoggingLevel(LOGGING_LEVEL);
 
@@ -418,6 +598,13 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 					} else
 						status = new RefactoringStatus();
 
+					// print the outcome of each analyzed project.
+					for (ProjectAnalysisOutcome outcome : processor.getProjectToOutcome().values())
+						projectOutcomePrinter.printRecord(javaProject.getElementName(),
+								outcome.getProject().getElementName(), outcome.getNumberOfStreams(),
+								outcome.getTime() / 1000.0, outcome.hasEntryPoints(),
+								outcome.getFailure().map(Object::toString).orElse(""));
+
 					// print entry points.
 					Collection<Entrypoint> entryPoints = getProjectEntryPoints(javaProject, processor);
 					resultsPrinter.print(entryPoints.size()); // number.
@@ -620,6 +807,8 @@ public class EvaluateConvertToParallelStreamRefactoringHandler extends AbstractH
 						entryPointsPrinter.close();
 					if (entryPointsTXTPrinter != null)
 						entryPointsTXTPrinter.close();
+					if (projectOutcomePrinter != null)
+						projectOutcomePrinter.close();
 
 					// clear cache.
 					if (processor != null)
@@ -0,0 +1,22 @@
+package p;
+
+import java.util.HashSet;
+import java.util.stream.*;
+
+import edu.cuny.hunter.streamrefactoring.annotations.*;
+
+class C {
+
+	Stream<Object> stream;
+
+	void m() {
+		stream = new HashSet<>().stream();
+	}
+
+	@EntryPoint
+	void n() {
+		m();
+		stream.distinct().count();
+	}
+
+}
\ No newline at end of file
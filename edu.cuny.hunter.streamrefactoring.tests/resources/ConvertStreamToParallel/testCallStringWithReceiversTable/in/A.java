@@ -0,0 +1,22 @@
+package p;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.stream.Stream;
+
+import edu.cuny.hunter.streamrefactoring.annotations.*;
+
+public class A {
+	long count(Stream stream) {
+		return stream.count();
+	}
+
+	@EntryPoint
+	void m() {
+		Collection collection1 = new HashSet<>();
+		Collection collection2 = new ArrayList<>();
+		count(collection1.stream());
+		count(collection2.stream());
+	}
+}
@@ -0,0 +1,18 @@
+package p;
+
+import java.util.HashSet;
+import java.util.stream.Stream;
+
+import edu.cuny.hunter.streamrefactoring.annotations.*;
+
+class A {
+	Stream<Object> stream = new HashSet<>().stream();
+
+	@EntryPoint
+	void m() {
+		new A().stream.count();
+
+		HashSet h1 = new HashSet();
+		h1.stream().count();
+	}
+}
@@ -0,0 +1,28 @@
+package p;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.cuny.hunter.streamrefactoring.annotations.*;
+
+public class A {
+	int count;
+
+	Set<Object> seen = new HashSet<>();
+
+	void increment() {
+		this.count++;
+	}
+
+	@EntryPoint
+	void m() {
+		Collection<Object> collection = new HashSet<>();
+		collection.stream().forEach(o -> {
+			this.increment();
+			this.seen.add(o);
+		});
+		new ArrayList<>().stream().count();
+	}
+}
@@ -0,0 +1,10 @@
+package p;
+
+import java.util.HashSet;
+
+class A {
+	void m() {
+		HashSet h1 = new HashSet();
+		h1.stream().count();
+	}
+}
@@ -0,0 +1,13 @@
+package p;
+
+import java.util.ArrayList;
+
+import edu.cuny.hunter.streamrefactoring.annotations.*;
+
+class B {
+	@EntryPoint
+	void m() {
+		ArrayList h2 = new ArrayList();
+		h2.stream().count();
+	}
+}
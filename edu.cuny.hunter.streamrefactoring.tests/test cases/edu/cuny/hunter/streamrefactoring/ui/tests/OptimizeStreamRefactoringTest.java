@@ -1,19 +1,47 @@
 package edu.cuny.hunter.streamrefactoring.ui.tests;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Random;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -27,24 +55,59 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.ISourceManipulation;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.testplugin.JavaProjectHelper;
 import org.eclipse.jdt.ui.tests.refactoring.Java18Setup;
 import org.eclipse.jdt.ui.tests.refactoring.RefactoringTest;
 import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.participants.ProcessorBasedRefactoring;
+
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.ContextSelector;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.callgraph.propagation.PointerKey;
+import com.ibm.wala.ipa.callgraph.propagation.SSAPropagationCallGraphBuilder;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.intset.MutableMapping;
+import com.ibm.wala.util.intset.OrdinalSet;
 
 import edu.cuny.hunter.streamrefactoring.core.analysis.ExecutionMode;
 import edu.cuny.hunter.streamrefactoring.core.analysis.Ordering;
+import edu.cuny.hunter.streamrefactoring.core.analysis.OrderingInference;
 import edu.cuny.hunter.streamrefactoring.core.analysis.PreconditionFailure;
 import edu.cuny.hunter.streamrefactoring.core.analysis.PreconditionSuccess;
+import edu.cuny.hunter.streamrefactoring.core.analysis.ProjectAnalysisOutcome;
 import edu.cuny.hunter.streamrefactoring.core.analysis.Refactoring;
+import edu.cuny.hunter.streamrefactoring.core.analysis.SpliteratorOrderingOracle;
 import edu.cuny.hunter.streamrefactoring.core.analysis.Stream;
+import edu.cuny.hunter.streamrefactoring.core.analysis.StreamAnalysisOptions;
 import edu.cuny.hunter.streamrefactoring.core.analysis.StreamAnalyzer;
 import edu.cuny.hunter.streamrefactoring.core.analysis.TransformationAction;
+import edu.cuny.hunter.streamrefactoring.core.analysis.Util;
+import edu.cuny.hunter.streamrefactoring.core.refactorings.OptimizeStreamsRefactoringProcessor;
+import edu.cuny.hunter.streamrefactoring.core.wala.CallStringWithReceivers;
+import edu.cuny.hunter.streamrefactoring.core.wala.CallStringWithReceiversTable;
+import edu.cuny.hunter.streamrefactoring.core.wala.DemandDrivenModRef;
+import edu.cuny.hunter.streamrefactoring.core.wala.EclipseProjectAnalysisEngine;
+import edu.cuny.hunter.streamrefactoring.core.wala.PrimordialClassLoaderCache;
+import edu.cuny.hunter.streamrefactoring.core.wala.TypeInferenceCache;
+import edu.cuny.hunter.streamrefactoring.core.wala.nCFAContextWithReceiversSelector;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -65,8 +128,17 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 
 	private static final int MAX_RETRY = 5;
 
+	private static final int N_TO_USE_FOR_REFINED_STREAMS = 3;
+
 	private static final int N_TO_USE_FOR_STREAMS_DEFAULT = 2;
 
+	/**
+	 * The number of threads used by the options that parallelize the analysis.
+	 */
+	private static final int NUMBER_OF_THREADS = 2;
+
+	private static final String OTHER_PROJECT_NAME = "OtherTestProject";
+
 	private static final String REFACTORING_PATH = "ConvertStreamToParallel/";
 
 	/**
@@ -80,6 +152,60 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 		LOGGER.setLevel(Level.FINER);
 	}
 
+	/**
+	 * Compares the given analyzed {@link Stream}s with the expected results.
+	 */
+	private static void assertStreams(Set<Stream> resultingStreams,
+			StreamAnalysisExpectedResult... expectedResults) {
+		Map<String, List<Stream>> creationStringToStreams = resultingStreams.stream()
+				.collect(Collectors.groupingBy(s -> s.getCreation().toString()));
+
+		// compare them with the expected results.
+		// for each expected result.
+		for (StreamAnalysisExpectedResult result : expectedResults) {
+			// find the corresponding stream in the actual results.
+			List<Stream> expectingStreams = creationStringToStreams.get(result.getExpectedCreation());
+
+			String errorMessage = "Can't find corresponding stream for creation: " + result.getExpectedCreation();
+			assertNotNull(errorMessage, expectingStreams);
+			assertFalse(errorMessage, expectingStreams.isEmpty());
+
+			assertEquals("Ambiguous corresponding stream for creation: " + result.getExpectedCreation(), 1,
+					expectingStreams.size());
+
+			Stream stream = expectingStreams.get(0);
+
+			Set<ExecutionMode> executionModes = stream.getPossibleExecutionModes();
+			assertEquals(errorMessage("execution mode", result), result.getExpectedExecutionModes(), executionModes);
+
+			Set<Ordering> orderings = stream.getPossibleOrderings();
+			assertEquals(errorMessage("orderings", result), result.getExpectedOrderings(), orderings);
+
+			assertEquals(errorMessage("side effects", result), result.isExpectingSideEffects(),
+					stream.hasPossibleSideEffects());
+			assertEquals(errorMessage("stateful intermediate operations", result),
+					result.isExpectingStatefulIntermediateOperation(),
+					stream.hasPossibleStatefulIntermediateOperations());
+			assertEquals(errorMessage("ROM", result), result.isExpectingThatReduceOrderingMatters(),
+					stream.reduceOrderingPossiblyMatters());
+			assertEquals(errorMessage("transformation actions", result), result.getExpectedActions(),
+					stream.getActions());
+			assertEquals(errorMessage("passing precondition", result), result.getExpectedPassingPrecondition(),
+					stream.getPassingPrecondition());
+			assertEquals(errorMessage("refactoring", result), result.getExpectedRefactoring(), stream.getRefactoring());
+			assertEquals(errorMessage("status severity", result), result.getExpectedStatusSeverity(),
+					stream.getStatus().getSeverity());
+
+			Set<Integer> actualCodes = Arrays.stream(stream.getStatus().getEntries()).map(e -> e.getCode())
+					.collect(Collectors.toSet());
+
+			Set<Integer> expectedCodes = result.getExpectedFailures().stream().map(e -> e.getCode())
+					.collect(Collectors.toSet());
+
+			assertEquals(errorMessage("status codes", result), expectedCodes, actualCodes);
+		}
+	}
+
 	@SuppressWarnings("unused")
 	private static boolean compiles(String source) throws IOException {
 		return compiles(source, Files.createTempDirectory(null));
@@ -176,6 +302,15 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 		return Paths.get(element.getResource().getLocation().toString() + File.separator + ENTRY_POINT_FILENAME);
 	}
 
+	/**
+	 * @return True iff the given {@link CGNode} represents a method of the
+	 *         project under test rather than of the JDK.
+	 */
+	private static boolean isClientNode(CGNode node) {
+		return !node.getMethod().getDeclaringClass().getClassLoader().getReference()
+				.equals(ClassLoaderReference.Primordial);
+	}
+
 	public static Test setUpTest(Test test) {
 		return new Java18Setup(test);
 	}
@@ -184,6 +319,43 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 		return setUpTest(new TestSuite(CLAZZ));
 	}
 
+	private static Ordering toOrdering(Spliterator<?> spliterator) {
+		return spliterator.hasCharacteristics(Spliterator.ORDERED) ? Ordering.ORDERED : Ordering.UNORDERED;
+	}
+
+	/**
+	 * @return The analysis results of each of the given streams keyed by their
+	 *         creation in a form that can be compared across analyses.
+	 */
+	private static Map<String, List<Object>> toResults(Set<Stream> streams) {
+		Map<String, List<Object>> ret = new HashMap<>();
+
+		for (Stream stream : streams) {
+			Set<Integer> codes = Arrays.stream(stream.getStatus().getEntries()).map(e -> e.getCode())
+					.collect(Collectors.toCollection(TreeSet::new));
+
+			List<Object> results = Arrays.asList(toSortedSet(stream.getPossibleExecutionModes()),
+					toSortedSet(stream.getPossibleOrderings()), stream.hasPossibleSideEffects(),
+					stream.hasPossibleStatefulIntermediateOperations(), stream.reduceOrderingPossiblyMatters(),
+					toSortedSet(stream.getActions()), stream.getPassingPrecondition(), stream.getRefactoring(),
+					stream.getStatus().getSeverity(), codes);
+
+			assertNull("Ambiguous stream for creation: " + stream.getCreation(),
+					ret.put(stream.getCreation().toString(), results));
+		}
+
+		return ret;
+	}
+
+	private static <E extends Comparable<? super E>> SortedSet<E> toSortedSet(Set<E> set) {
+		return set == null ? null : new TreeSet<>(set);
+	}
+
+	private static TypeReference toTypeReference(Class<?> clazz) {
+		return TypeReference.findOrCreate(ClassLoaderReference.Primordial,
+				"L" + clazz.getName().replace('.', '/'));
+	}
+
 	private static void tryDeletingAllJavaClassFiles(IPackageFragment pack) throws JavaModelException {
 		IJavaElement[] kids = pack.getChildren();
 		for (int i = 0; i < kids.length; i++)
@@ -228,10 +400,132 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 				}
 	}
 
+	/**
+	 * A project created besides the one under test, if any.
+	 */
+	private IJavaProject otherProject;
+
 	public OptimizeStreamRefactoringTest(String name) {
 		super(name);
 	}
 
+	/**
+	 * Analyzes the streams of the given {@link ICompilationUnit} using the
+	 * options from {@link #createAnalysisOptions()}.
+	 *
+	 * @param cu               The compilation unit whose streams to analyze.
+	 * @param nToUseForStreams The N to use for streams in the nCFA.
+	 * @return The analyzed streams.
+	 */
+	protected Set<Stream> analyze(ICompilationUnit cu, int nToUseForStreams) throws Exception {
+		return this.analyzeUnits(nToUseForStreams, cu).getStreamSet();
+	}
+
+	/**
+	 * Analyzes the streams of the project containing the given
+	 * {@link ICompilationUnit} using the refactoring processor, which collects
+	 * them from each of the project's compilation units, and the options from
+	 * {@link #createAnalysisOptions()}.
+	 *
+	 * @param cu               A compilation unit of the project whose streams to
+	 *                         analyze.
+	 * @param nToUseForStreams The N to use for streams in the nCFA.
+	 * @return The analyzed streams.
+	 */
+	protected Set<Stream> analyzeProject(ICompilationUnit cu, int nToUseForStreams) throws Exception {
+		OptimizeStreamsRefactoringProcessor processor = new OptimizeStreamsRefactoringProcessor(
+				new IJavaProject[] { cu.getJavaProject() }, null, nToUseForStreams, true, Optional.empty());
+		processor.setOptions(this.createAnalysisOptions());
+
+		new ProcessorBasedRefactoring(processor).checkAllConditions(new NullProgressMonitor());
+
+		return processor.getStreamSet();
+	}
+
+	/**
+	 * Analyzes the streams of the given projects using the refactoring
+	 * processor, which collects them from each of the projects' compilation
+	 * units, and the given options.
+	 *
+	 * @param options          The options with which to analyze the streams.
+	 * @param nToUseForStreams The N to use for streams in the nCFA.
+	 * @param projects         The projects whose streams to analyze.
+	 * @return The analyzed streams.
+	 */
+	private Set<Stream> analyzeProjects(StreamAnalysisOptions options, int nToUseForStreams,
+			IJavaProject... projects) throws Exception {
+		OptimizeStreamsRefactoringProcessor processor = new OptimizeStreamsRefactoringProcessor(projects, null,
+				nToUseForStreams, true, Optional.empty());
+		processor.setOptions(options);
+
+		new ProcessorBasedRefactoring(processor).checkAllConditions(new NullProgressMonitor());
+
+		return processor.getStreamSet();
+	}
+
+	/**
+	 * Analyzes the streams of the given {@link ICompilationUnit}s, which may
+	 * belong to different projects, using the options from
+	 * {@link #createAnalysisOptions()}.
+	 *
+	 * @param nToUseForStreams The N to use for streams in the nCFA.
+	 * @param units            The compilation units whose streams to analyze.
+	 * @return The {@link StreamAnalyzer} holding the analyzed streams and the
+	 *         outcome of analyzing each project.
+	 */
+	protected StreamAnalyzer analyzeUnits(int nToUseForStreams, ICompilationUnit... units) throws Exception {
+		return this.analyzeUnits(this.createAnalysisOptions(), nToUseForStreams, units);
+	}
+
+	/**
+	 * Analyzes the streams of the given {@link ICompilationUnit}s, which may
+	 * belong to different projects, using the given options.
+	 *
+	 * @param options          The options with which to analyze the streams.
+	 * @param nToUseForStreams The N to use for streams in the nCFA.
+	 * @param units            The compilation units whose streams to analyze.
+	 * @return The {@link StreamAnalyzer} holding the analyzed streams and the
+	 *         outcome of analyzing each project.
+	 */
+	private StreamAnalyzer analyzeUnits(StreamAnalysisOptions options, int nToUseForStreams,
+			ICompilationUnit... units) throws Exception {
+		StreamAnalyzer analyzer = new StreamAnalyzer(false, nToUseForStreams);
+		analyzer.setOptions(options);
+
+		for (ICompilationUnit unit : units) {
+			ASTParser parser = ASTParser.newParser(AST.JLS8);
+			parser.setResolveBindings(true);
+			parser.setSource(unit);
+
+			ASTNode ast = parser.createAST(new NullProgressMonitor());
+			ast.accept(analyzer);
+		}
+
+		analyzer.analyze();
+
+		return analyzer;
+	}
+
+	/**
+	 * @return An {@link EclipseProjectAnalysisEngine} over the project under test
+	 *         whose call graph has been built from the project's entry points.
+	 */
+	private EclipseProjectAnalysisEngine<InstanceKey> createAnalysisEngine() throws Exception {
+		EclipseProjectAnalysisEngine<InstanceKey> engine = new EclipseProjectAnalysisEngine<>(
+				this.getPackageP().getJavaProject());
+		engine.buildAnalysisScope();
+		IClassHierarchy classHierarchy = engine.buildClassHierarchy();
+		engine.buildSafeCallGraph(Util.findEntryPoints(classHierarchy), new NullProgressMonitor());
+		return engine;
+	}
+
+	/**
+	 * @return The options with which to analyze the streams under test.
+	 */
+	protected StreamAnalysisOptions createAnalysisOptions() {
+		return new StreamAnalysisOptions();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -270,6 +564,31 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 		return createCU(pack, cuName + ".java", contents);
 	}
 
+	/**
+	 * Creates a project besides the one under test, which is deleted on
+	 * {@link #tearDown()}.
+	 *
+	 * @return The package p of the created project.
+	 */
+	private IPackageFragment createOtherProject() throws CoreException {
+		this.otherProject = JavaProjectHelper.createJavaProject(OTHER_PROJECT_NAME, "bin");
+		JavaProjectHelper.addRTJar18(this.otherProject);
+		IPackageFragmentRoot root = JavaProjectHelper.addSourceContainer(this.otherProject, "src");
+		return root.createPackageFragment("p", true, null);
+	}
+
+	/**
+	 * @return A {@link SpliteratorOrderingOracle} over the class hierarchy of the
+	 *         project under test.
+	 */
+	private SpliteratorOrderingOracle createSpliteratorOrderingOracle() throws Exception {
+		EclipseProjectAnalysisEngine<?> engine = new EclipseProjectAnalysisEngine<>(
+				this.getPackageP().getJavaProject());
+		engine.buildAnalysisScope();
+		IClassHierarchy classHierarchy = engine.buildClassHierarchy();
+		return new SpliteratorOrderingOracle(classHierarchy, engine.getCache());
+	}
+
 	/**
 	 * @return The {@link Path} of where the entry_points.txt file should be copied
 	 *         to in the junit workspace.
@@ -322,79 +641,22 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 	/**
 	 * Runs a single analysis test.
 	 */
-	private void helper(int nToUseForStreams, StreamAnalysisExpectedResult... expectedResults) throws Exception {
+	protected void helper(int nToUseForStreams, StreamAnalysisExpectedResult... expectedResults) throws Exception {
 		LOGGER.fine("Using N = " + nToUseForStreams + ".");
 
 		// compute the actual results.
 		ICompilationUnit cu = this.createCUfromTestFile(this.getPackageP(), "A");
 
-		ASTParser parser = ASTParser.newParser(AST.JLS8);
-		parser.setResolveBindings(true);
-		parser.setSource(cu);
-
-		ASTNode ast = parser.createAST(new NullProgressMonitor());
-
-		StreamAnalyzer analyzer = new StreamAnalyzer(false, nToUseForStreams);
-		ast.accept(analyzer);
-
-		analyzer.analyze();
-
-		Set<Stream> resultingStreams = analyzer.getStreamSet();
+		Set<Stream> resultingStreams = this.analyze(cu, nToUseForStreams);
 		assertNotNull(resultingStreams);
 
-		Map<String, List<Stream>> creationStringToStreams = resultingStreams.stream()
-				.collect(Collectors.groupingBy(s -> s.getCreation().toString()));
-
-		// compare them with the expected results.
-		// for each expected result.
-		for (StreamAnalysisExpectedResult result : expectedResults) {
-			// find the corresponding stream in the actual results.
-			List<Stream> expectingStreams = creationStringToStreams.get(result.getExpectedCreation());
-
-			String errorMessage = "Can't find corresponding stream for creation: " + result.getExpectedCreation();
-			assertNotNull(errorMessage, expectingStreams);
-			assertFalse(errorMessage, expectingStreams.isEmpty());
-
-			assertEquals("Ambigious corresponding stream for creation: " + result.getExpectedCreation(), 1,
-					expectingStreams.size());
-
-			Stream stream = expectingStreams.get(0);
-
-			Set<ExecutionMode> executionModes = stream.getPossibleExecutionModes();
-			assertEquals(errorMessage("execution mode", result), result.getExpectedExecutionModes(), executionModes);
-
-			Set<Ordering> orderings = stream.getPossibleOrderings();
-			assertEquals(errorMessage("orderings", result), result.getExpectedOrderings(), orderings);
-
-			assertEquals(errorMessage("side effects", result), result.isExpectingSideEffects(),
-					stream.hasPossibleSideEffects());
-			assertEquals(errorMessage("stateful intermediate operations", result),
-					result.isExpectingStatefulIntermediateOperation(),
-					stream.hasPossibleStatefulIntermediateOperations());
-			assertEquals(errorMessage("ROM", result), result.isExpectingThatReduceOrderingMatters(),
-					stream.reduceOrderingPossiblyMatters());
-			assertEquals(errorMessage("transformation actions", result), result.getExpectedActions(),
-					stream.getActions());
-			assertEquals(errorMessage("passing precondition", result), result.getExpectedPassingPrecondition(),
-					stream.getPassingPrecondition());
-			assertEquals(errorMessage("refactoring", result), result.getExpectedRefactoring(), stream.getRefactoring());
-			assertEquals(errorMessage("status severity", result), result.getExpectedStatusSeverity(),
-					stream.getStatus().getSeverity());
-
-			Set<Integer> actualCodes = Arrays.stream(stream.getStatus().getEntries()).map(e -> e.getCode())
-					.collect(Collectors.toSet());
-
-			Set<Integer> expectedCodes = result.getExpectedFailures().stream().map(e -> e.getCode())
-					.collect(Collectors.toSet());
-
-			assertEquals(errorMessage("status codes", result), expectedCodes, actualCodes);
-		}
+		assertStreams(resultingStreams, expectedResults);
 	}
 
 	/**
 	 * Runs a single analysis test.
 	 */
-	private void helper(StreamAnalysisExpectedResult... expectedResults) throws Exception {
+	protected void helper(StreamAnalysisExpectedResult... expectedResults) throws Exception {
 		this.helper(N_TO_USE_FOR_STREAMS_DEFAULT, expectedResults);
 	}
 
@@ -444,9 +706,56 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 		if (pExists)
 			tryDeletingAllJavaClassFiles(this.getPackageP());
 
+		if (this.otherProject != null)
+			JavaProjectHelper.delete(this.otherProject);
+
 		super.tearDown();
 	}
 
+	/**
+	 * The options that only change how the streams are analyzed, e.g., by
+	 * parallelizing the analysis or tracking fewer instances, should yield the
+	 * same results as the default options, whether they're used separately or
+	 * together.
+	 */
+	public void testAnalysisOptions() throws Exception {
+		IPackageFragment otherPackage = this.createOtherProject();
+		this.createCUfromTestFile(this.getPackageP(), "A");
+		this.createCUfromTestFile(this.getPackageP(), "C");
+		this.createCUfromTestFile(otherPackage, "B");
+
+		IJavaProject[] projects = { this.getPackageP().getJavaProject(), otherPackage.getJavaProject() };
+
+		Map<String, List<Object>> expectedResults = toResults(
+				this.analyzeProjects(this.createAnalysisOptions(), N_TO_USE_FOR_STREAMS_DEFAULT, projects));
+		assertEquals("Each stream should be analyzed.", 5, expectedResults.size());
+
+		Map<String, Consumer<StreamAnalysisOptions>> variantToSetting = new LinkedHashMap<>();
+		variantToSetting.put("batch parsing", o -> {
+			o.setUseBatchParsing(true);
+			o.setNumberOfParserThreads(NUMBER_OF_THREADS);
+		});
+		variantToSetting.put("candidate stream solver", o -> o.setUseCandidateStreamSolver(true));
+		variantToSetting.put("concurrent inference", o -> o.setNumberOfInferenceThreads(NUMBER_OF_THREADS));
+		variantToSetting.put("concurrent projects", o -> o.setNumberOfProjectThreads(NUMBER_OF_THREADS));
+		variantToSetting.put("concurrent pruning", o -> o.setNumberOfPruningThreads(NUMBER_OF_THREADS));
+		variantToSetting.put("concurrent typestate solvers",
+				o -> o.setNumberOfTypestateSolverThreads(NUMBER_OF_THREADS));
+		variantToSetting.put("merged dependent projects", o -> o.setMergeDependentProjects(true));
+		variantToSetting.put("product automaton", o -> o.setUseProductAutomaton(true));
+		variantToSetting.put("streamed instance results", o -> o.setStreamInstanceResults(true));
+		variantToSetting.put("all of the above",
+				o -> variantToSetting.values().stream().limit(variantToSetting.size() - 1).forEach(s -> s.accept(o)));
+
+		for (String variant : variantToSetting.keySet()) {
+			StreamAnalysisOptions options = this.createAnalysisOptions();
+			variantToSetting.get(variant).accept(options);
+
+			assertEquals("The results with " + variant + " should match the default ones.", expectedResults,
+					toResults(this.analyzeProjects(options, N_TO_USE_FOR_STREAMS_DEFAULT, projects)));
+		}
+	}
+
 	/**
 	 * There is a problem between mapping methods declared within AICs from the
 	 * Eclipse DOM to the WALA DOM #155.
@@ -502,6 +811,114 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 				Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK, Collections.emptySet()));
 	}
 
+	/**
+	 * The call string of each call should be computed once and then be looked up
+	 * in the table, including the absence of a call string.
+	 */
+	public void testCallStringWithReceiversTable() throws Exception {
+		this.createCUfromTestFile(this.getPackageP(), "A");
+		CallGraph callGraph = this.createAnalysisEngine().getCallGraph();
+
+		MutableMapping<InstanceKey> receiverMapping = MutableMapping.make();
+		AtomicInteger computations = new AtomicInteger();
+
+		// calls from the fake root have no call string.
+		CallStringWithReceiversTable table = new CallStringWithReceiversTable((node, site, target) -> {
+			computations.incrementAndGet();
+			return node.equals(callGraph.getFakeRootNode()) ? null
+					: new CallStringWithReceivers(site, node.getMethod(), receiverMapping);
+		});
+
+		// different target nodes may share the same method.
+		Set<List<Object>> calls = new HashSet<>();
+		int lookups = 0;
+
+		for (CGNode node : callGraph)
+			for (Iterator<CallSiteReference> it = node.iterateCallSites(); it.hasNext();) {
+				CallSiteReference site = it.next();
+
+				for (CGNode target : callGraph.getPossibleTargets(node, site)) {
+					CallStringWithReceivers callString = table.get(node, site, target.getMethod());
+					assertEquals(node.equals(callGraph.getFakeRootNode()), callString == null);
+
+					// the same call should always have the same call string.
+					assertSame(callString, table.get(node, site, target.getMethod()));
+
+					calls.add(Arrays.asList(node, site, target.getMethod()));
+					lookups += 2;
+				}
+			}
+
+		assertFalse(calls.isEmpty());
+		assertEquals(calls.size(), computations.get());
+		assertEquals(calls.size(), table.getMisses());
+		assertEquals(lookups - calls.size(), table.getHits());
+		assertEquals(calls.size(), table.getSize());
+
+		table.clear();
+		assertEquals(0, table.getSize());
+		assertEquals(0, table.getHits());
+		assertEquals(0, table.getMisses());
+	}
+
+	/**
+	 * The call string table should be kept while the call graph builder may be
+	 * reused and cleared once the builder is discarded.
+	 */
+	public void testCallStringWithReceiversTableRelease() throws Exception {
+		this.createCUfromTestFile(this.getPackageP(), "A");
+		EclipseProjectAnalysisEngine<InstanceKey> engine = this.createAnalysisEngine();
+
+		CallGraphBuilder<?> builder = engine.getCallGraphBuilder();
+		ContextSelector contextSelector = ((SSAPropagationCallGraphBuilder) builder).getContextSelector();
+		CallStringWithReceiversTable table = ((nCFAContextWithReceiversSelector) contextSelector)
+				.getCallStringWithReceiversTable();
+
+		long size = table.getSize();
+		assertTrue("Call strings should be interned while building the call graph.", size > 0);
+
+		// rebuild the call graph using the same builder.
+		engine.buildSafeCallGraph(engine.getOptions(), new NullProgressMonitor());
+		assertSame(builder, engine.getCallGraphBuilder());
+		assertEquals("The interned call strings should be kept for reuse.", size, table.getSize());
+
+		engine.clearCallGraphBuilder();
+		assertNull(engine.getCallGraphBuilder());
+		assertEquals("The interned call strings should be released.", 0, table.getSize());
+	}
+
+	/**
+	 * Tracking only the stream instances derived from the streams found in the
+	 * source code should yield the same results as tracking every stream instance
+	 * while processing fewer instances. The stream created by the field
+	 * initializer isn't handled and thus isn't a candidate.
+	 */
+	public void testCandidateStreamSolver() throws Exception {
+		ICompilationUnit unit = this.createCUfromTestFile(this.getPackageP(), "A");
+
+		StreamAnalyzer analyzer = this.analyzeUnits(N_TO_USE_FOR_STREAMS_DEFAULT, unit);
+
+		StreamAnalysisOptions options = this.createAnalysisOptions();
+		options.setUseCandidateStreamSolver(true);
+		StreamAnalyzer candidateAnalyzer = this.analyzeUnits(options, N_TO_USE_FOR_STREAMS_DEFAULT, unit);
+
+		assertStreams(candidateAnalyzer.getStreamSet(),
+				new StreamAnalysisExpectedResult("h1.stream()", Collections.singleton(ExecutionMode.SEQUENTIAL),
+						Collections.singleton(Ordering.UNORDERED), false, false, false,
+						EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P1,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()));
+
+		assertEquals(toResults(analyzer.getStreamSet()), toResults(candidateAnalyzer.getStreamSet()));
+
+		assertTrue(
+				"The candidate stream solver should process fewer instances than the "
+						+ analyzer.getNumberOfProcessedStreamInstances() + " processed otherwise but processed "
+						+ candidateAnalyzer.getNumberOfProcessedStreamInstances() + ".",
+				candidateAnalyzer.getNumberOfProcessedStreamInstances() < analyzer
+						.getNumberOfProcessedStreamInstances());
+	}
+
 	public void testCollectionFromParameter() throws Exception {
 		this.helper(new StreamAnalysisExpectedResult("h.parallelStream()",
 				Collections.singleton(ExecutionMode.PARALLEL), Collections.singleton(Ordering.UNORDERED), false, true,
@@ -548,6 +965,35 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 				Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK, Collections.emptySet()));
 	}
 
+	/**
+	 * The locations possibly modified by each node should be the same whether
+	 * they're computed on demand or for the whole call graph.
+	 */
+	public void testDemandDrivenModRef() throws Exception {
+		this.createCUfromTestFile(this.getPackageP(), "A");
+
+		EclipseProjectAnalysisEngine<InstanceKey> engine = this.createAnalysisEngine();
+		CallGraph callGraph = engine.getCallGraph();
+		PointerAnalysis<InstanceKey> pointerAnalysis = engine.getPointerAnalysis();
+
+		Map<CGNode, OrdinalSet<PointerKey>> nodeToExpectedMod = ModRef.<InstanceKey>make().computeMod(callGraph,
+				pointerAnalysis);
+		DemandDrivenModRef modRef = new DemandDrivenModRef(callGraph, pointerAnalysis);
+		boolean modified = false;
+
+		// query the client nodes, like the analysis does.
+		for (CGNode node : callGraph)
+			if (isClientNode(node)) {
+				Set<PointerKey> expectedMod = new HashSet<>();
+				nodeToExpectedMod.get(node).forEach(expectedMod::add);
+
+				assertEquals("Unexpected mod set for: " + node + ".", expectedMod, modRef.getMod(node));
+				modified |= !expectedMod.isEmpty();
+			}
+
+		assertTrue("The lambda passed to forEach() should modify some location.", modified);
+	}
+
 	public void testDoubleStreamOf() throws Exception {
 		this.helper(new StreamAnalysisExpectedResult("DoubleStream.of(1.111)",
 				Collections.singleton(ExecutionMode.SEQUENTIAL), Collections.singleton(Ordering.ORDERED), false, false,
@@ -661,6 +1107,36 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 	}
 
 	// N needs to be 3 here.
+	/**
+	 * The analysis of an unchanged project should be reused, while that of a
+	 * changed one should be redone.
+	 */
+	public void testIncrementalAnalysis() throws Exception {
+		ICompilationUnit unit = this.createCUfromTestFile(this.getPackageP(), "A");
+		IJavaProject project = unit.getJavaProject();
+
+		StreamAnalysisOptions options = this.createAnalysisOptions();
+		options.setUseIncrementalAnalysis(true);
+
+		try {
+			Set<Stream> analyzedStreams = this.analyzeProjects(options, N_TO_USE_FOR_STREAMS_DEFAULT, project);
+
+			// the very same streams are restored from the snapshot of the project.
+			Set<Stream> reusedStreams = this.analyzeProjects(options, N_TO_USE_FOR_STREAMS_DEFAULT, project);
+			assertEquals("The streams of the unchanged project should be reused.", analyzedStreams, reusedStreams);
+
+			unit.getBuffer().append(System.lineSeparator() + "// changed.");
+			unit.save(new NullProgressMonitor(), true);
+
+			Set<Stream> reanalyzedStreams = this.analyzeProjects(options, N_TO_USE_FOR_STREAMS_DEFAULT, project);
+			assertTrue("The changed project should be reanalyzed.",
+					Collections.disjoint(analyzedStreams, reanalyzedStreams));
+			assertEquals(toResults(analyzedStreams), toResults(reanalyzedStreams));
+		} finally {
+			OptimizeStreamsRefactoringProcessor.clearAnalysisCaches();
+		}
+	}
+
 	public void testIntermediateOperations() throws Exception {
 		this.helper(3,
 				new StreamAnalysisExpectedResult("set.stream()", Collections.singleton(ExecutionMode.SEQUENTIAL),
@@ -694,6 +1170,39 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 
 	}
 
+	/**
+	 * A project and the project depending on it should be analyzed together and
+	 * thus share their outcome.
+	 */
+	public void testMergedProjects() throws Exception {
+		ICompilationUnit unit = this.createCUfromTestFile(this.getPackageP(), "A");
+		ICompilationUnit otherUnit = this.createCUfromTestFile(this.createOtherProject(), "B");
+		JavaProjectHelper.addRequiredProject(otherUnit.getJavaProject(), unit.getJavaProject());
+
+		StreamAnalysisOptions options = this.createAnalysisOptions();
+		options.setMergeDependentProjects(true);
+
+		StreamAnalyzer analyzer = this.analyzeUnits(options, N_TO_USE_FOR_STREAMS_DEFAULT, unit, otherUnit);
+
+		assertStreams(analyzer.getStreamSet(),
+				new StreamAnalysisExpectedResult("h1.stream()", Collections.singleton(ExecutionMode.SEQUENTIAL),
+						Collections.singleton(Ordering.UNORDERED), false, false, false,
+						EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P1,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()),
+
+				new StreamAnalysisExpectedResult("h2.stream()", Collections.singleton(ExecutionMode.SEQUENTIAL),
+						Collections.singleton(Ordering.ORDERED), false, false, false,
+						EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P2,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()));
+
+		ProjectAnalysisOutcome outcome = analyzer.getProjectToOutcome().get(unit.getJavaProject());
+		assertNotNull("The project should be analyzed.", outcome);
+		assertSame("The dependent projects should be analyzed together.", outcome,
+				analyzer.getProjectToOutcome().get(otherUnit.getJavaProject()));
+	}
+
 	public void testMotivatingExample() throws Exception {
 		this.helper(new StreamAnalysisExpectedResult("unorderedWidgets.stream()", EnumSet.of(ExecutionMode.SEQUENTIAL),
 				EnumSet.of(Ordering.ORDERED), false, false, true, EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL),
@@ -726,6 +1235,68 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 				Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK, Collections.emptySet()));
 	}
 
+	/**
+	 * The streams of each of several projects should be analyzed using the entry
+	 * points of their own project.
+	 */
+	public void testMultipleProjects() throws Exception {
+		ICompilationUnit unit = this.createCUfromTestFile(this.getPackageP(), "A");
+		ICompilationUnit otherUnit = this.createCUfromTestFile(this.createOtherProject(), "B");
+
+		StreamAnalyzer analyzer = this.analyzeUnits(N_TO_USE_FOR_STREAMS_DEFAULT, unit, otherUnit);
+
+		assertStreams(analyzer.getStreamSet(),
+				new StreamAnalysisExpectedResult("h1.stream()", Collections.singleton(ExecutionMode.SEQUENTIAL),
+						Collections.singleton(Ordering.UNORDERED), false, false, false,
+						EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P1,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()),
+
+				new StreamAnalysisExpectedResult("h2.stream()", Collections.singleton(ExecutionMode.SEQUENTIAL),
+						Collections.singleton(Ordering.ORDERED), false, false, false,
+						EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P2,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()));
+
+		for (IJavaProject project : Arrays.asList(unit.getJavaProject(), otherUnit.getJavaProject())) {
+			ProjectAnalysisOutcome outcome = analyzer.getProjectToOutcome().get(project);
+			assertNotNull("Project: " + project.getElementName() + " should be analyzed.", outcome);
+			assertTrue("Project: " + project.getElementName() + " should have entry points.",
+					outcome.hasEntryPoints());
+		}
+	}
+
+	/**
+	 * A project without entry points shouldn't keep the streams of the other
+	 * projects from being analyzed, regardless of the order in which the projects
+	 * are analyzed.
+	 */
+	public void testMultipleProjectsWithoutEntryPoint() throws Exception {
+		ICompilationUnit unit = this.createCUfromTestFile(this.getPackageP(), "A");
+		ICompilationUnit otherUnit = this.createCUfromTestFile(this.createOtherProject(), "B");
+
+		StreamAnalyzer analyzer = this.analyzeUnits(N_TO_USE_FOR_STREAMS_DEFAULT, unit, otherUnit);
+
+		assertStreams(analyzer.getStreamSet(),
+				new StreamAnalysisExpectedResult("h1.stream()", null, null, false, false, false, null, null, null,
+						RefactoringStatus.ERROR, EnumSet.of(PreconditionFailure.NO_ENTRY_POINT)),
+
+				new StreamAnalysisExpectedResult("h2.stream()", Collections.singleton(ExecutionMode.SEQUENTIAL),
+						Collections.singleton(Ordering.ORDERED), false, false, false,
+						EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P2,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()));
+
+		ProjectAnalysisOutcome outcome = analyzer.getProjectToOutcome().get(unit.getJavaProject());
+		assertNotNull("The project without entry points should have an outcome.", outcome);
+		assertFalse(outcome.hasEntryPoints());
+		assertFalse(outcome.hasFailed());
+
+		ProjectAnalysisOutcome otherOutcome = analyzer.getProjectToOutcome().get(otherUnit.getJavaProject());
+		assertNotNull("The project with entry points should be analyzed.", otherOutcome);
+		assertTrue(otherOutcome.hasEntryPoints());
+	}
+
 	/**
 	 * This should change once #103 is fixed.
 	 */
@@ -845,6 +1416,142 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 				Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK, Collections.emptySet()));
 	}
 
+	/**
+	 * The orderings inferred by an analysis should be saved and, once forgotten,
+	 * loaded by the next analysis, which should yield the same results.
+	 */
+	public void testOrderingMemo() throws Exception {
+		ICompilationUnit unit = this.createCUfromTestFile(this.getPackageP(), "A");
+
+		File orderingMemoFile = File.createTempFile("orderings", ".properties");
+
+		// the first analysis shouldn't load anything.
+		orderingMemoFile.delete();
+		StreamAnalyzer.clearOrderingMemo();
+
+		try {
+			StreamAnalysisOptions options = this.createAnalysisOptions();
+			options.setOrderingMemoFile(orderingMemoFile);
+
+			Set<Stream> streams = this.analyzeUnits(options, N_TO_USE_FOR_STREAMS_DEFAULT, unit).getStreamSet();
+			assertTrue("The ordering memo should be saved.", orderingMemoFile.exists());
+
+			Properties memo = new Properties();
+
+			try (InputStream stream = new FileInputStream(orderingMemoFile)) {
+				memo.load(stream);
+			}
+
+			assertEquals("The ordering memo should record the Java version.", System.getProperty("java.version"),
+					memo.getProperty("java.version"));
+
+			// forget the orderings so that they're loaded from the saved memo.
+			StreamAnalyzer.clearOrderingMemo();
+
+			Set<Stream> reloadedStreams = this.analyzeUnits(options, N_TO_USE_FOR_STREAMS_DEFAULT, unit)
+					.getStreamSet();
+			assertEquals(toResults(streams), toResults(reloadedStreams));
+		} finally {
+			orderingMemoFile.delete();
+			StreamAnalyzer.clearOrderingMemo();
+		}
+	}
+
+	/**
+	 * Test #80. The stream lacking application code in its call strings is
+	 * reanalyzed using N = 3 and thus yields the results of
+	 * {@link #testArraysStream2()}.
+	 */
+	public void testRefinement() throws Exception {
+		ICompilationUnit unit = this.createCUfromTestFile(this.getPackageP(), "A");
+
+		StreamAnalysisOptions options = this.createAnalysisOptions();
+		options.setNForRefinedStreams(N_TO_USE_FOR_REFINED_STREAMS);
+
+		assertStreams(this.analyzeUnits(options, N_TO_USE_FOR_STREAMS_DEFAULT, unit).getStreamSet(),
+				new StreamAnalysisExpectedResult("Arrays.stream(new Object[1])",
+						Collections.singleton(ExecutionMode.SEQUENTIAL), EnumSet.of(Ordering.ORDERED), false, false,
+						false, EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P2,
+						Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()));
+	}
+
+	/**
+	 * Projects analyzed with a shared primordial class loader should have the same
+	 * results as those analyzed with a primordial class loader of their own.
+	 */
+	public void testSharedPrimordialClassLoader() throws Exception {
+		ICompilationUnit unit = this.createCUfromTestFile(this.getPackageP(), "A");
+		ICompilationUnit otherUnit = this.createCUfromTestFile(this.createOtherProject(), "B");
+
+		PrimordialClassLoaderCache.clear();
+
+		try {
+			for (boolean useSharedPrimordialClassLoader : new boolean[] { false, true }) {
+				StreamAnalysisOptions options = this.createAnalysisOptions();
+				options.setUseSharedPrimordialClassLoader(useSharedPrimordialClassLoader);
+
+				StreamAnalyzer analyzer = this.analyzeUnits(options, N_TO_USE_FOR_STREAMS_DEFAULT, unit, otherUnit);
+
+				assertStreams(analyzer.getStreamSet(),
+						new StreamAnalysisExpectedResult("h1.stream()",
+								Collections.singleton(ExecutionMode.SEQUENTIAL),
+								Collections.singleton(Ordering.UNORDERED), false, false, false,
+								EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P1,
+								Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+								Collections.emptySet()),
+
+						new StreamAnalysisExpectedResult("h2.stream()",
+								Collections.singleton(ExecutionMode.SEQUENTIAL),
+								Collections.singleton(Ordering.ORDERED), false, false, false,
+								EnumSet.of(TransformationAction.CONVERT_TO_PARALLEL), PreconditionSuccess.P2,
+								Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+								Collections.emptySet()));
+			}
+		} finally {
+			PrimordialClassLoaderCache.clear();
+		}
+	}
+
+	/**
+	 * The statically inferred orderings of JDK types should match those inferred
+	 * reflectively.
+	 */
+	public void testSpliteratorOrderingOracle() throws Exception {
+		SpliteratorOrderingOracle oracle = this.createSpliteratorOrderingOracle();
+
+		List<Class<?>> iterableClasses = Arrays.asList(ArrayList.class, LinkedList.class, Vector.class,
+				HashSet.class, LinkedHashSet.class, TreeSet.class, ArrayDeque.class, PriorityQueue.class,
+				CopyOnWriteArrayList.class, CopyOnWriteArraySet.class, ConcurrentSkipListSet.class,
+				ConcurrentLinkedQueue.class, LinkedBlockingQueue.class);
+
+		for (Class<?> clazz : iterableClasses) {
+			Spliterator<?> spliterator = ((Iterable<?>) clazz.newInstance()).spliterator();
+			assertEquals("Unexpected ordering for: " + clazz + ".", Optional.of(toOrdering(spliterator)),
+					oracle.inferOrdering(toTypeReference(clazz), "stream"));
+		}
+
+		assertEquals(Optional.of(toOrdering(new BitSet().stream().spliterator())),
+				oracle.inferOrdering(toTypeReference(BitSet.class), "stream"));
+
+		// each overload of ints() has the same ordering.
+		assertEquals(Optional.of(toOrdering(new Random().ints().spliterator())),
+				oracle.inferOrdering(toTypeReference(Random.class), "ints"));
+	}
+
+	/**
+	 * Interfaces and abstract classes can't be instantiated reflectively and thus
+	 * shouldn't be inferred statically either.
+	 */
+	public void testSpliteratorOrderingOracleNoninstantiable() throws Exception {
+		SpliteratorOrderingOracle oracle = this.createSpliteratorOrderingOracle();
+
+		for (Class<?> clazz : Arrays.asList(Iterable.class, Collection.class, List.class, Set.class,
+				SortedSet.class, AbstractList.class, AbstractSet.class))
+			assertEquals("Unexpected ordering for: " + clazz + ".", Optional.empty(),
+					oracle.inferOrdering(toTypeReference(clazz), "stream"));
+	}
+
 	public void testStaticInitializer() throws Exception {
 		this.helper(new StreamAnalysisExpectedResult("new HashSet<>().parallelStream()", null, null, false, false,
 				false, null, null, null, RefactoringStatus.ERROR,
@@ -898,6 +1605,62 @@ public class OptimizeStreamRefactoringTest extends RefactoringTest {
 						Collections.singleton(PreconditionFailure.NO_TERMINAL_OPERATIONS)));
 	}
 
+	/**
+	 * A single terminal operation call whose possible receivers are the instances
+	 * of different streams.
+	 */
+	public void testTerminalOp4() throws Exception {
+		this.helper(
+				new StreamAnalysisExpectedResult("collection1.stream()",
+						Collections.singleton(ExecutionMode.SEQUENTIAL), Collections.singleton(Ordering.UNORDERED),
+						false, false, false, Collections.singleton(TransformationAction.CONVERT_TO_PARALLEL),
+						PreconditionSuccess.P1, Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()),
+
+				new StreamAnalysisExpectedResult("collection2.stream()",
+						Collections.singleton(ExecutionMode.SEQUENTIAL), Collections.singleton(Ordering.ORDERED),
+						false, false, false, Collections.singleton(TransformationAction.CONVERT_TO_PARALLEL),
+						PreconditionSuccess.P2, Refactoring.CONVERT_SEQUENTIAL_STREAM_TO_PARALLEL, RefactoringStatus.OK,
+						Collections.emptySet()));
+	}
+
+	/**
+	 * The types inferred while pruning the call graph nodes without streams should
+	 * be reused while inferring the possible types of the streams in the remaining
+	 * nodes.
+	 */
+	public void testTypeInferenceCache() throws Exception {
+		this.createCUfromTestFile(this.getPackageP(), "A");
+
+		EclipseProjectAnalysisEngine<InstanceKey> engine = this.createAnalysisEngine();
+		TypeInferenceCache cache = engine.getTypeInferenceCache();
+		List<CGNode> streamNodes = new ArrayList<>();
+
+		// prune the client nodes without streams.
+		for (CGNode node : engine.getCallGraph())
+			if (isClientNode(node) && Util.isStreamNode(node, engine))
+				streamNodes.add(node);
+
+		assertFalse(streamNodes.isEmpty());
+		assertTrue("Pruning should infer types.", cache.getMissCount() > 0);
+
+		long hitCount = cache.getHitCount();
+		OrderingInference orderingInference = new OrderingInference(engine.getClassHierarchy(), engine.getCache());
+
+		// infer the possible types of the streams returned by invocations.
+		for (CGNode node : streamNodes)
+			for (SSAInstruction instruction : node.getIR().getInstructions())
+				if (instruction instanceof SSAAbstractInvokeInstruction && instruction.hasDef()
+						&& Util.implementsBaseStream(
+								((SSAAbstractInvokeInstruction) instruction).getDeclaredResultType(),
+								engine.getClassHierarchy()))
+					assertFalse(Util.getPossibleTypesInterprocedurally(Collections.singleton(node),
+							instruction.getDef(), engine, orderingInference).isEmpty());
+
+		assertTrue("Inference should reuse the types inferred while pruning: " + cache + ".",
+				cache.getHitCount() > hitCount);
+	}
+
 	public void testTypeResolution() throws Exception {
 		this.helper(new StreamAnalysisExpectedResult("anotherSet.parallelStream()",
 				Collections.singleton(ExecutionMode.PARALLEL), Collections.singleton(Ordering.UNORDERED), false, false,